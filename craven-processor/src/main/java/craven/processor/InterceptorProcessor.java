@@ -0,0 +1,456 @@
+package craven.processor;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.TypeParameterElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.PrimitiveType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+
+/**
+ * Generates a subclass {@code X_Intercepted} of each class {@code X} with {@code @Transactional} or {@code @Logging}
+ * on the class or its methods. The subclass overrides the intercepted methods to call the
+ * {@code TransactionInterceptor} with a constant {@code TxConfig} and the {@code LoggingInterceptor} directly, so
+ * that interception needs no reflection nor proxy.
+ *
+ * Each constructor of the subclass takes the interceptors it needs in front of the parameters of the constructor of
+ * {@code X}. Only the annotations present on {@code X} itself are considered, not those it inherits, and logging
+ * runs around the transaction.
+ */
+@SupportedAnnotationTypes({ InterceptorProcessor.TRANSACTIONAL, InterceptorProcessor.LOGGING })
+public class InterceptorProcessor extends AbstractProcessor {
+
+    static final String TRANSACTIONAL = "craven.interceptor.Transactional";
+    static final String LOGGING = "craven.interceptor.Logging";
+
+    private static final String SUFFIX = "_Intercepted";
+
+    private static final String TRANSACTION_INTERCEPTOR = "craven.interceptor.TransactionInterceptor";
+    private static final String LOGGING_INTERCEPTOR = "craven.interceptor.LoggingInterceptor";
+    private static final String CALLABLE = "java.util.concurrent.Callable";
+
+    // Generated names end with $ so as not to clash with the names of parameters.
+    private static final String TX_FIELD = "transactionInterceptor$";
+    private static final String LOGGING_FIELD = "loggingInterceptor$";
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        Set<TypeElement> types = new LinkedHashSet<TypeElement>();
+        for (TypeElement annotation : annotations) {
+            String name = annotation.getQualifiedName().toString();
+            for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+                // The generated classes inherit the annotations of the classes, they are not present on them.
+                if (getAnnotation(element, name) == null) {
+                    continue;
+                }
+                if (element.getKind() == ElementKind.CLASS) {
+                    types.add((TypeElement) element);
+                }
+                else if (element.getKind() == ElementKind.METHOD && element.getEnclosingElement().getKind() == ElementKind.CLASS) {
+                    types.add((TypeElement) element.getEnclosingElement());
+                }
+                else {
+                    warning(element, "Not intercepted, only the methods of classes are");
+                }
+            }
+        }
+
+        for (TypeElement type : types) {
+            try {
+                generate(type);
+            }
+            catch (IOException e) {
+                error(type, "Could not generate the intercepted subclass: " + e);
+            }
+        }
+
+        // other processors may handle the annotations as well
+        return false;
+    }
+
+    // --
+
+    private void generate(TypeElement type) throws IOException {
+        Set<Modifier> modifiers = type.getModifiers();
+        if (modifiers.contains(Modifier.FINAL) || modifiers.contains(Modifier.PRIVATE)
+                || (type.getNestingKind() == NestingKind.MEMBER && !modifiers.contains(Modifier.STATIC))) {
+            error(type, "Cannot subclass a final, private or inner class to intercept its methods");
+            return;
+        }
+
+        AnnotationMirror classTx = getAnnotation(type, TRANSACTIONAL);
+        boolean classLogging = getAnnotation(type, LOGGING) != null;
+
+        List<Intercepted> intercepted = new ArrayList<Intercepted>();
+        Map<String, Integer> overloads = new HashMap<String, Integer>();
+        for (ExecutableElement method : ElementFilter.methodsIn(type.getEnclosedElements())) {
+            AnnotationMirror tx = getAnnotation(method, TRANSACTIONAL);
+            boolean logging = getAnnotation(method, LOGGING) != null;
+            boolean annotated = tx != null || logging;
+            if (tx == null) {
+                tx = classTx;
+            }
+            logging |= classLogging;
+            if (tx == null && !logging) {
+                continue;
+            }
+
+            Set<Modifier> methodModifiers = method.getModifiers();
+            if (methodModifiers.contains(Modifier.PRIVATE) || methodModifiers.contains(Modifier.STATIC)
+                    || methodModifiers.contains(Modifier.FINAL) || methodModifiers.contains(Modifier.ABSTRACT)) {
+                if (annotated) {
+                    error(method, "Cannot override a private, static, final or abstract method to intercept it");
+                }
+                continue;
+            }
+
+            String name = method.getSimpleName().toString();
+            Integer count = overloads.get(name);
+            overloads.put(name, (count == null) ? 1 : count + 1);
+            String constant = (tx != null) ? "TX$" + name + ((count == null) ? "" : "$" + count) : null;
+
+            intercepted.add(new Intercepted(method, tx, constant, logging));
+        }
+
+        boolean anyTx = false;
+        boolean anyLogging = false;
+        for (Intercepted i : intercepted) {
+            anyTx |= i.tx != null;
+            anyLogging |= i.logging;
+        }
+
+        PackageElement pkg = processingEnv.getElementUtils().getPackageOf(type);
+        String packageName = pkg.isUnnamed() ? "" : pkg.getQualifiedName().toString();
+        String simpleName = flatName(type) + SUFFIX;
+        String qualifiedName = packageName.isEmpty() ? simpleName : packageName + "." + simpleName;
+
+        StringBuilder sb = new StringBuilder();
+        if (!packageName.isEmpty()) {
+            sb.append("package ").append(packageName).append(";\n\n");
+        }
+        sb.append("/**\n");
+        sb.append(" * Intercepted {@link ").append(type.getQualifiedName()).append("}, generated by ");
+        sb.append(getClass().getName()).append(".\n");
+        sb.append(" */\n");
+        sb.append(modifiers.contains(Modifier.PUBLIC) ? "public " : "");
+        sb.append(modifiers.contains(Modifier.ABSTRACT) ? "abstract " : "");
+        sb.append("class ").append(simpleName).append(typeParameters(type.getTypeParameters()).trim());
+        sb.append(" extends ").append(type.getQualifiedName()).append(typeArguments(type.getTypeParameters()));
+        sb.append(" {\n\n");
+
+        for (Intercepted i : intercepted) {
+            if (i.tx != null) {
+                sb.append("    private static final craven.interceptor.Transactional ").append(i.constant);
+                sb.append(" = ").append(txConfig(i.tx)).append(";\n");
+            }
+        }
+        if (anyTx) {
+            sb.append("\n    private final ").append(TRANSACTION_INTERCEPTOR).append(' ').append(TX_FIELD).append(";\n");
+        }
+        if (anyLogging) {
+            sb.append("\n    private final ").append(LOGGING_INTERCEPTOR).append(' ').append(LOGGING_FIELD).append(";\n");
+        }
+
+        boolean anyConstructor = false;
+        for (ExecutableElement constructor : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+            if (constructor.getModifiers().contains(Modifier.PRIVATE)) {
+                continue;
+            }
+            anyConstructor = true;
+            appendConstructor(sb, simpleName, constructor, anyTx, anyLogging);
+        }
+        if (!anyConstructor) {
+            error(type, "Cannot subclass a class without a constructor that is not private to intercept its methods");
+            return;
+        }
+
+        for (Intercepted i : intercepted) {
+            appendMethod(sb, simpleName, i);
+        }
+
+        sb.append("}\n");
+
+        Writer writer = processingEnv.getFiler().createSourceFile(qualifiedName, type).openWriter();
+        try {
+            writer.write(sb.toString());
+        }
+        finally {
+            writer.close();
+        }
+    }
+
+    private void appendConstructor(StringBuilder sb, String simpleName, ExecutableElement constructor, boolean tx, boolean logging) {
+        List<String> parameters = new ArrayList<String>();
+        if (tx) {
+            parameters.add(TRANSACTION_INTERCEPTOR + " " + TX_FIELD);
+        }
+        if (logging) {
+            parameters.add(LOGGING_INTERCEPTOR + " " + LOGGING_FIELD);
+        }
+        parameters.addAll(parameterDeclarations(constructor));
+
+        sb.append("\n    ").append(visibility(constructor));
+        sb.append(typeParameters(constructor.getTypeParameters()));
+        sb.append(simpleName).append('(').append(join(parameters)).append(')');
+        sb.append(throwsClause(constructor)).append(" {\n");
+        sb.append("        super(").append(join(parameterNames(constructor))).append(");\n");
+        if (tx) {
+            sb.append("        this.").append(TX_FIELD).append(" = ").append(TX_FIELD).append(";\n");
+        }
+        if (logging) {
+            sb.append("        this.").append(LOGGING_FIELD).append(" = ").append(LOGGING_FIELD).append(";\n");
+        }
+        sb.append("    }\n");
+    }
+
+    private void appendMethod(StringBuilder sb, String simpleName, Intercepted i) {
+        ExecutableElement method = i.method;
+        String name = method.getSimpleName().toString();
+        TypeMirror returnType = method.getReturnType();
+        boolean isVoid = returnType.getKind() == TypeKind.VOID;
+        String callable = CALLABLE + "<" + boxed(returnType) + ">";
+
+        sb.append("\n    @Override\n");
+        sb.append("    ").append(visibility(method)).append(typeParameters(method.getTypeParameters()));
+        sb.append(returnType).append(' ').append(name);
+        sb.append('(').append(join(finalParameters(parameterDeclarations(method)))).append(')');
+        sb.append(throwsClause(method)).append(" {\n");
+
+        // The innermost function calls the method of the class, each interceptor wraps the previous one.
+        sb.append("        final ").append(callable).append(" invocation$ = new ").append(callable).append("() {\n");
+        sb.append("            @Override public ").append(boxed(returnType)).append(" call() throws Exception {\n");
+        String superCall = simpleName + ".super." + name + "(" + join(parameterNames(method)) + ");\n";
+        if (isVoid) {
+            sb.append("                ").append(superCall);
+            sb.append("                return null;\n");
+        }
+        else {
+            sb.append("                return ").append(superCall);
+        }
+        sb.append("            }\n");
+        sb.append("        };\n");
+
+        String function = "invocation$";
+        if (i.tx != null && i.logging) {
+            sb.append("        final ").append(callable).append(" transactional$ = new ").append(callable).append("() {\n");
+            sb.append("            @Override public ").append(boxed(returnType)).append(" call() {\n");
+            sb.append("                return ").append(TX_FIELD).append(".apply(").append(i.constant).append(", invocation$);\n");
+            sb.append("            }\n");
+            sb.append("        };\n");
+            function = "transactional$";
+        }
+
+        String call;
+        if (i.logging) {
+            List<String> names = parameterNames(method);
+            String parameters = names.isEmpty() ? "null" : "new Object[] { " + join(names) + " }";
+            call = LOGGING_FIELD + ".apply(this, \"" + name + "\", " + parameters + ", " + function + ")";
+        }
+        else {
+            call = TX_FIELD + ".apply(" + i.constant + ", " + function + ")";
+        }
+        sb.append("        ").append(isVoid ? "" : "return ").append(call).append(";\n");
+        sb.append("    }\n");
+    }
+
+    /**
+     * The builder of the attributes, explicit or default, as a constant expression.
+     */
+    private String txConfig(AnnotationMirror tx) {
+        StringBuilder sb = new StringBuilder("new craven.interceptor.TxConfig.Builder()");
+        Map<? extends ExecutableElement, ? extends AnnotationValue> values =
+                processingEnv.getElementUtils().getElementValuesWithDefaults(tx);
+        for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : values.entrySet()) {
+            Object value = entry.getValue().getValue();
+            String literal;
+            if (value instanceof VariableElement) {
+                VariableElement constant = (VariableElement) value;
+                literal = ((TypeElement) constant.getEnclosingElement()).getQualifiedName() + "." + constant.getSimpleName();
+            }
+            else {
+                literal = processingEnv.getElementUtils().getConstantExpression(value);
+            }
+            sb.append("\n            .").append(entry.getKey().getSimpleName()).append('(').append(literal).append(')');
+        }
+        sb.append("\n            .build()");
+        return sb.toString();
+    }
+
+    // -- Rendering
+
+    private static String flatName(TypeElement type) {
+        Element enclosing = type.getEnclosingElement();
+        if (enclosing instanceof TypeElement) {
+            return flatName((TypeElement) enclosing) + "_" + type.getSimpleName();
+        }
+        return type.getSimpleName().toString();
+    }
+
+    private static String visibility(ExecutableElement element) {
+        Set<Modifier> modifiers = element.getModifiers();
+        if (modifiers.contains(Modifier.PUBLIC)) {
+            return "public ";
+        }
+        if (modifiers.contains(Modifier.PROTECTED)) {
+            return "protected ";
+        }
+        return "";
+    }
+
+    private static String typeParameters(List<? extends TypeParameterElement> typeParameters) {
+        if (typeParameters.isEmpty()) {
+            return "";
+        }
+        List<String> declarations = new ArrayList<String>();
+        for (TypeParameterElement typeParameter : typeParameters) {
+            StringBuilder sb = new StringBuilder(typeParameter.getSimpleName());
+            String separator = " extends ";
+            for (TypeMirror bound : typeParameter.getBounds()) {
+                if (!bound.toString().equals("java.lang.Object")) {
+                    sb.append(separator).append(bound);
+                    separator = " & ";
+                }
+            }
+            declarations.add(sb.toString());
+        }
+        return "<" + join(declarations) + "> ";
+    }
+
+    private static String typeArguments(List<? extends TypeParameterElement> typeParameters) {
+        if (typeParameters.isEmpty()) {
+            return "";
+        }
+        List<String> names = new ArrayList<String>();
+        for (TypeParameterElement typeParameter : typeParameters) {
+            names.add(typeParameter.getSimpleName().toString());
+        }
+        return "<" + join(names) + ">";
+    }
+
+    private static List<String> parameterDeclarations(ExecutableElement executable) {
+        List<String> declarations = new ArrayList<String>();
+        for (Iterator<? extends VariableElement> it = executable.getParameters().iterator(); it.hasNext(); ) {
+            VariableElement parameter = it.next();
+            String type = parameter.asType().toString();
+            if (!it.hasNext() && executable.isVarArgs()) {
+                type = type.substring(0, type.length() - 2) + "...";
+            }
+            declarations.add(type + " " + parameter.getSimpleName());
+        }
+        return declarations;
+    }
+
+    private static List<String> finalParameters(List<String> declarations) {
+        List<String> result = new ArrayList<String>();
+        for (String declaration : declarations) {
+            result.add("final " + declaration);
+        }
+        return result;
+    }
+
+    private static List<String> parameterNames(ExecutableElement executable) {
+        List<String> names = new ArrayList<String>();
+        for (VariableElement parameter : executable.getParameters()) {
+            names.add(parameter.getSimpleName().toString());
+        }
+        return names;
+    }
+
+    private static String throwsClause(ExecutableElement executable) {
+        if (executable.getThrownTypes().isEmpty()) {
+            return "";
+        }
+        List<String> types = new ArrayList<String>();
+        for (TypeMirror thrown : executable.getThrownTypes()) {
+            types.add(thrown.toString());
+        }
+        return " throws " + join(types);
+    }
+
+    private String boxed(TypeMirror type) {
+        if (type.getKind() == TypeKind.VOID) {
+            return "Void";
+        }
+        if (type.getKind().isPrimitive()) {
+            return processingEnv.getTypeUtils().boxedClass((PrimitiveType) type).getQualifiedName().toString();
+        }
+        return type.toString();
+    }
+
+    private static String join(List<String> parts) {
+        StringBuilder sb = new StringBuilder();
+        for (String part : parts) {
+            if (sb.length() > 0) {
+                sb.append(", ");
+            }
+            sb.append(part);
+        }
+        return sb.toString();
+    }
+
+    // --
+
+    private static AnnotationMirror getAnnotation(Element element, String annotationType) {
+        for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+            TypeElement type = (TypeElement) mirror.getAnnotationType().asElement();
+            if (type.getQualifiedName().contentEquals(annotationType)) {
+                return mirror;
+            }
+        }
+        return null;
+    }
+
+    private void error(Element element, String message) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+
+    private void warning(Element element, String message) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING, message, element);
+    }
+
+    private static final class Intercepted {
+
+        final ExecutableElement method;
+        final AnnotationMirror tx;      // null if not transactional
+        final String constant;          // the name of the TxConfig field
+        final boolean logging;
+
+        Intercepted(ExecutableElement method, AnnotationMirror tx, String constant, boolean logging) {
+            this.method = method;
+            this.tx = tx;
+            this.constant = constant;
+            this.logging = logging;
+        }
+
+    }
+
+}
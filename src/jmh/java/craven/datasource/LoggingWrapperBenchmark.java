@@ -0,0 +1,153 @@
+package craven.datasource;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+
+import javax.interceptor.InvocationContext;
+import javax.sql.DataSource;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import craven.interceptor.LoggingInterceptor;
+import craven.interceptor.SimpleInvocationContext;
+
+/**
+ * A prepared query through the logging wrappers, against the reflective proxies they replaced.
+ *
+ * Each operation gets a connection, prepares and runs a query, reads the result set and closes everything, on the
+ * connections of a {@link StubDataSource}, {@code wrapper=none} measures them alone. With {@code logging=off} the
+ * proxies are still in place with logging disabled, as with the old compile-time flags, while the delegating wrappers
+ * are not created at all; with {@code logging=on} every level is wrapped. The benchmarks run without an slf4j binding,
+ * so the debug level is off and the wrappers are measured rather than the log output.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class LoggingWrapperBenchmark {
+
+    @Param({ "none", "proxy", "delegate" })
+    public String wrapper;
+
+    @Param({ "off", "on" })
+    public String logging;
+
+    private DataSource dataSource;
+
+    @Setup
+    public void setUp() {
+        boolean enabled = logging.equals("on");
+        DataSource stub = new StubDataSource();
+
+        if (wrapper.equals("proxy")) {
+            dataSource = new ProxyLogging(enabled).createDataSource(stub);
+        }
+        else if (wrapper.equals("delegate")) {
+            dataSource = LoggingDataSourceFactory.create(stub, new LoggingSettings(enabled, enabled, enabled, enabled));
+        }
+        else {
+            dataSource = stub;
+        }
+    }
+
+    @Benchmark
+    public boolean query() throws SQLException {
+        Connection connection = dataSource.getConnection();
+        try {
+            PreparedStatement stmt = connection.prepareStatement("select name from t where id = ?");
+            try {
+                stmt.setInt(1, 42);
+                ResultSet rs = stmt.executeQuery();
+                try {
+                    return rs.next();
+                }
+                finally {
+                    rs.close();
+                }
+            }
+            finally {
+                stmt.close();
+            }
+        }
+        finally {
+            connection.close();
+        }
+    }
+
+    // --
+
+    /**
+     * The proxies of the former {@code LoggingDataSourceFactory}: an invocation context and a reflective call per
+     * method, the results wrapped in turn.
+     */
+    private static final class ProxyLogging {
+
+        private final LoggingInterceptor interceptor = new LoggingInterceptor();
+        private final boolean enabled;
+
+        ProxyLogging(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        DataSource createDataSource(DataSource ds) {
+            return (DataSource) Proxy.newProxyInstance(DataSource.class.getClassLoader(),
+                    new Class<?>[] { DataSource.class }, new Handler(ds));
+        }
+
+        private Object wrap(Object result) {
+            if (result instanceof Connection) {
+                return Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                        new Class<?>[] { Connection.class }, new Handler(result));
+            }
+            if (result instanceof PreparedStatement) {
+                return Proxy.newProxyInstance(Statement.class.getClassLoader(),
+                        new Class<?>[] { PreparedStatement.class }, new Handler(result));
+            }
+            return result;
+        }
+
+        private final class Handler implements InvocationHandler {
+
+            private final Object target;
+
+            Handler(Object target) {
+                this.target = target;
+            }
+
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                try {
+                    InvocationContext ic = new SimpleInvocationContext(target, method, args);
+                    Object result = enabled ? interceptor.around(ic) : ic.proceed();
+                    return wrap(result);
+                }
+                catch (InvocationTargetException ex) {
+                    throw ex.getCause();
+                }
+            }
+
+        }
+
+    }
+
+}
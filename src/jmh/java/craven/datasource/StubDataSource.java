@@ -0,0 +1,246 @@
+package craven.datasource;
+
+import java.io.PrintWriter;
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import javax.sql.DataSource;
+
+/**
+ * A data source of connections that talk to no database, for benchmarks of the code in front of the driver.
+ *
+ * The connections keep their session state and count the calls that a network driver sends to the server: the
+ * session getters and setters, commit and rollback, validation and statement executions. Queries return an empty
+ * result set.
+ */
+public class StubDataSource implements DataSource {
+
+    private static final Set<String> ROUND_TRIPS = new HashSet<String>(Arrays.asList(
+            "getAutoCommit", "setAutoCommit", "isReadOnly", "setReadOnly",
+            "getTransactionIsolation", "setTransactionIsolation", "getSchema", "setSchema",
+            "commit", "rollback", "isValid",
+            "execute", "executeQuery", "executeUpdate", "executeBatch"));
+
+    private final AtomicLong roundTrips = new AtomicLong();
+
+    public long getRoundTrips() {
+        return roundTrips.get();
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        roundTrips.incrementAndGet();
+        return (Connection) newProxy(Connection.class, new StubConnection());
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return getConnection();
+    }
+
+    // --
+
+    @Override
+    public PrintWriter getLogWriter() throws SQLException {
+        throw new UnsupportedOperationException("getLogWriter");
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) throws SQLException {
+        throw new UnsupportedOperationException("setLogWriter");
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        throw new SQLFeatureNotSupportedException();
+    }
+
+    @Override
+    public int getLoginTimeout() throws SQLException {
+        return 0;
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) throws SQLException {
+        throw new UnsupportedOperationException("setLoginTimeout");
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return false;
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        throw new SQLException("Not a wrapper");
+    }
+
+    // --
+
+    private Object newProxy(Class<?> type, InvocationHandler handler) {
+        return Proxy.newProxyInstance(StubDataSource.class.getClassLoader(), new Class<?>[] { type }, handler);
+    }
+
+    private Object invokeObjectMethod(Object proxy, Method method, Object[] args) {
+        String name = method.getName();
+        if (name.equals("equals")) {
+            return proxy == args[0];
+        }
+        else if (name.equals("hashCode")) {
+            return System.identityHashCode(proxy);
+        }
+        else {
+            return method.getDeclaringClass().getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(proxy));
+        }
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (type == boolean.class) {
+            return false;
+        }
+        else if (type == int.class) {
+            return 0;
+        }
+        else if (type == long.class) {
+            return 0L;
+        }
+        else if (type.isArray()) {
+            return Array.newInstance(type.getComponentType(), 0);
+        }
+        return null;
+    }
+
+    private final class StubConnection implements InvocationHandler {
+
+        private boolean autoCommit = true;
+        private boolean readOnly = false;
+        private int isolation = Connection.TRANSACTION_READ_COMMITTED;
+        private String schema = "PUBLIC";
+        private boolean closed = false;
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (method.getDeclaringClass() == Object.class) {
+                return invokeObjectMethod(proxy, method, args);
+            }
+
+            String name = method.getName();
+            if (ROUND_TRIPS.contains(name)) {
+                roundTrips.incrementAndGet();
+            }
+
+            if (name.equals("close")) {
+                closed = true;
+                return null;
+            }
+            if (closed && !name.equals("isClosed")) {
+                throw new SQLException("Connection is closed.");
+            }
+
+            if (name.equals("getAutoCommit")) {
+                return autoCommit;
+            }
+            else if (name.equals("setAutoCommit")) {
+                autoCommit = (Boolean) args[0];
+            }
+            else if (name.equals("isReadOnly")) {
+                return readOnly;
+            }
+            else if (name.equals("setReadOnly")) {
+                readOnly = (Boolean) args[0];
+            }
+            else if (name.equals("getTransactionIsolation")) {
+                return isolation;
+            }
+            else if (name.equals("setTransactionIsolation")) {
+                isolation = (Integer) args[0];
+            }
+            else if (name.equals("getSchema")) {
+                return schema;
+            }
+            else if (name.equals("setSchema")) {
+                schema = (String) args[0];
+            }
+            else if (name.equals("isClosed")) {
+                return closed;
+            }
+            else if (name.equals("isValid")) {
+                return !closed;
+            }
+            else if (name.equals("createStatement") || name.startsWith("prepare")) {
+                Class<?> type = method.getReturnType();
+                return newProxy(type, new StubStatement((Connection) proxy));
+            }
+            return defaultValue(method.getReturnType());
+        }
+
+    }
+
+    private final class StubStatement implements InvocationHandler {
+
+        private final Connection connection;
+
+        StubStatement(Connection connection) {
+            this.connection = connection;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (method.getDeclaringClass() == Object.class) {
+                return invokeObjectMethod(proxy, method, args);
+            }
+
+            String name = method.getName();
+            if (ROUND_TRIPS.contains(name)) {
+                roundTrips.incrementAndGet();
+            }
+
+            if (name.equals("getConnection")) {
+                return connection;
+            }
+            else if (name.equals("executeQuery") || name.equals("getResultSet")) {
+                return newProxy(ResultSet.class, new StubResultSet((Statement) proxy));
+            }
+            else if (name.equals("executeBatch")) {
+                return new int[0];
+            }
+            return defaultValue(method.getReturnType());
+        }
+
+    }
+
+    private final class StubResultSet implements InvocationHandler {
+
+        private final Statement statement;
+
+        StubResultSet(Statement statement) {
+            this.statement = statement;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (method.getDeclaringClass() == Object.class) {
+                return invokeObjectMethod(proxy, method, args);
+            }
+
+            if (method.getName().equals("getStatement")) {
+                return statement;
+            }
+            return defaultValue(method.getReturnType());
+        }
+
+    }
+
+}
@@ -0,0 +1,93 @@
+package craven.interceptor;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+import javax.interceptor.InvocationContext;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * A call through pass-through interceptors with an {@link InterceptorChain}, against nesting a reflective
+ * {@link SimpleInvocationContext} per interceptor as the interceptors were stacked before.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class InterceptorChainBenchmark {
+
+    @Param({ "0", "2" })
+    public int interceptors;
+
+    private final Service target = new Service();
+    private final Integer id = 42;
+
+    private Method method;
+    private Interceptor[] stack;
+    private InterceptorChain.Invoker invoker;
+
+    public static class Service {
+
+        public int find(Integer id) {
+            return id;
+        }
+
+    }
+
+    private static final Interceptor PASS_THROUGH = new Interceptor() {
+        @Override public Object around(InvocationContext ic) throws Exception {
+            return ic.proceed();
+        }
+    };
+
+    @Setup
+    public void setUp() throws NoSuchMethodException {
+        method = Service.class.getMethod("find", Integer.class);
+
+        stack = new Interceptor[interceptors];
+        for (int i = 0; i < interceptors; i++) {
+            stack[i] = PASS_THROUGH;
+        }
+        invoker = new InterceptorChain(stack).bind(method);
+    }
+
+    @Benchmark
+    public int direct() {
+        return target.find(id);
+    }
+
+    @Benchmark
+    public Object chain() throws Exception {
+        return invoker.invoke(target, id);
+    }
+
+    @Benchmark
+    public Object reflective() throws Exception {
+        return proceed(0, new Object[] { id });
+    }
+
+    private Object proceed(final int index, final Object[] parameters) throws Exception {
+        if (index == stack.length) {
+            return new SimpleInvocationContext(target, method, parameters).proceed();
+        }
+        return stack[index].around(new SimpleInvocationContext(target, method, parameters) {
+            @Override public Object proceed() throws Exception {
+                return InterceptorChainBenchmark.this.proceed(index + 1, getParameters());
+            }
+        });
+    }
+
+}
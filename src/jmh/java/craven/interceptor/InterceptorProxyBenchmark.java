@@ -0,0 +1,103 @@
+package craven.interceptor;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import craven.datasource.StubDataSource;
+import craven.transaction.jdbc.JdbcTransactionManager;
+
+/**
+ * Calls through a proxy of the {@link InterceptorProxyFactory}, against direct calls of the implementation.
+ *
+ * The proxied methods run through no interceptor, the {@link LoggingInterceptor} and both the logging and the
+ * {@link TransactionInterceptor}. The benchmarks run without an slf4j binding, so the logging interceptor only checks
+ * its level, and the transactional method supports running outside of a transaction, so that the proxy and the chain
+ * are measured rather than the transaction.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class InterceptorProxyBenchmark {
+
+    private final Integer id = 42;
+
+    private Service implementation;
+    private Service proxy;
+
+    public interface Service {
+
+        int plain(Integer id);
+
+        int logged(Integer id);
+
+        int transactional(Integer id);
+
+    }
+
+    public static class ServiceImpl implements Service {
+
+        @Override
+        public int plain(Integer id) {
+            return id;
+        }
+
+        @Logging
+        @Override
+        public int logged(Integer id) {
+            return id;
+        }
+
+        @Logging
+        @Transactional(propagation = TxPropagation.SUPPORTS)
+        @Override
+        public int transactional(Integer id) {
+            return id;
+        }
+
+    }
+
+    @Setup
+    public void setUp() {
+        InterceptorProxyFactory factory = new InterceptorProxyFactory.Builder()
+                .bind(Logging.class, new LoggingInterceptor())
+                .bind(Transactional.class, new TransactionInterceptor(new JdbcTransactionManager(new StubDataSource())))
+                .build();
+
+        implementation = new ServiceImpl();
+        proxy = factory.create(Service.class, implementation);
+    }
+
+    @Benchmark
+    public int direct() {
+        return implementation.plain(id);
+    }
+
+    @Benchmark
+    public int proxy() {
+        return proxy.plain(id);
+    }
+
+    @Benchmark
+    public int proxyLogged() {
+        return proxy.logged(id);
+    }
+
+    @Benchmark
+    public int proxyTransactional() {
+        return proxy.transactional(id);
+    }
+
+}
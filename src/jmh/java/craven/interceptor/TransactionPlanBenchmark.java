@@ -0,0 +1,100 @@
+package craven.interceptor;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import javax.interceptor.InvocationContext;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import craven.datasource.StubDataSource;
+import craven.transaction.jdbc.JdbcTransactionManager;
+
+/**
+ * A declarative call through the {@link TransactionInterceptor} with its cached plan, against looking up the
+ * annotation on every call as the interceptor did before.
+ *
+ * The methods use {@link TxPropagation#SUPPORTS} outside of a transaction, so that the call costs little more than
+ * finding its attributes. The annotation is on the method or, found after a miss on the method, on the class.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TransactionPlanBenchmark {
+
+    @Param({ "method", "class" })
+    public String annotated;
+
+    private TransactionInterceptor interceptor;
+    private InvocationContext context;
+
+    public static class MethodService {
+
+        @Transactional(propagation = TxPropagation.SUPPORTS)
+        public int find(Integer id) {
+            return id;
+        }
+
+    }
+
+    @Transactional(propagation = TxPropagation.SUPPORTS)
+    public static class ClassService {
+
+        public int find(Integer id) {
+            return id;
+        }
+
+    }
+
+    @Setup
+    public void setUp() throws NoSuchMethodException {
+        interceptor = new TransactionInterceptor(new JdbcTransactionManager(new StubDataSource()));
+
+        Object target = annotated.equals("method") ? new MethodService() : new ClassService();
+        Method method = target.getClass().getMethod("find", Integer.class);
+        context = new SimpleInvocationContext(target, method, new Object[] { 42 });
+    }
+
+    @Benchmark
+    public Object cachedPlan() throws Exception {
+        return interceptor.around(context);
+    }
+
+    @Benchmark
+    public Object annotationLookup() throws Exception {
+        final InvocationContext ic = context;
+        Method method = ic.getMethod();
+
+        Transactional annotation;
+        if (method.isAnnotationPresent(Transactional.class)) {
+            annotation = method.getAnnotation(Transactional.class);
+        }
+        else if (ic.getTarget().getClass().isAnnotationPresent(Transactional.class)) {
+            annotation = ic.getTarget().getClass().getAnnotation(Transactional.class);
+        }
+        else {
+            throw new IllegalStateException("Could not find @Transactional annotation");
+        }
+
+        return TransactionPlan.of(annotation).apply(interceptor, method, new Callable<Object>() {
+            @Override public Object call() throws Exception {
+                return ic.proceed();
+            }
+        });
+    }
+
+}
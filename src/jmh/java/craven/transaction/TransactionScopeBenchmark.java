@@ -0,0 +1,109 @@
+package craven.transaction;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import craven.datasource.StubDataSource;
+import craven.transaction.jdbc.JdbcTransactionManager;
+
+/**
+ * Begin and commit throughput of 10k virtual threads running 20 transactions each, with the frames bound to the
+ * threads or to a {@link TransactionScope} per thread.
+ *
+ * The transactions acquire no connection, so that the binding is measured rather than the database. Needs JDK 21 or
+ * later for the virtual threads; the scoped binding takes effect with the multi-release jar of the {@code scoped}
+ * profile on JDK 25 or later, {@code mvn -Pscoped,jmh ...}, before that it runs the tasks with the thread local frames.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TransactionScopeBenchmark {
+
+    private static final int THREADS = 10000;
+    private static final int TRANSACTIONS = 20;
+
+    @Param({ "thread", "scope" })
+    public String binding;
+
+    private JdbcTransactionManager tm;
+    private ExecutorService executor;
+
+    @Setup
+    public void setUp() throws Exception {
+        tm = new JdbcTransactionManager(new StubDataSource());
+        tm.setLazyConnection(true);
+
+        try {
+            executor = (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        }
+        catch (NoSuchMethodException e) {
+            throw new IllegalStateException("Virtual threads need JDK 21 or later", e);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        executor.shutdown();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(THREADS * TRANSACTIONS)
+    public void transactions() throws InterruptedException {
+        final boolean scoped = binding.equals("scope");
+        final CountDownLatch done = new CountDownLatch(THREADS);
+
+        final Runnable work = new Runnable() {
+            @Override public void run() {
+                try {
+                    for (int i = 0; i < TRANSACTIONS; i++) {
+                        tm.begin();
+                        tm.commit();
+                    }
+                }
+                catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        };
+
+        for (int i = 0; i < THREADS; i++) {
+            executor.execute(new Runnable() {
+                @Override public void run() {
+                    try {
+                        if (scoped) {
+                            TransactionScope.run(work);
+                        }
+                        else {
+                            work.run();
+                        }
+                    }
+                    finally {
+                        done.countDown();
+                    }
+                }
+            });
+        }
+
+        done.await();
+    }
+
+}
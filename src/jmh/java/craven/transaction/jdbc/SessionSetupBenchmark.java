@@ -0,0 +1,128 @@
+package craven.transaction.jdbc;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.DataSource;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import craven.datasource.PoolConfig;
+import craven.datasource.PooledDataSource;
+import craven.datasource.StandardSessionDialect;
+import craven.datasource.StubDataSource;
+import craven.interceptor.Transactional;
+import craven.interceptor.TxConfig;
+import craven.interceptor.TxIsolation;
+
+/**
+ * Round trips to the database per transaction of one statement, counted on connections that talk to no database.
+ *
+ * The {@code roundTrips} counter divided by {@code transactions} gives the round trips per transaction, the statement
+ * itself and, for the driver, the connect and close included. With {@code source=driver} each transaction sets up a new
+ * connection and reads its session state once, as every begin did before the state was tracked. The pooled sources keep
+ * the state with the physical connection: {@code mixed} alternates read-only and read-write serializable transactions,
+ * so that each one changes the session, in one statement with the PostgreSQL dialect.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SessionSetupBenchmark {
+
+    private static final Transactional READ_WRITE = TxConfig.readOnly(false).build();
+    private static final Transactional READ_ONLY_SERIALIZABLE =
+            TxConfig.readOnly(true).isolation(TxIsolation.SERIALIZABLE).build();
+
+    @Param({ "driver", "pool", "pool-postgresql" })
+    public String source;
+
+    @Param({ "read-write", "mixed" })
+    public String transactions;
+
+    private StubDataSource driver;
+    private PooledDataSource pool;
+    private JdbcTransactionManager tm;
+    private TransactionalDataSource dataSource;
+
+    private long count;
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Counters {
+
+        public long roundTrips;
+        public long transactions;
+
+    }
+
+    @Setup
+    public void setUp() {
+        driver = new StubDataSource();
+
+        DataSource physical = driver;
+        if (source.startsWith("pool")) {
+            PoolConfig.Builder config = PoolConfig.maxSize(1).minIdle(0);
+            if (source.equals("pool-postgresql")) {
+                config.sessionDialect(StandardSessionDialect.POSTGRESQL);
+            }
+            pool = new PooledDataSource(driver, config.build());
+            physical = pool;
+        }
+
+        tm = new JdbcTransactionManager(physical);
+        dataSource = new TransactionalDataSource(tm);
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (pool != null) {
+            pool.close();
+        }
+    }
+
+    @Benchmark
+    public void transaction(Counters counters) throws Exception {
+        boolean mixed = transactions.equals("mixed") && (count++ & 1) == 1;
+        long started = driver.getRoundTrips();
+
+        tm.begin(mixed ? READ_ONLY_SERIALIZABLE : READ_WRITE);
+        try {
+            execute("select 1");
+        }
+        catch (SQLException e) {
+            tm.rollback();
+            throw e;
+        }
+        tm.commit();
+
+        counters.roundTrips += driver.getRoundTrips() - started;
+        counters.transactions++;
+    }
+
+    private void execute(String sql) throws SQLException {
+        Connection connection = dataSource.getConnection();
+        try {
+            connection.createStatement().execute(sql);
+        }
+        finally {
+            connection.close();
+        }
+    }
+
+}
@@ -0,0 +1,201 @@
+package craven.datasource;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A checkout of a prepared statement of a {@link StatementCachingConnection}, closing it returns the physical
+ * statement to the cache and leaves this one closed for good.
+ */
+final class CachedPreparedStatement extends DelegatingPreparedStatement {
+
+    private static final Logger logger = LoggerFactory.getLogger(CachedPreparedStatement.class);
+
+    private final StatementCachingConnection connection;
+    private final StatementCachingConnection.Key key;
+    private final PreparedStatement statement;
+
+    private boolean closed = false;
+    private boolean poolable = true;
+
+    // state to reset on close, a null value means no change
+    private ResultSet resultSet;
+    private boolean batched = false;
+    private Integer originalQueryTimeout;
+    private Integer originalMaxRows;
+    private Integer originalFetchSize;
+
+    CachedPreparedStatement(StatementCachingConnection connection, StatementCachingConnection.Key key,
+            PreparedStatement statement) {
+        this.connection = connection;
+        this.key = key;
+        this.statement = statement;
+    }
+
+    @Override
+    protected PreparedStatement delegate() {
+        return statement;
+    }
+
+    @Override
+    protected void checkOpen() throws SQLException {
+        if (closed) {
+            throw new SQLException("Statement is closed.");
+        }
+    }
+
+    // -- Track the state to reset
+
+    @Override
+    public ResultSet executeQuery() throws SQLException {
+        resultSet = super.executeQuery();
+        return resultSet;
+    }
+
+    @Override
+    public ResultSet getResultSet() throws SQLException {
+        resultSet = super.getResultSet();
+        return resultSet;
+    }
+
+    @Override
+    public void addBatch() throws SQLException {
+        super.addBatch();
+        batched = true;
+    }
+
+    @Override
+    public void addBatch(String sql) throws SQLException {
+        super.addBatch(sql);
+        batched = true;
+    }
+
+    @Override
+    public int[] executeBatch() throws SQLException {
+        batched = false;
+        return super.executeBatch();
+    }
+
+    @Override
+    public void clearBatch() throws SQLException {
+        super.clearBatch();
+        batched = false;
+    }
+
+    @Override
+    public void setQueryTimeout(int seconds) throws SQLException {
+        if (originalQueryTimeout == null) {
+            originalQueryTimeout = super.getQueryTimeout();
+        }
+        super.setQueryTimeout(seconds);
+    }
+
+    @Override
+    public void setMaxRows(int max) throws SQLException {
+        if (originalMaxRows == null) {
+            originalMaxRows = super.getMaxRows();
+        }
+        super.setMaxRows(max);
+    }
+
+    @Override
+    public void setFetchSize(int rows) throws SQLException {
+        if (originalFetchSize == null) {
+            originalFetchSize = super.getFetchSize();
+        }
+        super.setFetchSize(rows);
+    }
+
+    @Override
+    public void setPoolable(boolean poolable) throws SQLException {
+        checkOpen();
+        this.poolable = poolable;
+    }
+
+    @Override
+    public boolean isPoolable() throws SQLException {
+        checkOpen();
+        return poolable;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        checkOpen();
+        return connection;
+    }
+
+    // --
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+
+        if (!poolable) {
+            closePhysically();
+            return;
+        }
+
+        try {
+            reset();
+        }
+        catch (Throwable t) {
+            // We don't trust the JDBC driver: It might throw RuntimeException or Error.
+            logger.debug("Could not reset cached statement, closing it", t);
+            closePhysically();
+            return;
+        }
+
+        connection.release(key, statement);
+    }
+
+    @Override
+    public boolean isClosed() {
+        return closed;
+    }
+
+    private void reset() throws SQLException {
+        if (resultSet != null) {
+            JdbcUtils.closeResultSet(resultSet);
+            resultSet = null;
+        }
+
+        statement.clearParameters();
+        if (batched) {
+            statement.clearBatch();
+            batched = false;
+        }
+
+        if (originalQueryTimeout != null) {
+            statement.setQueryTimeout(originalQueryTimeout);
+            originalQueryTimeout = null;
+        }
+        if (originalMaxRows != null) {
+            statement.setMaxRows(originalMaxRows);
+            originalMaxRows = null;
+        }
+        if (originalFetchSize != null) {
+            statement.setFetchSize(originalFetchSize);
+            originalFetchSize = null;
+        }
+
+        statement.clearWarnings();
+    }
+
+    private void closePhysically() {
+        JdbcUtils.closeStatement(statement);
+    }
+
+    @Override
+    public String toString() {
+        return "CachedPreparedStatement[" + statement + "]";
+    }
+
+}
@@ -0,0 +1,35 @@
+package craven.datasource;
+
+/**
+ * Notifies several listeners in turn, e.g. both {@link StatementMetrics} and {@link HeavyHitters}.
+ */
+public class CompositeStatementListener implements StatementListener {
+
+    private final StatementListener[] listeners;
+
+    public CompositeStatementListener(StatementListener... listeners) {
+        this.listeners = listeners.clone();
+    }
+
+    @Override
+    public void executed(String fingerprint, long elapsed, long rows) {
+        for (StatementListener listener : listeners) {
+            listener.executed(fingerprint, elapsed, rows);
+        }
+    }
+
+    @Override
+    public void failed(String fingerprint, long elapsed) {
+        for (StatementListener listener : listeners) {
+            listener.failed(fingerprint, elapsed);
+        }
+    }
+
+    @Override
+    public void rowsRead(String fingerprint, long rows) {
+        for (StatementListener listener : listeners) {
+            listener.rowsRead(fingerprint, rows);
+        }
+    }
+
+}
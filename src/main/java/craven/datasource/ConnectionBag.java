@@ -0,0 +1,234 @@
+package craven.datasource;
+
+import static craven.datasource.PoolEntry.IN_USE;
+import static craven.datasource.PoolEntry.NOT_IN_USE;
+import static craven.datasource.PoolEntry.REMOVED;
+import static craven.datasource.PoolEntry.RESERVED;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Lock-free collection of pool entries, bucketed by their {@link SessionState}.
+ *
+ * A borrowing thread first looks for an entry in the requested state among the entries it returned itself
+ * (thread-affine fast path), then in the shared list. When its bucket is dry it asks the pool to grow and waits for a
+ * hand-off from a returning thread or a newly created entry, or, if the pool cannot grow, takes an idle entry from the
+ * largest other bucket. Either way at most one entry changes bucket per borrow. Entry ownership is decided by a
+ * compare-and-set on the entry state, never by a lock.
+ */
+final class ConnectionBag {
+
+    interface Listener {
+        /**
+         * Called when a borrower found no suitable idle entry, {@code waiting} is the number of threads waiting.
+         *
+         * Returns {@code true} if new entries are on their way, {@code false} if the pool cannot grow.
+         */
+        boolean addBagItem(int waiting);
+    }
+
+    private static final int THREAD_LIST_CAPACITY = 16;
+
+    private final CopyOnWriteArrayList<PoolEntry> shared = new CopyOnWriteArrayList<PoolEntry>();
+
+    private final ThreadLocal<List<WeakReference<PoolEntry>>> threadList = new ThreadLocal<List<WeakReference<PoolEntry>>>() {
+        @Override protected List<WeakReference<PoolEntry>> initialValue() {
+            return new ArrayList<WeakReference<PoolEntry>>(THREAD_LIST_CAPACITY);
+        }
+    };
+
+    private final SynchronousQueue<PoolEntry> handoffQueue = new SynchronousQueue<PoolEntry>(true);
+
+    private final AtomicInteger waiters = new AtomicInteger();
+
+    private final Listener listener;
+
+    ConnectionBag(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Borrow an idle entry, preferably in the given session state, waiting up to the given timeout.
+     * Returns {@code null} on timeout.
+     */
+    PoolEntry borrow(SessionState sessionState, long timeout, TimeUnit unit) throws InterruptedException {
+        // Thread-affine fast path, most recently returned first
+        List<WeakReference<PoolEntry>> list = threadList.get();
+        for (int i = list.size() - 1; i >= 0; i--) {
+            PoolEntry entry = list.get(i).get();
+            if (entry == null) {
+                list.remove(i);
+            }
+            else if (entry.getSessionState() == sessionState && entry.compareAndSetState(NOT_IN_USE, IN_USE)) {
+                list.remove(i);
+                return entry;
+            }
+        }
+
+        int waiting = waiters.incrementAndGet();
+        try {
+            for (PoolEntry entry : shared) {
+                if (entry.getSessionState() == sessionState && entry.compareAndSetState(NOT_IN_USE, IN_USE)) {
+                    // We may have stolen an entry another waiter was notified about
+                    if (waiting > 1) {
+                        listener.addBagItem(waiting - 1);
+                    }
+                    return entry;
+                }
+            }
+
+            if (!listener.addBagItem(waiting)) {
+                PoolEntry entry = steal();
+                if (entry != null) {
+                    return entry;
+                }
+            }
+
+            long remaining = unit.toNanos(timeout);
+            do {
+                long start = System.nanoTime();
+                PoolEntry entry = handoffQueue.poll(remaining, TimeUnit.NANOSECONDS);
+                if (entry == null || entry.compareAndSetState(NOT_IN_USE, IN_USE)) {
+                    return entry;
+                }
+                remaining -= System.nanoTime() - start;
+            } while (remaining > 10000);
+
+            return null;
+        }
+        finally {
+            waiters.decrementAndGet();
+        }
+    }
+
+    /**
+     * Take an idle entry from the bucket with the most idle entries.
+     */
+    private PoolEntry steal() {
+        int[] idle = new int[SessionState.count()];
+        int largest = -1;
+        for (PoolEntry entry : shared) {
+            if (entry.getState() == NOT_IN_USE) {
+                int index = entry.getSessionState().index();
+                idle[index]++;
+                if (largest < 0 || idle[index] > idle[largest]) {
+                    largest = index;
+                }
+            }
+        }
+
+        if (largest >= 0) {
+            for (PoolEntry entry : shared) {
+                if (entry.getSessionState().index() == largest && entry.compareAndSetState(NOT_IN_USE, IN_USE)) {
+                    return entry;
+                }
+            }
+            for (PoolEntry entry : shared) {
+                if (entry.compareAndSetState(NOT_IN_USE, IN_USE)) {
+                    return entry;
+                }
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Return a borrowed entry, handing it off directly to a waiting thread if there is one.
+     */
+    void requite(PoolEntry entry) {
+        entry.setState(NOT_IN_USE);
+
+        for (int i = 0; waiters.get() > 0; i++) {
+            if (entry.getState() != NOT_IN_USE || handoffQueue.offer(entry)) {
+                return;
+            }
+            else if ((i & 0xff) == 0xff) {
+                LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(10));
+            }
+            else {
+                Thread.yield();
+            }
+        }
+
+        List<WeakReference<PoolEntry>> list = threadList.get();
+        if (list.size() < THREAD_LIST_CAPACITY) {
+            list.add(new WeakReference<PoolEntry>(entry));
+        }
+    }
+
+    void add(PoolEntry entry) {
+        shared.add(entry);
+
+        // Spin until a waiting thread takes the entry or starts to take it
+        while (waiters.get() > 0 && entry.getState() == NOT_IN_USE && !handoffQueue.offer(entry)) {
+            Thread.yield();
+        }
+    }
+
+    /**
+     * Remove a borrowed or reserved entry from the bag.
+     */
+    boolean remove(PoolEntry entry) {
+        if (!entry.compareAndSetState(IN_USE, REMOVED) && !entry.compareAndSetState(RESERVED, REMOVED)) {
+            return false;
+        }
+        return shared.remove(entry);
+    }
+
+    /**
+     * Reserve an idle entry so that it cannot be borrowed, used for eviction.
+     */
+    boolean reserve(PoolEntry entry) {
+        return entry.compareAndSetState(NOT_IN_USE, RESERVED);
+    }
+
+    void unreserve(PoolEntry entry) {
+        if (entry.compareAndSetState(RESERVED, NOT_IN_USE)) {
+            // Spin until a waiting thread takes the entry or starts to take it
+            while (waiters.get() > 0 && entry.getState() == NOT_IN_USE && !handoffQueue.offer(entry)) {
+                Thread.yield();
+            }
+        }
+    }
+
+    List<PoolEntry> values(int state) {
+        List<PoolEntry> list = new ArrayList<PoolEntry>();
+        for (PoolEntry entry : shared) {
+            if (entry.getState() == state) {
+                list.add(entry);
+            }
+        }
+        return list;
+    }
+
+    List<PoolEntry> values() {
+        return new ArrayList<PoolEntry>(shared);
+    }
+
+    int getCount(int state) {
+        int count = 0;
+        for (PoolEntry entry : shared) {
+            if (entry.getState() == state) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    int size() {
+        return shared.size();
+    }
+
+    int getWaitingThreadCount() {
+        return waiters.get();
+    }
+
+}
@@ -0,0 +1,334 @@
+package craven.datasource;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Tracks the heaviest statements by total time, calls and rows in constant memory, however many distinct statements
+ * are executed. Feed it from an {@link InstrumentedDataSource}.
+ *
+ * Totals per fingerprint are estimated with a count-min sketch, which may overestimate but never underestimates; the
+ * {@code k} fingerprints with the largest estimates are kept in a heap per measure.
+ */
+public class HeavyHitters implements StatementListener, Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(HeavyHitters.class);
+
+    private static final int TIME = 0;
+    private static final int CALLS = 1;
+    private static final int ROWS = 2;
+
+    private static final String[] MEASURES = { "time", "calls", "rows" };
+
+    // seeds of the two hashes combined into the hash of each row
+    private static final int SEED1 = 0x9747b28c;
+    private static final int SEED2 = 0x5bd1e995;
+
+    private final int depth;
+    private final int widthBits;
+
+    // count-min sketch: one plane of depth x width counters per measure
+    private final AtomicLongArray counters;
+
+    private final TopK[] tops;
+
+    private ScheduledExecutorService dumper;
+
+    public HeavyHitters() {
+        this(20, 1024, 4);
+    }
+
+    /**
+     * @param k the number of statements tracked per measure
+     * @param width the counters per row of the sketch, rounded up to a power of two
+     * @param depth the rows of the sketch, i.e. independent hash functions
+     */
+    public HeavyHitters(int k, int width, int depth) {
+        this.depth = depth;
+        this.widthBits = 32 - Integer.numberOfLeadingZeros(Math.max(1, width - 1));
+        this.counters = new AtomicLongArray(MEASURES.length * depth << widthBits);
+
+        this.tops = new TopK[MEASURES.length];
+        for (int i = 0; i < tops.length; i++) {
+            tops[i] = new TopK(k);
+        }
+    }
+
+    // -- StatementListener
+
+    @Override
+    public void executed(String fingerprint, long elapsed, long rows) {
+        long hash = hash(fingerprint);
+        record(TIME, fingerprint, hash, elapsed);
+        record(CALLS, fingerprint, hash, 1);
+        if (rows > 0) {
+            record(ROWS, fingerprint, hash, rows);
+        }
+    }
+
+    @Override
+    public void failed(String fingerprint, long elapsed) {
+        long hash = hash(fingerprint);
+        record(TIME, fingerprint, hash, elapsed);
+        record(CALLS, fingerprint, hash, 1);
+    }
+
+    @Override
+    public void rowsRead(String fingerprint, long rows) {
+        if (rows > 0) {
+            record(ROWS, fingerprint, hash(fingerprint), rows);
+        }
+    }
+
+    private void record(int measure, String fingerprint, long hash, long value) {
+        // Note: h1 + row * h2 gives rows as independent as the two hashes (Kirsch and Mitzenmacher), h2 is odd so
+        // that the rows never share a bucket through h2 alone.
+        int h1 = (int) (hash >>> 32);
+        int h2 = (int) hash | 1;
+        int mask = (1 << widthBits) - 1;
+
+        long estimate = Long.MAX_VALUE;
+        int plane = measure * depth;
+        for (int row = 0; row < depth; row++) {
+            int index = ((plane + row) << widthBits) + ((h1 + row * h2) & mask);
+            estimate = Math.min(estimate, counters.addAndGet(index, value));
+        }
+        tops[measure].offer(fingerprint, estimate);
+    }
+
+    /**
+     * Two murmur3 hashes of the fingerprint with different seeds, in the high and low half.
+     */
+    private static long hash(String fingerprint) {
+        return ((long) murmur3(fingerprint, SEED1) << 32) | (murmur3(fingerprint, SEED2) & 0xffffffffL);
+    }
+
+    /**
+     * murmur3_32 over the chars of the string, two chars per block, as Guava hashes a CharSequence.
+     */
+    private static int murmur3(String s, int seed) {
+        int h = seed;
+        int length = s.length();
+        for (int i = 1; i < length; i += 2) {
+            h = mixH(h, mixK(s.charAt(i - 1) | (s.charAt(i) << 16)));
+        }
+        if ((length & 1) == 1) {
+            h ^= mixK(s.charAt(length - 1));
+        }
+
+        h ^= 2 * length;
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    private static int mixK(int k) {
+        k *= 0xcc9e2d51;
+        k = Integer.rotateLeft(k, 15);
+        k *= 0x1b873593;
+        return k;
+    }
+
+    private static int mixH(int h, int k) {
+        h ^= k;
+        h = Integer.rotateLeft(h, 13);
+        h = h * 5 + 0xe6546b64;
+        return h;
+    }
+
+    // --
+
+    /**
+     * Heaviest statements by total time in nanoseconds, heaviest first.
+     */
+    public List<Entry> getTopByTime() {
+        return tops[TIME].snapshot();
+    }
+
+    public List<Entry> getTopByCalls() {
+        return tops[CALLS].snapshot();
+    }
+
+    public List<Entry> getTopByRows() {
+        return tops[ROWS].snapshot();
+    }
+
+    /**
+     * Forget everything and start a new interval.
+     */
+    public void reset() {
+        for (int i = 0; i < counters.length(); i++) {
+            counters.set(i, 0);
+        }
+        for (TopK top : tops) {
+            top.clear();
+        }
+    }
+
+    /**
+     * Log the heaviest statements at info level every {@code period}, optionally resetting after each dump.
+     */
+    public synchronized void startDump(long period, TimeUnit unit, final boolean reset) {
+        if (dumper != null) {
+            throw new IllegalStateException("Dump already started");
+        }
+        dumper = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("craven-heavy-hitters-%d").build());
+        dumper.scheduleAtFixedRate(new Runnable() {
+            @Override public void run() {
+                try {
+                    logger.info(dump());
+                    if (reset) {
+                        reset();
+                    }
+                }
+                catch (Throwable t) {
+                    logger.warn("Could not dump heavy hitters", t);
+                }
+            }
+        }, period, period, unit);
+    }
+
+    @Override
+    public synchronized void close() {
+        if (dumper != null) {
+            dumper.shutdownNow();
+            dumper = null;
+        }
+    }
+
+    public String dump() {
+        StringBuilder sb = new StringBuilder("Heaviest statements (estimates)");
+        for (int measure = 0; measure < MEASURES.length; measure++) {
+            sb.append("\n by ").append(MEASURES[measure]).append(":");
+            List<Entry> entries = tops[measure].snapshot();
+            for (int i = 0; i < entries.size(); i++) {
+                Entry entry = entries.get(i);
+                long value = (measure == TIME) ? TimeUnit.NANOSECONDS.toMillis(entry.getEstimate()) : entry.getEstimate();
+                sb.append("\n  ").append(i + 1).append(". ").append(value).append((measure == TIME) ? "ms " : " ");
+                sb.append(entry.getFingerprint());
+            }
+        }
+        return sb.toString();
+    }
+
+    // --
+
+    /**
+     * A fingerprint with its estimated total.
+     */
+    public static final class Entry {
+
+        private final String fingerprint;
+        private long estimate;
+
+        Entry(String fingerprint, long estimate) {
+            this.fingerprint = fingerprint;
+            this.estimate = estimate;
+        }
+
+        public String getFingerprint() {
+            return fingerprint;
+        }
+
+        public long getEstimate() {
+            return estimate;
+        }
+
+        @Override
+        public String toString() {
+            return estimate + " " + fingerprint;
+        }
+
+    }
+
+    private static final Comparator<Entry> BY_ESTIMATE = new Comparator<Entry>() {
+        @Override public int compare(Entry a, Entry b) {
+            return (a.estimate < b.estimate) ? -1 : (a.estimate > b.estimate) ? 1 : 0;
+        }
+    };
+
+    /**
+     * The {@code k} largest estimates, a min-heap with an index by fingerprint.
+     */
+    private static final class TopK {
+
+        private final int k;
+        private final PriorityQueue<Entry> heap;
+        private final Map<String, Entry> entries;
+
+        // smallest estimate in a full heap, read without the lock to skip the light statements
+        private volatile long threshold = 0;
+
+        TopK(int k) {
+            this.k = k;
+            this.heap = new PriorityQueue<Entry>(k, BY_ESTIMATE);
+            this.entries = new HashMap<String, Entry>(2 * k);
+        }
+
+        void offer(String fingerprint, long estimate) {
+            if (estimate <= threshold) {
+                return;
+            }
+
+            synchronized (this) {
+                Entry entry = entries.get(fingerprint);
+                if (entry != null) {
+                    heap.remove(entry);
+                    entry.estimate = Math.max(entry.estimate, estimate);
+                    heap.add(entry);
+                }
+                else if (heap.size() < k) {
+                    entry = new Entry(fingerprint, estimate);
+                    entries.put(fingerprint, entry);
+                    heap.add(entry);
+                }
+                else if (estimate > heap.peek().estimate) {
+                    entries.remove(heap.poll().fingerprint);
+                    entry = new Entry(fingerprint, estimate);
+                    entries.put(fingerprint, entry);
+                    heap.add(entry);
+                }
+
+                if (heap.size() == k) {
+                    threshold = heap.peek().estimate;
+                }
+            }
+        }
+
+        synchronized List<Entry> snapshot() {
+            List<Entry> list = new ArrayList<Entry>(heap.size());
+            for (Entry entry : heap) {
+                list.add(new Entry(entry.fingerprint, entry.estimate));
+            }
+            Collections.sort(list, Collections.reverseOrder(BY_ESTIMATE));
+            return list;
+        }
+
+        synchronized void clear() {
+            heap.clear();
+            entries.clear();
+            threshold = 0;
+        }
+
+    }
+
+}
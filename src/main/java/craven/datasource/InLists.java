@@ -0,0 +1,198 @@
+package craven.datasource;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Executes statements with an {@code IN (?)} list without producing a new SQL string for every list length.
+ *
+ * The parameter bound to the list is a {@code Collection}, its placeholder is expanded to a number of placeholders
+ * rounded up to a power of two, the extra ones repeat the last value. Lists larger than the maximum size are split
+ * into several executions whose results are concatenated. The statement shapes are thus bounded to about
+ * log2(maxSize) per SQL.
+ *
+ * <pre>
+ * List&lt;Long&gt; found = InLists.DEFAULT.query(connection, "SELECT id FROM t WHERE kind = ? AND id IN (?)", mapper, kind, ids);
+ * </pre>
+ *
+ * Only one parameter may be a collection. Splitting is only correct for statements whose result is the union of the
+ * results for the parts, e.g. no aggregates, ordering or limits across the list.
+ */
+public class InLists {
+
+    public static final InLists DEFAULT = new InLists(1000);
+
+    private final int maxSize;
+
+    /**
+     * @param maxSize the largest number of values bound in a single execution, e.g. 1000 for Oracle
+     */
+    public InLists(int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("maxSize must be positive");
+        }
+        this.maxSize = maxSize;
+    }
+
+    public int maxSize() {
+        return maxSize;
+    }
+
+    // --
+
+    public <T> List<T> query(Connection connection, String sql, RowMapper<T> mapper, Object... params) throws SQLException {
+        List<T> result = new ArrayList<T>();
+
+        int listIndex = listIndex(params);
+        if (listIndex < 0) {
+            execute(connection, sql, params, mapper, result);
+            return result;
+        }
+
+        List<?> values = new ArrayList<Object>((Collection<?>) params[listIndex]);
+        for (int from = 0; from < values.size(); from += maxSize) {
+            List<?> part = values.subList(from, Math.min(from + maxSize, values.size()));
+            int size = bucketSize(part.size());
+            execute(connection, expand(sql, listIndex, size), flatten(params, listIndex, part, size), mapper, result);
+        }
+        return result;
+    }
+
+    public int update(Connection connection, String sql, Object... params) throws SQLException {
+        int listIndex = listIndex(params);
+        if (listIndex < 0) {
+            return execute(connection, sql, params);
+        }
+
+        int count = 0;
+        List<?> values = new ArrayList<Object>((Collection<?>) params[listIndex]);
+        for (int from = 0; from < values.size(); from += maxSize) {
+            List<?> part = values.subList(from, Math.min(from + maxSize, values.size()));
+            int size = bucketSize(part.size());
+            count += execute(connection, expand(sql, listIndex, size), flatten(params, listIndex, part, size));
+        }
+        return count;
+    }
+
+    // -- Statement shapes
+
+    /**
+     * The number of placeholders used for a list of the given size: the next power of two, at most {@code maxSize}.
+     */
+    public int bucketSize(int size) {
+        if (size <= 1) {
+            return 1;
+        }
+        int bucket = Integer.highestOneBit(size - 1) << 1;
+        return (bucket > 0 && bucket < maxSize) ? bucket : maxSize;
+    }
+
+    /**
+     * Replace the placeholder of parameter {@code index} by {@code size} placeholders separated by commas.
+     */
+    static String expand(String sql, int index, int size) {
+        int position = placeholder(sql, index);
+        if (position < 0) {
+            throw new IllegalArgumentException("No placeholder for parameter " + (index + 1) + " in " + sql);
+        }
+
+        StringBuilder sb = new StringBuilder(sql.length() + 3 * size);
+        sb.append(sql, 0, position);
+        sb.append('?');
+        for (int i = 1; i < size; i++) {
+            sb.append(", ?");
+        }
+        sb.append(sql, position + 1, sql.length());
+        return sb.toString();
+    }
+
+    /**
+     * Position of the placeholder of parameter {@code index}, skipping quoted literals and identifiers.
+     */
+    private static int placeholder(String sql, int index) {
+        char quote = 0;
+        for (int i = 0; i < sql.length(); i++) {
+            char c = sql.charAt(i);
+            if (quote != 0) {
+                if (c == quote) {
+                    quote = 0;
+                }
+            }
+            else if (c == '\'' || c == '"') {
+                quote = c;
+            }
+            else if (c == '?' && index-- == 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int listIndex(Object[] params) {
+        int index = -1;
+        for (int i = 0; i < params.length; i++) {
+            if (params[i] instanceof Collection) {
+                if (index >= 0) {
+                    throw new IllegalArgumentException("Only one parameter may be a collection");
+                }
+                index = i;
+            }
+        }
+        return index;
+    }
+
+    private static Object[] flatten(Object[] params, int index, List<?> values, int size) {
+        Object[] flat = new Object[params.length - 1 + size];
+        System.arraycopy(params, 0, flat, 0, index);
+        for (int i = 0; i < size; i++) {
+            // Note: Repeating a value in an IN list does not change its meaning.
+            flat[index + i] = values.get(Math.min(i, values.size() - 1));
+        }
+        System.arraycopy(params, index + 1, flat, index + size, params.length - index - 1);
+        return flat;
+    }
+
+    // -- Execution
+
+    private static <T> void execute(Connection connection, String sql, Object[] params, RowMapper<T> mapper,
+            List<T> result) throws SQLException {
+        PreparedStatement ps = null;
+        ResultSet rs = null;
+        try {
+            ps = connection.prepareStatement(sql);
+            bind(ps, params);
+            rs = ps.executeQuery();
+            while (rs.next()) {
+                result.add(mapper.mapRow(rs));
+            }
+        }
+        finally {
+            JdbcUtils.closeResultSet(rs);
+            JdbcUtils.closeStatement(ps);
+        }
+    }
+
+    private static int execute(Connection connection, String sql, Object[] params) throws SQLException {
+        PreparedStatement ps = null;
+        try {
+            ps = connection.prepareStatement(sql);
+            bind(ps, params);
+            return ps.executeUpdate();
+        }
+        finally {
+            JdbcUtils.closeStatement(ps);
+        }
+    }
+
+    private static void bind(PreparedStatement ps, Object[] params) throws SQLException {
+        for (int i = 0; i < params.length; i++) {
+            ps.setObject(i + 1, params[i]);
+        }
+    }
+
+}
@@ -0,0 +1,86 @@
+package craven.datasource;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * See {@link InstrumentedDataSource}.
+ */
+final class InstrumentedConnection extends DelegatingConnection {
+
+    private final Connection connection;
+    private final StatementListener listener;
+
+    InstrumentedConnection(Connection connection, StatementListener listener) {
+        this.connection = connection;
+        this.listener = listener;
+    }
+
+    @Override
+    protected Connection delegate() {
+        return connection;
+    }
+
+    @Override
+    protected void checkOpen() throws SQLException {
+        // the physical connection checks for itself
+    }
+
+    // --
+
+    @Override
+    public Statement createStatement() throws SQLException {
+        return new InstrumentedStatement(super.createStatement(), this, listener);
+    }
+
+    @Override
+    public Statement createStatement(int resultSetType, int resultSetConcurrency) throws SQLException {
+        return new InstrumentedStatement(super.createStatement(resultSetType, resultSetConcurrency), this, listener);
+    }
+
+    @Override
+    public Statement createStatement(int resultSetType, int resultSetConcurrency, int resultSetHoldability) throws SQLException {
+        return new InstrumentedStatement(
+                super.createStatement(resultSetType, resultSetConcurrency, resultSetHoldability), this, listener);
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql) throws SQLException {
+        return new InstrumentedPreparedStatement(super.prepareStatement(sql), sql, this, listener);
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency) throws SQLException {
+        return new InstrumentedPreparedStatement(
+                super.prepareStatement(sql, resultSetType, resultSetConcurrency), sql, this, listener);
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency, int resultSetHoldability) throws SQLException {
+        return new InstrumentedPreparedStatement(
+                super.prepareStatement(sql, resultSetType, resultSetConcurrency, resultSetHoldability), sql, this, listener);
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql, int autoGeneratedKeys) throws SQLException {
+        return new InstrumentedPreparedStatement(super.prepareStatement(sql, autoGeneratedKeys), sql, this, listener);
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql, int[] columnIndexes) throws SQLException {
+        return new InstrumentedPreparedStatement(super.prepareStatement(sql, columnIndexes), sql, this, listener);
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql, String[] columnNames) throws SQLException {
+        return new InstrumentedPreparedStatement(super.prepareStatement(sql, columnNames), sql, this, listener);
+    }
+
+    @Override
+    public String toString() {
+        return "InstrumentedConnection[" + connection + "]";
+    }
+
+}
@@ -0,0 +1,43 @@
+package craven.datasource;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import javax.sql.DataSource;
+
+/**
+ * Reports the execution time and row count of every statement executed through its connections to a
+ * {@link StatementListener}, e.g. {@link StatementMetrics}.
+ */
+public class InstrumentedDataSource extends DelegatingDataSource {
+
+    private final DataSource dataSource;
+    private final StatementListener listener;
+
+    public InstrumentedDataSource(DataSource dataSource, StatementListener listener) {
+        this.dataSource = dataSource;
+        this.listener = listener;
+    }
+
+    @Override
+    protected DataSource delegate() {
+        return dataSource;
+    }
+
+    public StatementListener getListener() {
+        return listener;
+    }
+
+    // --
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return new InstrumentedConnection(super.getConnection(), listener);
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return new InstrumentedConnection(super.getConnection(username, password), listener);
+    }
+
+}
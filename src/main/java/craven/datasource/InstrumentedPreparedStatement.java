@@ -0,0 +1,131 @@
+package craven.datasource;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import craven.jfr.JfrEvents;
+
+/**
+ * See {@link InstrumentedDataSource}. The SQL is fingerprinted once, when the statement is prepared.
+ */
+final class InstrumentedPreparedStatement extends DelegatingPreparedStatement {
+
+    private final PreparedStatement statement;
+    private final String fingerprint;
+    private final Connection connection;
+    private final StatementListener listener;
+
+    InstrumentedPreparedStatement(PreparedStatement statement, String sql, Connection connection,
+            StatementListener listener) {
+        this.statement = statement;
+        this.fingerprint = SqlFingerprint.of(sql);
+        this.connection = connection;
+        this.listener = listener;
+    }
+
+    @Override
+    protected PreparedStatement delegate() {
+        return statement;
+    }
+
+    @Override
+    protected void checkOpen() throws SQLException {
+        // the statement checks for itself
+    }
+
+    // --
+
+    @Override
+    public ResultSet executeQuery() throws SQLException {
+        long start = System.nanoTime();
+        Object event = JfrEvents.beginStatement();
+        ResultSet rs;
+        try {
+            rs = super.executeQuery();
+        }
+        catch (Throwable t) {
+            JfrEvents.endStatement(event, fingerprint, -1, true);
+            listener.failed(fingerprint, System.nanoTime() - start);
+            throw t;
+        }
+        JfrEvents.endStatement(event, fingerprint, -1, false);
+        listener.executed(fingerprint, System.nanoTime() - start, -1);
+        return new InstrumentedResultSet(rs, this, fingerprint, listener);
+    }
+
+    @Override
+    public int executeUpdate() throws SQLException {
+        long start = System.nanoTime();
+        Object event = JfrEvents.beginStatement();
+        int count;
+        try {
+            count = super.executeUpdate();
+        }
+        catch (Throwable t) {
+            JfrEvents.endStatement(event, fingerprint, -1, true);
+            listener.failed(fingerprint, System.nanoTime() - start);
+            throw t;
+        }
+        JfrEvents.endStatement(event, fingerprint, count, false);
+        listener.executed(fingerprint, System.nanoTime() - start, count);
+        return count;
+    }
+
+    @Override
+    public boolean execute() throws SQLException {
+        long start = System.nanoTime();
+        Object event = JfrEvents.beginStatement();
+        boolean result;
+        try {
+            result = super.execute();
+        }
+        catch (Throwable t) {
+            JfrEvents.endStatement(event, fingerprint, -1, true);
+            listener.failed(fingerprint, System.nanoTime() - start);
+            throw t;
+        }
+        JfrEvents.endStatement(event, fingerprint, -1, false);
+        listener.executed(fingerprint, System.nanoTime() - start, -1);
+        return result;
+    }
+
+    @Override
+    public int[] executeBatch() throws SQLException {
+        long start = System.nanoTime();
+        Object event = JfrEvents.beginStatement();
+        int[] counts;
+        try {
+            counts = super.executeBatch();
+        }
+        catch (Throwable t) {
+            JfrEvents.endStatement(event, fingerprint, -1, true);
+            listener.failed(fingerprint, System.nanoTime() - start);
+            throw t;
+        }
+        long rows = InstrumentedStatement.sum(counts);
+        JfrEvents.endStatement(event, fingerprint, rows, false);
+        listener.executed(fingerprint, System.nanoTime() - start, rows);
+        return counts;
+    }
+
+    // --
+
+    @Override
+    public ResultSet getResultSet() throws SQLException {
+        ResultSet rs = super.getResultSet();
+        return (rs != null) ? new InstrumentedResultSet(rs, this, fingerprint, listener) : null;
+    }
+
+    @Override
+    public Connection getConnection() {
+        return connection;
+    }
+
+    @Override
+    public String toString() {
+        return "InstrumentedPreparedStatement[" + statement + "]";
+    }
+
+}
@@ -0,0 +1,67 @@
+package craven.datasource;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * See {@link InstrumentedDataSource}. Counts the rows read and reports them on close.
+ */
+final class InstrumentedResultSet extends DelegatingResultSet {
+
+    private final ResultSet rs;
+    private final Statement statement;
+    private final String fingerprint;
+    private final StatementListener listener;
+
+    private long rows = 0;
+    private boolean closed = false;
+
+    InstrumentedResultSet(ResultSet rs, Statement statement, String fingerprint, StatementListener listener) {
+        this.rs = rs;
+        this.statement = statement;
+        this.fingerprint = fingerprint;
+        this.listener = listener;
+    }
+
+    @Override
+    protected ResultSet delegate() {
+        return rs;
+    }
+
+    @Override
+    protected void checkOpen() throws SQLException {
+        // the result set checks for itself
+    }
+
+    // --
+
+    @Override
+    public boolean next() throws SQLException {
+        boolean next = super.next();
+        if (next) {
+            rows++;
+        }
+        return next;
+    }
+
+    @Override
+    public Statement getStatement() {
+        return statement;
+    }
+
+    @Override
+    public void close() throws SQLException {
+        if (!closed) {
+            closed = true;
+            listener.rowsRead(fingerprint, rows);
+        }
+        super.close();
+    }
+
+    @Override
+    public String toString() {
+        return "InstrumentedResultSet[" + rs + "]";
+    }
+
+}
@@ -0,0 +1,279 @@
+package craven.datasource;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import craven.jfr.JfrEvents;
+
+/**
+ * See {@link InstrumentedDataSource}. The SQL is fingerprinted on every execution.
+ */
+final class InstrumentedStatement extends DelegatingStatement {
+
+    private final Statement statement;
+    private final Connection connection;
+    private final StatementListener listener;
+
+    // of the last execution, for getResultSet()
+    private String fingerprint;
+    private String batchFingerprint;
+
+    InstrumentedStatement(Statement statement, Connection connection, StatementListener listener) {
+        this.statement = statement;
+        this.connection = connection;
+        this.listener = listener;
+    }
+
+    @Override
+    protected Statement delegate() {
+        return statement;
+    }
+
+    @Override
+    protected void checkOpen() throws SQLException {
+        // the statement checks for itself
+    }
+
+    // --
+
+    @Override
+    public ResultSet executeQuery(String sql) throws SQLException {
+        fingerprint = SqlFingerprint.of(sql);
+        long start = System.nanoTime();
+        Object event = JfrEvents.beginStatement();
+        ResultSet rs;
+        try {
+            rs = super.executeQuery(sql);
+        }
+        catch (Throwable t) {
+            JfrEvents.endStatement(event, fingerprint, -1, true);
+            listener.failed(fingerprint, System.nanoTime() - start);
+            throw t;
+        }
+        JfrEvents.endStatement(event, fingerprint, -1, false);
+        listener.executed(fingerprint, System.nanoTime() - start, -1);
+        return wrap(rs, fingerprint);
+    }
+
+    @Override
+    public int executeUpdate(String sql) throws SQLException {
+        fingerprint = SqlFingerprint.of(sql);
+        long start = System.nanoTime();
+        Object event = JfrEvents.beginStatement();
+        int count;
+        try {
+            count = super.executeUpdate(sql);
+        }
+        catch (Throwable t) {
+            JfrEvents.endStatement(event, fingerprint, -1, true);
+            listener.failed(fingerprint, System.nanoTime() - start);
+            throw t;
+        }
+        JfrEvents.endStatement(event, fingerprint, count, false);
+        listener.executed(fingerprint, System.nanoTime() - start, count);
+        return count;
+    }
+
+    @Override
+    public int executeUpdate(String sql, int autoGeneratedKeys) throws SQLException {
+        fingerprint = SqlFingerprint.of(sql);
+        long start = System.nanoTime();
+        Object event = JfrEvents.beginStatement();
+        int count;
+        try {
+            count = super.executeUpdate(sql, autoGeneratedKeys);
+        }
+        catch (Throwable t) {
+            JfrEvents.endStatement(event, fingerprint, -1, true);
+            listener.failed(fingerprint, System.nanoTime() - start);
+            throw t;
+        }
+        JfrEvents.endStatement(event, fingerprint, count, false);
+        listener.executed(fingerprint, System.nanoTime() - start, count);
+        return count;
+    }
+
+    @Override
+    public int executeUpdate(String sql, int[] columnIndexes) throws SQLException {
+        fingerprint = SqlFingerprint.of(sql);
+        long start = System.nanoTime();
+        Object event = JfrEvents.beginStatement();
+        int count;
+        try {
+            count = super.executeUpdate(sql, columnIndexes);
+        }
+        catch (Throwable t) {
+            JfrEvents.endStatement(event, fingerprint, -1, true);
+            listener.failed(fingerprint, System.nanoTime() - start);
+            throw t;
+        }
+        JfrEvents.endStatement(event, fingerprint, count, false);
+        listener.executed(fingerprint, System.nanoTime() - start, count);
+        return count;
+    }
+
+    @Override
+    public int executeUpdate(String sql, String[] columnNames) throws SQLException {
+        fingerprint = SqlFingerprint.of(sql);
+        long start = System.nanoTime();
+        Object event = JfrEvents.beginStatement();
+        int count;
+        try {
+            count = super.executeUpdate(sql, columnNames);
+        }
+        catch (Throwable t) {
+            JfrEvents.endStatement(event, fingerprint, -1, true);
+            listener.failed(fingerprint, System.nanoTime() - start);
+            throw t;
+        }
+        JfrEvents.endStatement(event, fingerprint, count, false);
+        listener.executed(fingerprint, System.nanoTime() - start, count);
+        return count;
+    }
+
+    @Override
+    public boolean execute(String sql) throws SQLException {
+        fingerprint = SqlFingerprint.of(sql);
+        long start = System.nanoTime();
+        Object event = JfrEvents.beginStatement();
+        boolean result;
+        try {
+            result = super.execute(sql);
+        }
+        catch (Throwable t) {
+            JfrEvents.endStatement(event, fingerprint, -1, true);
+            listener.failed(fingerprint, System.nanoTime() - start);
+            throw t;
+        }
+        JfrEvents.endStatement(event, fingerprint, -1, false);
+        listener.executed(fingerprint, System.nanoTime() - start, -1);
+        return result;
+    }
+
+    @Override
+    public boolean execute(String sql, int autoGeneratedKeys) throws SQLException {
+        fingerprint = SqlFingerprint.of(sql);
+        long start = System.nanoTime();
+        Object event = JfrEvents.beginStatement();
+        boolean result;
+        try {
+            result = super.execute(sql, autoGeneratedKeys);
+        }
+        catch (Throwable t) {
+            JfrEvents.endStatement(event, fingerprint, -1, true);
+            listener.failed(fingerprint, System.nanoTime() - start);
+            throw t;
+        }
+        JfrEvents.endStatement(event, fingerprint, -1, false);
+        listener.executed(fingerprint, System.nanoTime() - start, -1);
+        return result;
+    }
+
+    @Override
+    public boolean execute(String sql, int[] columnIndexes) throws SQLException {
+        fingerprint = SqlFingerprint.of(sql);
+        long start = System.nanoTime();
+        Object event = JfrEvents.beginStatement();
+        boolean result;
+        try {
+            result = super.execute(sql, columnIndexes);
+        }
+        catch (Throwable t) {
+            JfrEvents.endStatement(event, fingerprint, -1, true);
+            listener.failed(fingerprint, System.nanoTime() - start);
+            throw t;
+        }
+        JfrEvents.endStatement(event, fingerprint, -1, false);
+        listener.executed(fingerprint, System.nanoTime() - start, -1);
+        return result;
+    }
+
+    @Override
+    public boolean execute(String sql, String[] columnNames) throws SQLException {
+        fingerprint = SqlFingerprint.of(sql);
+        long start = System.nanoTime();
+        Object event = JfrEvents.beginStatement();
+        boolean result;
+        try {
+            result = super.execute(sql, columnNames);
+        }
+        catch (Throwable t) {
+            JfrEvents.endStatement(event, fingerprint, -1, true);
+            listener.failed(fingerprint, System.nanoTime() - start);
+            throw t;
+        }
+        JfrEvents.endStatement(event, fingerprint, -1, false);
+        listener.executed(fingerprint, System.nanoTime() - start, -1);
+        return result;
+    }
+
+    @Override
+    public void addBatch(String sql) throws SQLException {
+        super.addBatch(sql);
+        if (batchFingerprint == null) {
+            batchFingerprint = SqlFingerprint.of(sql);
+        }
+    }
+
+    @Override
+    public void clearBatch() throws SQLException {
+        super.clearBatch();
+        batchFingerprint = null;
+    }
+
+    @Override
+    public int[] executeBatch() throws SQLException {
+        // Note: A batch is reported under the fingerprint of its first statement.
+        fingerprint = batchFingerprint;
+        batchFingerprint = null;
+        long start = System.nanoTime();
+        Object event = JfrEvents.beginStatement();
+        int[] counts;
+        try {
+            counts = super.executeBatch();
+        }
+        catch (Throwable t) {
+            JfrEvents.endStatement(event, fingerprint, -1, true);
+            listener.failed(fingerprint, System.nanoTime() - start);
+            throw t;
+        }
+        long rows = sum(counts);
+        JfrEvents.endStatement(event, fingerprint, rows, false);
+        listener.executed(fingerprint, System.nanoTime() - start, rows);
+        return counts;
+    }
+
+    // --
+
+    @Override
+    public ResultSet getResultSet() throws SQLException {
+        return wrap(super.getResultSet(), fingerprint);
+    }
+
+    @Override
+    public Connection getConnection() {
+        return connection;
+    }
+
+    private ResultSet wrap(ResultSet rs, String fingerprint) {
+        return (rs != null) ? new InstrumentedResultSet(rs, this, fingerprint, listener) : null;
+    }
+
+    static long sum(int[] counts) {
+        long rows = 0;
+        for (int count : counts) {
+            if (count > 0) {
+                rows += count;
+            }
+        }
+        return rows;
+    }
+
+    @Override
+    public String toString() {
+        return "InstrumentedStatement[" + statement + "]";
+    }
+
+}
@@ -4,6 +4,7 @@ import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.concurrent.Executor;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -12,6 +13,12 @@ public class JdbcUtils {
 
     private static final Logger logger = LoggerFactory.getLogger(JdbcUtils.class);
 
+    private static final Executor DIRECT = new Executor() {
+        @Override public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
     // -- Handle null for primitives
 
     private static <T> T wasNull(ResultSet rs, T value) throws SQLException {
@@ -75,6 +82,27 @@ public class JdbcUtils {
         }
     }
 
+    /**
+     * Abort the connection, so that a pool evicts it rather than handing it out again, e.g. when its session is in an
+     * unknown state; closes it if it cannot be aborted.
+     */
+    public static void discardConnection(Connection conn) {
+        if (conn != null) {
+            try {
+                conn.abort(DIRECT);
+                return;
+            }
+            catch (SQLException ex) {
+                logger.debug("Could not abort JDBC Connection", ex);
+            }
+            catch (Throwable ex) {
+                // We don't trust the JDBC driver: It might throw RuntimeException or Error.
+                logger.debug("Unexpected exception on aborting JDBC Connection", ex);
+            }
+            closeConnection(conn);
+        }
+    }
+
     public static void closeStatement(Statement stmt) {
         if (stmt != null) {
             try {
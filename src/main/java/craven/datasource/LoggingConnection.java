@@ -0,0 +1,211 @@
+package craven.datasource;
+
+import static craven.datasource.LoggingSettings.CONNECTION;
+import static craven.datasource.LoggingSettings.RESULT_SET;
+import static craven.datasource.LoggingSettings.STATEMENT;
+
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.sql.Statement;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * See {@link LoggingDataSourceFactory}. Logs the statement creation, transaction and session calls.
+ */
+final class LoggingConnection extends DelegatingConnection {
+
+    private static final Logger logger = LoggerFactory.getLogger(LoggingConnection.class);
+
+    private final Connection connection;
+    private final LoggingSettings settings;
+
+    LoggingConnection(Connection connection, LoggingSettings settings) {
+        this.connection = connection;
+        this.settings = settings;
+    }
+
+    @Override
+    protected Connection delegate() {
+        return connection;
+    }
+
+    @Override
+    protected void checkOpen() throws SQLException {
+        // the physical connection checks for itself
+    }
+
+    // -- Statements
+
+    @Override
+    public Statement createStatement() throws SQLException {
+        return wrap(super.createStatement());
+    }
+
+    @Override
+    public Statement createStatement(int resultSetType, int resultSetConcurrency) throws SQLException {
+        return wrap(super.createStatement(resultSetType, resultSetConcurrency));
+    }
+
+    @Override
+    public Statement createStatement(int resultSetType, int resultSetConcurrency, int resultSetHoldability) throws SQLException {
+        return wrap(super.createStatement(resultSetType, resultSetConcurrency, resultSetHoldability));
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql) throws SQLException {
+        return wrap(super.prepareStatement(sql), sql);
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency) throws SQLException {
+        return wrap(super.prepareStatement(sql, resultSetType, resultSetConcurrency), sql);
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency, int resultSetHoldability) throws SQLException {
+        return wrap(super.prepareStatement(sql, resultSetType, resultSetConcurrency, resultSetHoldability), sql);
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql, int autoGeneratedKeys) throws SQLException {
+        return wrap(super.prepareStatement(sql, autoGeneratedKeys), sql);
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql, int[] columnIndexes) throws SQLException {
+        return wrap(super.prepareStatement(sql, columnIndexes), sql);
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql, String[] columnNames) throws SQLException {
+        return wrap(super.prepareStatement(sql, columnNames), sql);
+    }
+
+    // Note: Callable statements are logged when prepared, they are not wrapped.
+
+    @Override
+    public CallableStatement prepareCall(String sql) throws SQLException {
+        CallableStatement statement = super.prepareCall(sql);
+        log("prepareCall", sql, statement);
+        return statement;
+    }
+
+    @Override
+    public CallableStatement prepareCall(String sql, int resultSetType, int resultSetConcurrency) throws SQLException {
+        CallableStatement statement = super.prepareCall(sql, resultSetType, resultSetConcurrency);
+        log("prepareCall", sql, statement);
+        return statement;
+    }
+
+    @Override
+    public CallableStatement prepareCall(String sql, int resultSetType, int resultSetConcurrency, int resultSetHoldability) throws SQLException {
+        CallableStatement statement = super.prepareCall(sql, resultSetType, resultSetConcurrency, resultSetHoldability);
+        log("prepareCall", sql, statement);
+        return statement;
+    }
+
+    private Statement wrap(Statement statement) {
+        int flags = settings.flags();
+        if ((flags & CONNECTION) != 0) {
+            LoggingDataSourceFactory.log(logger, connection, "createStatement", null, statement);
+        }
+        if ((flags & (STATEMENT | RESULT_SET)) != 0) {
+            return new LoggingStatement(statement, this, settings);
+        }
+        return statement;
+    }
+
+    private PreparedStatement wrap(PreparedStatement statement, String sql) {
+        int flags = settings.flags();
+        if ((flags & CONNECTION) != 0) {
+            LoggingDataSourceFactory.log(logger, connection, "prepareStatement", sql, statement);
+        }
+        if ((flags & (STATEMENT | RESULT_SET)) != 0) {
+            return new LoggingPreparedStatement(statement, sql, this, settings);
+        }
+        return statement;
+    }
+
+    // -- Transaction
+
+    @Override
+    public void commit() throws SQLException {
+        super.commit();
+        log("commit", null, null);
+    }
+
+    @Override
+    public void rollback() throws SQLException {
+        super.rollback();
+        log("rollback", null, null);
+    }
+
+    @Override
+    public void rollback(Savepoint savepoint) throws SQLException {
+        super.rollback(savepoint);
+        log("rollback", savepoint, null);
+    }
+
+    @Override
+    public Savepoint setSavepoint() throws SQLException {
+        Savepoint savepoint = super.setSavepoint();
+        log("setSavepoint", null, savepoint);
+        return savepoint;
+    }
+
+    @Override
+    public Savepoint setSavepoint(String name) throws SQLException {
+        Savepoint savepoint = super.setSavepoint(name);
+        log("setSavepoint", name, savepoint);
+        return savepoint;
+    }
+
+    @Override
+    public void releaseSavepoint(Savepoint savepoint) throws SQLException {
+        super.releaseSavepoint(savepoint);
+        log("releaseSavepoint", savepoint, null);
+    }
+
+    // -- Session
+
+    @Override
+    public void setAutoCommit(boolean autoCommit) throws SQLException {
+        super.setAutoCommit(autoCommit);
+        log("setAutoCommit", autoCommit, null);
+    }
+
+    @Override
+    public void setReadOnly(boolean readOnly) throws SQLException {
+        super.setReadOnly(readOnly);
+        log("setReadOnly", readOnly, null);
+    }
+
+    @Override
+    public void setTransactionIsolation(int level) throws SQLException {
+        super.setTransactionIsolation(level);
+        log("setTransactionIsolation", level, null);
+    }
+
+    @Override
+    public void close() throws SQLException {
+        super.close();
+        log("close", null, null);
+    }
+
+    private void log(String method, Object param, Object result) {
+        if ((settings.flags() & CONNECTION) != 0) {
+            LoggingDataSourceFactory.log(logger, connection, method, param, result);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "LoggingConnection[" + connection + "]";
+    }
+
+}
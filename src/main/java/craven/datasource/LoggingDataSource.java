@@ -0,0 +1,64 @@
+package craven.datasource;
+
+import static craven.datasource.LoggingSettings.CONNECTION;
+import static craven.datasource.LoggingSettings.DATA_SOURCE;
+import static craven.datasource.LoggingSettings.RESULT_SET;
+import static craven.datasource.LoggingSettings.STATEMENT;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * See {@link LoggingDataSourceFactory}.
+ */
+final class LoggingDataSource extends DelegatingDataSource {
+
+    private static final Logger logger = LoggerFactory.getLogger(LoggingDataSource.class);
+
+    private final DataSource dataSource;
+    private final LoggingSettings settings;
+
+    LoggingDataSource(DataSource dataSource, LoggingSettings settings) {
+        this.dataSource = dataSource;
+        this.settings = settings;
+    }
+
+    @Override
+    protected DataSource delegate() {
+        return dataSource;
+    }
+
+    // --
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return wrap(super.getConnection(), null);
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return wrap(super.getConnection(username, password), username);
+    }
+
+    private Connection wrap(Connection connection, String username) {
+        int flags = settings.flags();
+        if ((flags & DATA_SOURCE) != 0) {
+            LoggingDataSourceFactory.log(logger, dataSource, "getConnection", username, connection);
+        }
+        if ((flags & (CONNECTION | STATEMENT | RESULT_SET)) != 0) {
+            return new LoggingConnection(connection, settings);
+        }
+        return connection;
+    }
+
+    @Override
+    public String toString() {
+        return "LoggingDataSource[" + dataSource + "]";
+    }
+
+}
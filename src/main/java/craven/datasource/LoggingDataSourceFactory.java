@@ -1,134 +1,96 @@
 package craven.datasource;
 
 
-import java.lang.reflect.InvocationHandler;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
-import java.lang.reflect.Proxy;
-import java.sql.CallableStatement;
-import java.sql.Connection;
-import java.sql.PreparedStatement;
+import static craven.datasource.LoggingSettings.RESULT_SET;
+
+import java.sql.ResultSet;
 import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
 
-import javax.interceptor.InvocationContext;
 import javax.sql.DataSource;
 
-import com.google.common.base.Function;
-import com.google.common.base.Functions;
-
-import craven.interceptor.LoggingInterceptor;
-import craven.interceptor.SimpleInvocationContext;
+import org.slf4j.Logger;
 
+/**
+ * Wraps a {@code DataSource} so that the connections, statements and result sets obtained from it log their calls
+ * at debug level. What is logged is switched at runtime with the {@link LoggingSettings}, e.g. through JMX.
+ */
 public class LoggingDataSourceFactory {
 
-    private static final boolean dataSourceLoggingEnabled = true;
-    private static final boolean connectionLoggingEnabled = true;
-    private static final boolean statementLoggingEnabled = false;
-
-    private static final LoggingInterceptor interceptor = new LoggingInterceptor();
+    private static final LoggingSettings settings = new LoggingSettings(true, true, false, false);
 
     private LoggingDataSourceFactory() {
     }
 
     public static DataSource create(DataSource ds) {
-        return factoryResultProcessor.apply(ds);
+        return create(ds, settings);
     }
 
-    private static Function<DataSource, DataSource> factoryResultProcessor = new Function<DataSource, DataSource>() {
-        @SuppressWarnings("unused")
-        @Override
-        public DataSource apply(DataSource ds) {
-            if (dataSourceLoggingEnabled || connectionLoggingEnabled || statementLoggingEnabled) {
-                return createLoggingDataSource(ds);
-            }
-            else {
-                return ds;
-            }
-        }
-    };
-
-    private static Function<Object, Object> dataSourceResultProcessor = new Function<Object, Object>() {
-        @SuppressWarnings("unused")
-        @Override
-        public Object apply(Object result) {
-            if (connectionLoggingEnabled || statementLoggingEnabled) {
-                if (result instanceof Connection) {
-                    Connection conn = (Connection) result;
-                    return createLoggingConnection(conn);
-                }
-            }
-            return result;
-        }
-    };
-
-    private static Function<Object, Object> connectionResultProcessor = new Function<Object, Object>() {
-        @Override
-        public Object apply(Object result) {
-            if (statementLoggingEnabled) {
-                if (result instanceof Statement) {
-                    Statement stmt = (Statement) result;
-                    return createLoggingStatement(stmt);
-                }
-            }
-            return result;
-        }
-    };
-
-    private static DataSource createLoggingDataSource(DataSource ds) {
+    public static DataSource create(DataSource ds, LoggingSettings settings) {
+        return new LoggingDataSource(ds, settings);
+    }
 
-        return (DataSource) Proxy.newProxyInstance(
-                                    DataSource.class.getClassLoader(),
-                                    new Class[] { DataSource.class },
-                                    new LoggingInvocationHandler(ds, dataSourceLoggingEnabled, dataSourceResultProcessor) );
+    /**
+     * The settings of the data sources created with {@link #create(DataSource)}.
+     */
+    public static LoggingSettings getSettings() {
+        return settings;
     }
 
-    private static Connection createLoggingConnection(Connection conn) {
+    // -- Called by the wrappers
 
-        return (Connection) Proxy.newProxyInstance(
-                                    Connection.class.getClassLoader(),
-                                    new Class[] { Connection.class },
-                                    new LoggingInvocationHandler(conn, connectionLoggingEnabled, connectionResultProcessor) );
+    static ResultSet wrapResultSet(ResultSet rs, Statement statement, int flags) {
+        if (rs == null || (flags & RESULT_SET) == 0) {
+            return rs;
+        }
+        return new LoggingResultSet(rs, statement);
     }
 
-    private static Statement createLoggingStatement(Statement stmt) {
-        Class<? extends Statement> iface = Statement.class;
-        if (stmt instanceof PreparedStatement) {
-            iface = PreparedStatement.class;
+    static void log(Logger logger, Object target, String method, Object param, Object result) {
+        if (!logger.isDebugEnabled()) {
+            return;
+        }
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("[").append(target).append("] ");
+        sb.append(method).append("(");
+        if (param != null) {
+            sb.append("<").append(param).append(">");
         }
-        else if (stmt instanceof CallableStatement) {
-            iface = CallableStatement.class;
+        sb.append(")");
+
+        if (result != null) {
+            sb.append(" → ").append("<").append(result).append(">");
         }
 
-        return (Statement) Proxy.newProxyInstance(
-                                    Statement.class.getClassLoader(),
-                                    new Class[] { iface },
-                                    new LoggingInvocationHandler(stmt, true, Functions.identity()) );
+        logger.debug(sb.toString());
     }
 
-    private static class LoggingInvocationHandler implements InvocationHandler {
+    static void logExecution(Logger logger, Object target, String method, String sql, long start, Object result) {
+        if (!logger.isDebugEnabled()) {
+            return;
+        }
 
-        private final Object target;
-        private final boolean loggingEnabled;
-        private final Function<Object, Object> resultProcessor;
+        long elapsed = System.nanoTime() - start;
 
-        public LoggingInvocationHandler(Object target, boolean loggingEnabled, Function<Object, Object> resultProcessor) {
-            this.target = target;
-            this.loggingEnabled = loggingEnabled;
-            this.resultProcessor = resultProcessor;
+        StringBuilder sb = new StringBuilder();
+        sb.append("[").append(target).append("] ");
+        sb.append(method).append("(");
+        if (sql != null) {
+            sb.append("<").append(sql).append(">");
         }
+        sb.append(")");
 
-        @Override
-        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
-            try {
-                InvocationContext ic = new SimpleInvocationContext(target, method, args);
-                Object result = loggingEnabled ? interceptor.around(ic) : ic.proceed();
-                return resultProcessor.apply(result);
-            }
-            catch (InvocationTargetException ex) {
-                throw ex.getCause();
-            }
+        if (result instanceof int[]) {
+            sb.append(" → ").append("<").append(((int[]) result).length).append(" counts>");
+        }
+        else if (result != null) {
+            sb.append(" → ").append("<").append(result).append(">");
         }
 
+        sb.append(" in ").append(TimeUnit.NANOSECONDS.toMicros(elapsed)).append("us");
+
+        logger.debug(sb.toString());
     }
 
 }
@@ -0,0 +1,112 @@
+package craven.datasource;
+
+import static craven.datasource.LoggingSettings.STATEMENT;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * See {@link LoggingDataSourceFactory}. Logs the executions with their SQL and time.
+ */
+final class LoggingPreparedStatement extends DelegatingPreparedStatement {
+
+    private static final Logger logger = LoggerFactory.getLogger(LoggingPreparedStatement.class);
+
+    private final PreparedStatement statement;
+    private final String sql;
+    private final Connection connection;
+    private final LoggingSettings settings;
+
+    LoggingPreparedStatement(PreparedStatement statement, String sql, Connection connection, LoggingSettings settings) {
+        this.statement = statement;
+        this.sql = sql;
+        this.connection = connection;
+        this.settings = settings;
+    }
+
+    @Override
+    protected PreparedStatement delegate() {
+        return statement;
+    }
+
+    @Override
+    protected void checkOpen() throws SQLException {
+        // the statement checks for itself
+    }
+
+    // --
+
+    @Override
+    public ResultSet executeQuery() throws SQLException {
+        int flags = settings.flags();
+        long start = start(flags);
+        ResultSet rs = super.executeQuery();
+        log(flags, "executeQuery", start, null);
+        return LoggingDataSourceFactory.wrapResultSet(rs, this, flags);
+    }
+
+    @Override
+    public int executeUpdate() throws SQLException {
+        int flags = settings.flags();
+        long start = start(flags);
+        int count = super.executeUpdate();
+        log(flags, "executeUpdate", start, count);
+        return count;
+    }
+
+    @Override
+    public boolean execute() throws SQLException {
+        int flags = settings.flags();
+        long start = start(flags);
+        boolean result = super.execute();
+        log(flags, "execute", start, result);
+        return result;
+    }
+
+    @Override
+    public int[] executeBatch() throws SQLException {
+        int flags = settings.flags();
+        long start = start(flags);
+        int[] counts = super.executeBatch();
+        log(flags, "executeBatch", start, counts);
+        return counts;
+    }
+
+    // --
+
+    @Override
+    public ResultSet getResultSet() throws SQLException {
+        return LoggingDataSourceFactory.wrapResultSet(super.getResultSet(), this, settings.flags());
+    }
+
+    @Override
+    public ResultSet getGeneratedKeys() throws SQLException {
+        return LoggingDataSourceFactory.wrapResultSet(super.getGeneratedKeys(), this, settings.flags());
+    }
+
+    @Override
+    public Connection getConnection() {
+        return connection;
+    }
+
+    private static long start(int flags) {
+        return ((flags & STATEMENT) != 0) ? System.nanoTime() : 0;
+    }
+
+    private void log(int flags, String method, long start, Object result) {
+        if ((flags & STATEMENT) != 0) {
+            LoggingDataSourceFactory.logExecution(logger, statement, method, sql, start, result);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "LoggingPreparedStatement[" + statement + "]";
+    }
+
+}
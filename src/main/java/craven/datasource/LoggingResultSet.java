@@ -0,0 +1,68 @@
+package craven.datasource;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * See {@link LoggingDataSourceFactory}. Counts the rows read and logs them on close.
+ */
+final class LoggingResultSet extends DelegatingResultSet {
+
+    private static final Logger logger = LoggerFactory.getLogger(LoggingResultSet.class);
+
+    private final ResultSet rs;
+    private final Statement statement;
+
+    private int rows = 0;
+    private boolean closed = false;
+
+    LoggingResultSet(ResultSet rs, Statement statement) {
+        this.rs = rs;
+        this.statement = statement;
+    }
+
+    @Override
+    protected ResultSet delegate() {
+        return rs;
+    }
+
+    @Override
+    protected void checkOpen() throws SQLException {
+        // the result set checks for itself
+    }
+
+    // --
+
+    @Override
+    public boolean next() throws SQLException {
+        boolean next = super.next();
+        if (next) {
+            rows++;
+        }
+        return next;
+    }
+
+    @Override
+    public Statement getStatement() {
+        return statement;
+    }
+
+    @Override
+    public void close() throws SQLException {
+        if (!closed) {
+            closed = true;
+            LoggingDataSourceFactory.log(logger, rs, "close", null, rows + " rows");
+        }
+        super.close();
+    }
+
+    @Override
+    public String toString() {
+        return "LoggingResultSet[" + rs + "]";
+    }
+
+}
@@ -0,0 +1,111 @@
+package craven.datasource;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * What the wrappers of {@link LoggingDataSourceFactory} log, switchable at runtime.
+ *
+ * All switches are kept in a single volatile field, so a wrapper with logging disabled pays one volatile read per
+ * call. The switches are read when objects are wrapped as well: a connection obtained while all logging was off is
+ * not wrapped, and does not start logging when it is switched on.
+ */
+public class LoggingSettings implements LoggingSettingsMBean {
+
+    static final int DATA_SOURCE = 1;
+    static final int CONNECTION = 1 << 1;
+    static final int STATEMENT = 1 << 2;
+    static final int RESULT_SET = 1 << 3;
+
+    private volatile int flags;
+
+    public LoggingSettings() {
+        this(false, false, false, false);
+    }
+
+    public LoggingSettings(boolean dataSource, boolean connection, boolean statement, boolean resultSet) {
+        this.flags = (dataSource ? DATA_SOURCE : 0)
+                | (connection ? CONNECTION : 0)
+                | (statement ? STATEMENT : 0)
+                | (resultSet ? RESULT_SET : 0);
+    }
+
+    /**
+     * Register under {@code craven.datasource:type=LoggingSettings,name=<name>} in the platform MBean server.
+     */
+    public ObjectName registerMBean(String name) throws JMException {
+        ObjectName objectName = new ObjectName("craven.datasource:type=LoggingSettings,name=" + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        return objectName;
+    }
+
+    // -- Called by the wrappers
+
+    /**
+     * The switches as a bit set, read once per call by the wrappers.
+     */
+    int flags() {
+        return flags;
+    }
+
+    private boolean isEnabled(int mask) {
+        return (flags & mask) != 0;
+    }
+
+    private synchronized void set(int mask, boolean enabled) {
+        flags = enabled ? (flags | mask) : (flags & ~mask);
+    }
+
+    // --
+
+    @Override
+    public boolean isDataSourceLogging() {
+        return isEnabled(DATA_SOURCE);
+    }
+
+    @Override
+    public void setDataSourceLogging(boolean enabled) {
+        set(DATA_SOURCE, enabled);
+    }
+
+    @Override
+    public boolean isConnectionLogging() {
+        return isEnabled(CONNECTION);
+    }
+
+    @Override
+    public void setConnectionLogging(boolean enabled) {
+        set(CONNECTION, enabled);
+    }
+
+    @Override
+    public boolean isStatementLogging() {
+        return isEnabled(STATEMENT);
+    }
+
+    @Override
+    public void setStatementLogging(boolean enabled) {
+        set(STATEMENT, enabled);
+    }
+
+    @Override
+    public boolean isResultSetLogging() {
+        return isEnabled(RESULT_SET);
+    }
+
+    @Override
+    public void setResultSetLogging(boolean enabled) {
+        set(RESULT_SET, enabled);
+    }
+
+    @Override
+    public String toString() {
+        return "LoggingSettings[dataSource=" + isDataSourceLogging()
+                + ", connection=" + isConnectionLogging()
+                + ", statement=" + isStatementLogging()
+                + ", resultSet=" + isResultSetLogging() + "]";
+    }
+
+}
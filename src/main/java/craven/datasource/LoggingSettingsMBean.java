@@ -0,0 +1,24 @@
+package craven.datasource;
+
+/**
+ * JMX view of {@link LoggingSettings}.
+ */
+public interface LoggingSettingsMBean {
+
+    boolean isDataSourceLogging();
+
+    void setDataSourceLogging(boolean enabled);
+
+    boolean isConnectionLogging();
+
+    void setConnectionLogging(boolean enabled);
+
+    boolean isStatementLogging();
+
+    void setStatementLogging(boolean enabled);
+
+    boolean isResultSetLogging();
+
+    void setResultSetLogging(boolean enabled);
+
+}
@@ -0,0 +1,164 @@
+package craven.datasource;
+
+import static craven.datasource.LoggingSettings.STATEMENT;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * See {@link LoggingDataSourceFactory}. Logs the executions with their SQL and time.
+ */
+final class LoggingStatement extends DelegatingStatement {
+
+    private static final Logger logger = LoggerFactory.getLogger(LoggingStatement.class);
+
+    private final Statement statement;
+    private final Connection connection;
+    private final LoggingSettings settings;
+
+    LoggingStatement(Statement statement, Connection connection, LoggingSettings settings) {
+        this.statement = statement;
+        this.connection = connection;
+        this.settings = settings;
+    }
+
+    @Override
+    protected Statement delegate() {
+        return statement;
+    }
+
+    @Override
+    protected void checkOpen() throws SQLException {
+        // the statement checks for itself
+    }
+
+    // --
+
+    @Override
+    public ResultSet executeQuery(String sql) throws SQLException {
+        int flags = settings.flags();
+        long start = start(flags);
+        ResultSet rs = super.executeQuery(sql);
+        log(flags, "executeQuery", sql, start, null);
+        return LoggingDataSourceFactory.wrapResultSet(rs, this, flags);
+    }
+
+    @Override
+    public int executeUpdate(String sql) throws SQLException {
+        int flags = settings.flags();
+        long start = start(flags);
+        int count = super.executeUpdate(sql);
+        log(flags, "executeUpdate", sql, start, count);
+        return count;
+    }
+
+    @Override
+    public int executeUpdate(String sql, int autoGeneratedKeys) throws SQLException {
+        int flags = settings.flags();
+        long start = start(flags);
+        int count = super.executeUpdate(sql, autoGeneratedKeys);
+        log(flags, "executeUpdate", sql, start, count);
+        return count;
+    }
+
+    @Override
+    public int executeUpdate(String sql, int[] columnIndexes) throws SQLException {
+        int flags = settings.flags();
+        long start = start(flags);
+        int count = super.executeUpdate(sql, columnIndexes);
+        log(flags, "executeUpdate", sql, start, count);
+        return count;
+    }
+
+    @Override
+    public int executeUpdate(String sql, String[] columnNames) throws SQLException {
+        int flags = settings.flags();
+        long start = start(flags);
+        int count = super.executeUpdate(sql, columnNames);
+        log(flags, "executeUpdate", sql, start, count);
+        return count;
+    }
+
+    @Override
+    public boolean execute(String sql) throws SQLException {
+        int flags = settings.flags();
+        long start = start(flags);
+        boolean result = super.execute(sql);
+        log(flags, "execute", sql, start, result);
+        return result;
+    }
+
+    @Override
+    public boolean execute(String sql, int autoGeneratedKeys) throws SQLException {
+        int flags = settings.flags();
+        long start = start(flags);
+        boolean result = super.execute(sql, autoGeneratedKeys);
+        log(flags, "execute", sql, start, result);
+        return result;
+    }
+
+    @Override
+    public boolean execute(String sql, int[] columnIndexes) throws SQLException {
+        int flags = settings.flags();
+        long start = start(flags);
+        boolean result = super.execute(sql, columnIndexes);
+        log(flags, "execute", sql, start, result);
+        return result;
+    }
+
+    @Override
+    public boolean execute(String sql, String[] columnNames) throws SQLException {
+        int flags = settings.flags();
+        long start = start(flags);
+        boolean result = super.execute(sql, columnNames);
+        log(flags, "execute", sql, start, result);
+        return result;
+    }
+
+    @Override
+    public int[] executeBatch() throws SQLException {
+        int flags = settings.flags();
+        long start = start(flags);
+        int[] counts = super.executeBatch();
+        log(flags, "executeBatch", null, start, counts);
+        return counts;
+    }
+
+    // --
+
+    @Override
+    public ResultSet getResultSet() throws SQLException {
+        return LoggingDataSourceFactory.wrapResultSet(super.getResultSet(), this, settings.flags());
+    }
+
+    @Override
+    public ResultSet getGeneratedKeys() throws SQLException {
+        return LoggingDataSourceFactory.wrapResultSet(super.getGeneratedKeys(), this, settings.flags());
+    }
+
+    @Override
+    public Connection getConnection() {
+        return connection;
+    }
+
+    private static long start(int flags) {
+        return ((flags & STATEMENT) != 0) ? System.nanoTime() : 0;
+    }
+
+    private void log(int flags, String method, String sql, long start, Object result) {
+        if ((flags & STATEMENT) != 0) {
+            LoggingDataSourceFactory.logExecution(logger, statement, method, sql, start, result);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "LoggingStatement[" + statement + "]";
+    }
+
+}
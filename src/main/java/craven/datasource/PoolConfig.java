@@ -0,0 +1,197 @@
+package craven.datasource;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link PooledDataSource} settings, times are in milliseconds.
+ */
+public class PoolConfig {
+
+    public static PoolConfig DEFAULT = new Builder().build();
+
+    private final int maxSize;
+    private final int minIdle;
+    private final long idleTimeout;
+    private final long maxLifetime;
+    private final long connectionTimeout;
+    private final long validationTimeout;
+    private final long aliveBypassWindow;
+    private final long housekeepingPeriod;
+    private final int initializationThreads;
+    private final SessionDialect sessionDialect;
+    private final int statementCacheSize;
+
+    public int maxSize() {
+        return maxSize;
+    }
+
+    public int minIdle() {
+        return minIdle;
+    }
+
+    public long idleTimeout() {
+        return idleTimeout;
+    }
+
+    public long maxLifetime() {
+        return maxLifetime;
+    }
+
+    public long connectionTimeout() {
+        return connectionTimeout;
+    }
+
+    public long validationTimeout() {
+        return validationTimeout;
+    }
+
+    public long aliveBypassWindow() {
+        return aliveBypassWindow;
+    }
+
+    public long housekeepingPeriod() {
+        return housekeepingPeriod;
+    }
+
+    public int initializationThreads() {
+        return initializationThreads;
+    }
+
+    public SessionDialect sessionDialect() {
+        return sessionDialect;
+    }
+
+    public int statementCacheSize() {
+        return statementCacheSize;
+    }
+
+    public static Builder maxSize(int maxSize) {
+        return new Builder().maxSize(maxSize);
+    }
+
+    public static Builder minIdle(int minIdle) {
+        return new Builder().minIdle(minIdle);
+    }
+
+    private PoolConfig(Builder builder) {
+        if (builder.maxSize < 1) {
+            throw new IllegalArgumentException("maxSize must be positive");
+        }
+        if (builder.minIdle < 0 || builder.minIdle > builder.maxSize) {
+            throw new IllegalArgumentException("minIdle must be between 0 and maxSize");
+        }
+
+        this.maxSize = builder.maxSize;
+        this.minIdle = builder.minIdle;
+        this.idleTimeout = builder.idleTimeout;
+        this.maxLifetime = builder.maxLifetime;
+        this.connectionTimeout = builder.connectionTimeout;
+        this.validationTimeout = builder.validationTimeout;
+        this.aliveBypassWindow = builder.aliveBypassWindow;
+        this.housekeepingPeriod = builder.housekeepingPeriod;
+        this.initializationThreads = Math.max(1, builder.initializationThreads);
+        this.sessionDialect = builder.sessionDialect;
+        this.statementCacheSize = Math.max(0, builder.statementCacheSize);
+    }
+
+    /**
+     * Builder for {@link PoolConfig} to simulate named optional parameters.
+     */
+    public static class Builder {
+
+        private int maxSize = 10;
+        private int minIdle = 2;
+        private long idleTimeout = TimeUnit.MINUTES.toMillis(10);
+        private long maxLifetime = TimeUnit.MINUTES.toMillis(30);
+        private long connectionTimeout = TimeUnit.SECONDS.toMillis(30);
+        private long validationTimeout = TimeUnit.SECONDS.toMillis(5);
+        private long aliveBypassWindow = 500;
+        private long housekeepingPeriod = TimeUnit.SECONDS.toMillis(30);
+        private int initializationThreads = 4;
+        private SessionDialect sessionDialect = StandardSessionDialect.JDBC;
+        private int statementCacheSize = 0;
+
+        public Builder() {
+        }
+
+        public Builder maxSize(int maxSize) {
+            this.maxSize = maxSize;
+            return this;
+        }
+
+        public Builder minIdle(int minIdle) {
+            this.minIdle = minIdle;
+            return this;
+        }
+
+        /**
+         * Idle connections above {@code minIdle} are closed after this time, zero disables idle eviction.
+         */
+        public Builder idleTimeout(long idleTimeout) {
+            this.idleTimeout = idleTimeout;
+            return this;
+        }
+
+        /**
+         * Connections are retired after this time (minus a small random variance), zero disables it.
+         */
+        public Builder maxLifetime(long maxLifetime) {
+            this.maxLifetime = maxLifetime;
+            return this;
+        }
+
+        public Builder connectionTimeout(long connectionTimeout) {
+            this.connectionTimeout = connectionTimeout;
+            return this;
+        }
+
+        public Builder validationTimeout(long validationTimeout) {
+            this.validationTimeout = validationTimeout;
+            return this;
+        }
+
+        /**
+         * Connections used more recently than this are handed out without an {@code isValid} check.
+         */
+        public Builder aliveBypassWindow(long aliveBypassWindow) {
+            this.aliveBypassWindow = aliveBypassWindow;
+            return this;
+        }
+
+        public Builder housekeepingPeriod(long housekeepingPeriod) {
+            this.housekeepingPeriod = housekeepingPeriod;
+            return this;
+        }
+
+        /**
+         * Number of threads establishing the {@code minIdle} connections in parallel at startup.
+         */
+        public Builder initializationThreads(int initializationThreads) {
+            this.initializationThreads = initializationThreads;
+            return this;
+        }
+
+        /**
+         * How a connection changes bucket, see {@link StandardSessionDialect}.
+         */
+        public Builder sessionDialect(SessionDialect sessionDialect) {
+            this.sessionDialect = sessionDialect;
+            return this;
+        }
+
+        /**
+         * Number of idle prepared statements kept open per connection, zero disables statement caching.
+         * See {@link StatementCachingConnection}.
+         */
+        public Builder statementCacheSize(int statementCacheSize) {
+            this.statementCacheSize = statementCacheSize;
+            return this;
+        }
+
+        public PoolConfig build() {
+            return new PoolConfig(this);
+        }
+
+    }
+
+}
@@ -0,0 +1,141 @@
+package craven.datasource;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import craven.interceptor.TxIsolation;
+
+/**
+ * A physical connection owned by a {@link PooledDataSource} and its bookkeeping.
+ */
+final class PoolEntry {
+
+    static final int NOT_IN_USE = 0;
+    static final int IN_USE = 1;
+    static final int REMOVED = -1;
+    static final int RESERVED = -2;
+
+    private final AtomicInteger state = new AtomicInteger(NOT_IN_USE);
+
+    private final SessionTrackingConnection connection;
+    private final long createdAt;
+    private final long expiresAt;
+
+    private volatile long lastAccessed;
+
+    // isolation level of a fresh connection, stands for TxIsolation.DEFAULT
+    private final int defaultIsolation;
+
+    // current session characteristics, written by the borrowing thread
+    private volatile SessionState sessionState;
+    private boolean dirty;
+
+    PoolEntry(Connection connection, long lifetime, SessionDialect dialect) throws SQLException {
+        this.connection = new SessionTrackingConnection(connection, dialect);
+        this.createdAt = System.nanoTime();
+        this.expiresAt = (lifetime > 0) ? createdAt + lifetime : Long.MAX_VALUE;
+        this.lastAccessed = createdAt;
+
+        this.defaultIsolation = this.connection.getTransactionIsolation();
+        this.sessionState = SessionState.of(
+                this.connection.isReadOnly(), TxIsolation.DEFAULT, this.connection.getAutoCommit());
+    }
+
+    // -- State
+
+    int getState() {
+        return state.get();
+    }
+
+    void setState(int newState) {
+        state.set(newState);
+    }
+
+    boolean compareAndSetState(int expect, int update) {
+        return state.compareAndSet(expect, update);
+    }
+
+    // -- Timestamps (System.nanoTime)
+
+    long getCreatedAt() {
+        return createdAt;
+    }
+
+    boolean isExpired(long now) {
+        return now - expiresAt >= 0;
+    }
+
+    long getLastAccessed() {
+        return lastAccessed;
+    }
+
+    void setLastAccessed(long lastAccessed) {
+        this.lastAccessed = lastAccessed;
+    }
+
+    // -- Session characteristics
+
+    SessionTrackingConnection getConnection() {
+        return connection;
+    }
+
+    SessionState getSessionState() {
+        return sessionState;
+    }
+
+    void setAutoCommit(boolean autoCommit) {
+        sessionState = sessionState.withAutoCommit(autoCommit);
+        if (autoCommit) {
+            dirty = false;
+        }
+    }
+
+    void setReadOnly(boolean readOnly) {
+        sessionState = sessionState.withReadOnly(readOnly);
+    }
+
+    void setIsolation(int level) {
+        sessionState = sessionState.withIsolation(toIsolation(level));
+    }
+
+    /**
+     * Mark that a statement may have started a transaction on the session, cleared on commit or rollback.
+     */
+    void setDirty(boolean dirty) {
+        this.dirty = dirty;
+    }
+
+    /**
+     * Bring the session to the given state, issuing only the changes needed.
+     */
+    void apply(SessionState state) throws SQLException {
+        // Note: read-only and isolation cannot change in the middle of a transaction, there is none after reset().
+        connection.setSessionCharacteristics(state.readOnly(), toLevel(state.isolation()), state.autoCommit());
+        sessionState = state;
+    }
+
+    /**
+     * Roll back any pending work, the session characteristics are left as they are.
+     */
+    void reset() throws SQLException {
+        if (dirty && !sessionState.autoCommit()) {
+            connection.rollback();
+        }
+        dirty = false;
+    }
+
+    private TxIsolation toIsolation(int level) {
+        return (level == defaultIsolation) ? TxIsolation.DEFAULT : TxIsolation.fromLevel(level);
+    }
+
+    private int toLevel(TxIsolation isolation) {
+        return (isolation == TxIsolation.DEFAULT) ? defaultIsolation : isolation.level();
+    }
+
+    @Override
+    public String toString() {
+        return "PoolEntry[" + connection + "]";
+    }
+
+}
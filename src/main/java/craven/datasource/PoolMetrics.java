@@ -0,0 +1,111 @@
+package craven.datasource;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link PooledDataSource} counters, wait times are in nanoseconds.
+ */
+public class PoolMetrics {
+
+    private final AtomicLong borrowCount = new AtomicLong();
+    private final AtomicLong timeoutCount = new AtomicLong();
+    private final AtomicLong totalWaitTime = new AtomicLong();
+    private final AtomicLong maxWaitTime = new AtomicLong();
+    private final AtomicLong rebucketCount = new AtomicLong();
+
+    private final AtomicLong createdCount = new AtomicLong();
+    private final AtomicLong closedCount = new AtomicLong();
+    private final AtomicLong createFailureCount = new AtomicLong();
+
+    PoolMetrics() {
+    }
+
+    // --
+
+    void recordBorrow(long waitTime) {
+        borrowCount.incrementAndGet();
+        totalWaitTime.addAndGet(waitTime);
+
+        long max = maxWaitTime.get();
+        while (waitTime > max && !maxWaitTime.compareAndSet(max, waitTime)) {
+            max = maxWaitTime.get();
+        }
+    }
+
+    void recordTimeout(long waitTime) {
+        timeoutCount.incrementAndGet();
+        totalWaitTime.addAndGet(waitTime);
+    }
+
+    void recordRebucket() {
+        rebucketCount.incrementAndGet();
+    }
+
+    void recordCreated() {
+        createdCount.incrementAndGet();
+    }
+
+    void recordCreateFailure() {
+        createFailureCount.incrementAndGet();
+    }
+
+    void recordClosed() {
+        closedCount.incrementAndGet();
+    }
+
+    // --
+
+    public long getBorrowCount() {
+        return borrowCount.get();
+    }
+
+    public long getTimeoutCount() {
+        return timeoutCount.get();
+    }
+
+    public long getTotalWaitTime() {
+        return totalWaitTime.get();
+    }
+
+    public long getMaxWaitTime() {
+        return maxWaitTime.get();
+    }
+
+    public long getAverageWaitTime() {
+        long count = borrowCount.get() + timeoutCount.get();
+        return (count > 0) ? totalWaitTime.get() / count : 0;
+    }
+
+    /**
+     * Number of borrows that had to change the session characteristics of the connection.
+     */
+    public long getRebucketCount() {
+        return rebucketCount.get();
+    }
+
+    public long getCreatedCount() {
+        return createdCount.get();
+    }
+
+    public long getCreateFailureCount() {
+        return createFailureCount.get();
+    }
+
+    public long getClosedCount() {
+        return closedCount.get();
+    }
+
+    @Override
+    public String toString() {
+        return "PoolMetrics[borrowed=" + getBorrowCount()
+                + ", timeouts=" + getTimeoutCount()
+                + ", rebuckets=" + getRebucketCount()
+                + ", avgWait=" + TimeUnit.NANOSECONDS.toMicros(getAverageWaitTime()) + "us"
+                + ", maxWait=" + TimeUnit.NANOSECONDS.toMicros(getMaxWaitTime()) + "us"
+                + ", created=" + getCreatedCount()
+                + ", closed=" + getClosedCount()
+                + ", createFailures=" + getCreateFailureCount() + "]";
+    }
+
+}
@@ -0,0 +1,36 @@
+package craven.datasource;
+
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * A callable statement of a {@link PooledConnection}, see {@link PooledStatement}.
+ */
+final class PooledCallableStatement extends DelegatingCallableStatement {
+
+    private final CallableStatement statement;
+    private final PooledConnection connection;
+
+    PooledCallableStatement(CallableStatement statement, PooledConnection connection) {
+        this.statement = statement;
+        this.connection = connection;
+    }
+
+    @Override
+    protected CallableStatement delegate() {
+        return statement;
+    }
+
+    @Override
+    protected void checkOpen() throws SQLException {
+        connection.checkOpen();
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        checkOpen();
+        return connection;
+    }
+
+}
@@ -0,0 +1,168 @@
+package craven.datasource;
+
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.Executor;
+
+/**
+ * The connection handed out by a {@link PooledDataSource}, closing it returns the physical connection to the pool.
+ */
+final class PooledConnection extends DelegatingConnection {
+
+    private final PooledDataSource pool;
+    private final PoolEntry entry;
+
+    private boolean closed = false;
+
+    PooledConnection(PooledDataSource pool, PoolEntry entry) {
+        this.pool = pool;
+        this.entry = entry;
+    }
+
+    @Override
+    protected Connection delegate() {
+        return entry.getConnection();
+    }
+
+    @Override
+    protected void checkOpen() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection is closed.");
+        }
+        // Any use of the session may start a transaction, see PoolEntry.reset()
+        entry.setDirty(true);
+    }
+
+    // -- Statements, whose connection is this one rather than the physical connection
+
+    @Override
+    public Statement createStatement() throws SQLException {
+        return new PooledStatement(super.createStatement(), this);
+    }
+
+    @Override
+    public Statement createStatement(int resultSetType, int resultSetConcurrency) throws SQLException {
+        return new PooledStatement(super.createStatement(resultSetType, resultSetConcurrency), this);
+    }
+
+    @Override
+    public Statement createStatement(int resultSetType, int resultSetConcurrency, int resultSetHoldability) throws SQLException {
+        return new PooledStatement(super.createStatement(resultSetType, resultSetConcurrency, resultSetHoldability), this);
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql) throws SQLException {
+        return new PooledPreparedStatement(super.prepareStatement(sql), this);
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency) throws SQLException {
+        return new PooledPreparedStatement(super.prepareStatement(sql, resultSetType, resultSetConcurrency), this);
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency, int resultSetHoldability) throws SQLException {
+        return new PooledPreparedStatement(
+                super.prepareStatement(sql, resultSetType, resultSetConcurrency, resultSetHoldability), this);
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql, int autoGeneratedKeys) throws SQLException {
+        return new PooledPreparedStatement(super.prepareStatement(sql, autoGeneratedKeys), this);
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql, int[] columnIndexes) throws SQLException {
+        return new PooledPreparedStatement(super.prepareStatement(sql, columnIndexes), this);
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql, String[] columnNames) throws SQLException {
+        return new PooledPreparedStatement(super.prepareStatement(sql, columnNames), this);
+    }
+
+    @Override
+    public CallableStatement prepareCall(String sql) throws SQLException {
+        return new PooledCallableStatement(super.prepareCall(sql), this);
+    }
+
+    @Override
+    public CallableStatement prepareCall(String sql, int resultSetType, int resultSetConcurrency) throws SQLException {
+        return new PooledCallableStatement(super.prepareCall(sql, resultSetType, resultSetConcurrency), this);
+    }
+
+    @Override
+    public CallableStatement prepareCall(String sql, int resultSetType, int resultSetConcurrency, int resultSetHoldability) throws SQLException {
+        return new PooledCallableStatement(
+                super.prepareCall(sql, resultSetType, resultSetConcurrency, resultSetHoldability), this);
+    }
+
+    // -- Track session characteristics
+
+    @Override
+    public void setAutoCommit(boolean autoCommit) throws SQLException {
+        super.setAutoCommit(autoCommit);
+        entry.setAutoCommit(autoCommit);
+    }
+
+    @Override
+    public void setReadOnly(boolean readOnly) throws SQLException {
+        super.setReadOnly(readOnly);
+        entry.setReadOnly(readOnly);
+    }
+
+    @Override
+    public void setTransactionIsolation(int level) throws SQLException {
+        super.setTransactionIsolation(level);
+        entry.setIsolation(level);
+    }
+
+    @Override
+    public void commit() throws SQLException {
+        super.commit();
+        entry.setDirty(false);
+    }
+
+    @Override
+    public void rollback() throws SQLException {
+        super.rollback();
+        entry.setDirty(false);
+    }
+
+    // --
+
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            pool.release(entry);
+        }
+    }
+
+    @Override
+    public void abort(Executor executor) throws SQLException {
+        if (!closed) {
+            closed = true;
+            pool.abort(entry, executor);
+        }
+    }
+
+    @Override
+    public boolean isClosed() {
+        return closed;
+    }
+
+    @Override
+    public boolean isValid(int timeout) throws SQLException {
+        return !closed && super.isValid(timeout);
+    }
+
+    @Override
+    public String toString() {
+        return "PooledConnection[" + entry.getConnection() + "]";
+    }
+
+}
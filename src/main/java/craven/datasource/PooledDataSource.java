@@ -0,0 +1,406 @@
+package craven.datasource;
+
+import static craven.datasource.PoolEntry.IN_USE;
+import static craven.datasource.PoolEntry.NOT_IN_USE;
+
+import java.io.Closeable;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Connection pool on top of a {@code DataSource} that creates physical connections, e.g. {@link SimpleDriverDataSource}.
+ *
+ * Closing a handed-out connection returns the physical connection to the pool instead of closing it. Idle connections
+ * keep the session characteristics of their last use and are reused by requests for the same characteristics, see
+ * {@link SessionAwareDataSource}.
+ */
+public class PooledDataSource extends DelegatingDataSource implements SessionAwareDataSource, Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(PooledDataSource.class);
+
+    private final DataSource dataSource;
+    private final PoolConfig config;
+    private final PoolMetrics metrics = new PoolMetrics();
+    private final StatementCacheMetrics statementCacheMetrics = new StatementCacheMetrics();
+
+    private final ConnectionBag bag;
+
+    // physical connections, including the ones being created
+    private final AtomicInteger totalConnections = new AtomicInteger();
+    private final AtomicInteger pendingConnections = new AtomicInteger();
+
+    private final ThreadPoolExecutor connector;
+    private final ScheduledExecutorService housekeeper;
+
+    private volatile boolean closed = false;
+
+    public PooledDataSource(DataSource dataSource) {
+        this(dataSource, PoolConfig.DEFAULT);
+    }
+
+    public PooledDataSource(DataSource dataSource, PoolConfig config) {
+        this.dataSource = dataSource;
+        this.config = config;
+
+        this.bag = new ConnectionBag(new ConnectionBag.Listener() {
+            @Override public boolean addBagItem(int waiting) {
+                return fill(waiting);
+            }
+        });
+
+        this.connector = new ThreadPoolExecutor(
+                config.initializationThreads(), config.initializationThreads(),
+                5, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                threadFactory("craven-pool-connector-%d"));
+        this.connector.allowCoreThreadTimeOut(true);
+
+        prefill();
+
+        this.housekeeper = Executors.newSingleThreadScheduledExecutor(threadFactory("craven-pool-housekeeper-%d"));
+        this.housekeeper.scheduleWithFixedDelay(new Runnable() {
+            @Override public void run() {
+                housekeep();
+            }
+        }, config.housekeepingPeriod(), config.housekeepingPeriod(), TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    protected DataSource delegate() {
+        return dataSource;
+    }
+
+    // --
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return iface.isInstance(this) || delegate().isWrapperFor(iface);
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return iface.cast(this);
+        }
+        return delegate().unwrap(iface);
+    }
+
+    // --
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return getConnection(SessionState.DEFAULT);
+    }
+
+    @Override
+    public Connection getConnection(SessionState sessionState) throws SQLException {
+        if (closed) {
+            throw new SQLException("Pool is closed.");
+        }
+
+        long start = System.nanoTime();
+        long timeout = TimeUnit.MILLISECONDS.toNanos(config.connectionTimeout());
+
+        try {
+            long remaining = timeout;
+            do {
+                PoolEntry entry = bag.borrow(sessionState, remaining, TimeUnit.NANOSECONDS);
+                if (entry == null) {
+                    break;
+                }
+
+                long now = System.nanoTime();
+                if (entry.isExpired(now) || !isAlive(entry, now)) {
+                    closeEntry(entry);
+                }
+                else if (applySessionState(entry, sessionState)) {
+                    metrics.recordBorrow(System.nanoTime() - start);
+                    return new PooledConnection(this, entry);
+                }
+
+                remaining = timeout - (now - start);
+            } while (remaining > 0);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a connection", e);
+        }
+
+        long waitTime = System.nanoTime() - start;
+        metrics.recordTimeout(waitTime);
+        throw new SQLTransientConnectionException("Connection is not available, request timed out after "
+                + TimeUnit.NANOSECONDS.toMillis(waitTime) + "ms");
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        throw new UnsupportedOperationException("getConnection");
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+        housekeeper.shutdownNow();
+        connector.shutdown();
+
+        // Connections in use are closed when they are returned
+        for (PoolEntry entry : bag.values(NOT_IN_USE)) {
+            if (bag.reserve(entry)) {
+                closeEntry(entry);
+            }
+        }
+    }
+
+    // -- Metrics
+
+    public PoolMetrics getMetrics() {
+        return metrics;
+    }
+
+    public StatementCacheMetrics getStatementCacheMetrics() {
+        return statementCacheMetrics;
+    }
+
+    public int getTotalConnections() {
+        return totalConnections.get();
+    }
+
+    public int getActiveConnections() {
+        return bag.getCount(IN_USE);
+    }
+
+    public int getIdleConnections() {
+        return bag.getCount(NOT_IN_USE);
+    }
+
+    public int getWaitingThreads() {
+        return bag.getWaitingThreadCount();
+    }
+
+    // -- Called by PooledConnection
+
+    void release(PoolEntry entry) {
+        try {
+            entry.reset();
+        }
+        catch (Throwable t) {
+            // We don't trust the JDBC driver: It might throw RuntimeException or Error.
+            logger.debug("Could not reset pooled connection, evicting it", t);
+            closeEntry(entry);
+            return;
+        }
+
+        long now = System.nanoTime();
+        entry.setLastAccessed(now);
+
+        if (closed || entry.isExpired(now)) {
+            closeEntry(entry);
+        }
+        else {
+            bag.requite(entry);
+        }
+    }
+
+    void abort(PoolEntry entry, Executor executor) throws SQLException {
+        if (bag.remove(entry)) {
+            totalConnections.decrementAndGet();
+            metrics.recordClosed();
+            entry.getConnection().abort(executor);
+        }
+    }
+
+    // --
+
+    private boolean isAlive(PoolEntry entry, long now) {
+        if (now - entry.getLastAccessed() < TimeUnit.MILLISECONDS.toNanos(config.aliveBypassWindow())) {
+            return true;
+        }
+
+        int timeout = (int) Math.max(1, TimeUnit.MILLISECONDS.toSeconds(config.validationTimeout()));
+        try {
+            return entry.getConnection().isValid(timeout);
+        }
+        catch (Throwable t) {
+            // We don't trust the JDBC driver: It might throw RuntimeException or Error.
+            logger.debug("Could not validate pooled connection", t);
+            return false;
+        }
+    }
+
+    private boolean applySessionState(PoolEntry entry, SessionState sessionState) {
+        if (entry.getSessionState() == sessionState) {
+            return true;
+        }
+
+        try {
+            entry.apply(sessionState);
+            metrics.recordRebucket();
+            return true;
+        }
+        catch (Throwable t) {
+            // We don't trust the JDBC driver: It might throw RuntimeException or Error.
+            logger.debug("Could not change pooled connection session state, evicting it", t);
+            closeEntry(entry);
+            return false;
+        }
+    }
+
+    private void closeEntry(PoolEntry entry) {
+        if (bag.remove(entry)) {
+            totalConnections.decrementAndGet();
+            metrics.recordClosed();
+            JdbcUtils.closeConnection(entry.getConnection());
+        }
+    }
+
+    private PoolEntry createEntry() throws SQLException {
+        Connection connection = dataSource.getConnection();
+        try {
+            // Spread the retirement of connections created together by up to 2.5% of their lifetime
+            long lifetime = config.maxLifetime();
+            if (lifetime > 10000) {
+                lifetime -= ThreadLocalRandom.current().nextLong(lifetime / 40);
+            }
+
+            // The statement cache lives as long as the physical connection
+            Connection physical = (config.statementCacheSize() > 0)
+                    ? new StatementCachingConnection(connection, config.statementCacheSize(), statementCacheMetrics)
+                    : connection;
+
+            PoolEntry entry = new PoolEntry(physical, TimeUnit.MILLISECONDS.toNanos(lifetime), config.sessionDialect());
+            metrics.recordCreated();
+            return entry;
+        }
+        catch (SQLException e) {
+            JdbcUtils.closeConnection(connection);
+            throw e;
+        }
+    }
+
+    private boolean reserveConnection() {
+        for (;;) {
+            int total = totalConnections.get();
+            if (total >= config.maxSize()) {
+                return false;
+            }
+            if (totalConnections.compareAndSet(total, total + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Asynchronously create connections for up to {@code count} waiting threads, within the maximum pool size.
+     *
+     * Returns {@code true} if connections are being created.
+     */
+    private boolean fill(int count) {
+        while (!closed && pendingConnections.get() < count && reserveConnection()) {
+            pendingConnections.incrementAndGet();
+            connector.execute(creator);
+        }
+        return pendingConnections.get() > 0;
+    }
+
+    private final Runnable creator = new Runnable() {
+        @Override public void run() {
+            try {
+                PoolEntry entry = createEntry();
+                if (closed) {
+                    totalConnections.decrementAndGet();
+                    JdbcUtils.closeConnection(entry.getConnection());
+                }
+                else {
+                    bag.add(entry);
+                }
+            }
+            catch (Throwable t) {
+                totalConnections.decrementAndGet();
+                metrics.recordCreateFailure();
+                logger.debug("Could not create pooled connection", t);
+            }
+            finally {
+                pendingConnections.decrementAndGet();
+            }
+        }
+    };
+
+    /**
+     * Establish the {@code minIdle} connections in parallel and wait for them.
+     */
+    private void prefill() {
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+        for (int i = 0; i < config.minIdle() && reserveConnection(); i++) {
+            pendingConnections.incrementAndGet();
+            futures.add(connector.submit(creator));
+        }
+
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            catch (ExecutionException e) {
+                // creator logs its own failures
+            }
+        }
+
+        logger.debug("Pool started with {} connections", totalConnections.get());
+    }
+
+    private void housekeep() {
+        try {
+            long now = System.nanoTime();
+            long idleTimeout = TimeUnit.MILLISECONDS.toNanos(config.idleTimeout());
+
+            int removable = totalConnections.get() - config.minIdle();
+            for (PoolEntry entry : bag.values(NOT_IN_USE)) {
+                boolean expired = entry.isExpired(now);
+                boolean idle = idleTimeout > 0 && removable > 0 && now - entry.getLastAccessed() > idleTimeout;
+
+                if ((expired || idle) && bag.reserve(entry)) {
+                    closeEntry(entry);
+                    removable--;
+                }
+            }
+
+            fill(config.minIdle() - bag.getCount(NOT_IN_USE));
+        }
+        catch (Throwable t) {
+            logger.warn("Pool housekeeping failed", t);
+        }
+    }
+
+    private static ThreadFactory threadFactory(String nameFormat) {
+        return new ThreadFactoryBuilder().setDaemon(true).setNameFormat(nameFormat).build();
+    }
+
+}
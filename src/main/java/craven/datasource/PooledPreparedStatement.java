@@ -0,0 +1,36 @@
+package craven.datasource;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/**
+ * A prepared statement of a {@link PooledConnection}, see {@link PooledStatement}.
+ */
+final class PooledPreparedStatement extends DelegatingPreparedStatement {
+
+    private final PreparedStatement statement;
+    private final PooledConnection connection;
+
+    PooledPreparedStatement(PreparedStatement statement, PooledConnection connection) {
+        this.statement = statement;
+        this.connection = connection;
+    }
+
+    @Override
+    protected PreparedStatement delegate() {
+        return statement;
+    }
+
+    @Override
+    protected void checkOpen() throws SQLException {
+        connection.checkOpen();
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        checkOpen();
+        return connection;
+    }
+
+}
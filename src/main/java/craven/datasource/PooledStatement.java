@@ -0,0 +1,36 @@
+package craven.datasource;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * A statement of a {@link PooledConnection}, usable while the connection is, which it returns as its connection.
+ */
+final class PooledStatement extends DelegatingStatement {
+
+    private final Statement statement;
+    private final PooledConnection connection;
+
+    PooledStatement(Statement statement, PooledConnection connection) {
+        this.statement = statement;
+        this.connection = connection;
+    }
+
+    @Override
+    protected Statement delegate() {
+        return statement;
+    }
+
+    @Override
+    protected void checkOpen() throws SQLException {
+        connection.checkOpen();
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        checkOpen();
+        return connection;
+    }
+
+}
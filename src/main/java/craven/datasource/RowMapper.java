@@ -0,0 +1,13 @@
+package craven.datasource;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Maps the current row of a {@code ResultSet}, without moving the cursor.
+ */
+public interface RowMapper<T> {
+
+    T mapRow(ResultSet rs) throws SQLException;
+
+}
@@ -0,0 +1,18 @@
+package craven.datasource;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import javax.sql.DataSource;
+
+/**
+ * A {@code DataSource} that hands out connections already in the requested session state.
+ *
+ * The caller may leave the connection in that state when closing it, the data source is responsible for bringing a
+ * reused connection to the state requested by its next user.
+ */
+public interface SessionAwareDataSource extends DataSource {
+
+    Connection getConnection(SessionState state) throws SQLException;
+
+}
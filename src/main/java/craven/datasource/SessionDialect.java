@@ -0,0 +1,27 @@
+package craven.datasource;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Hook to change the read-only mode and the isolation level of a session in a single step.
+ *
+ * @see StandardSessionDialect
+ */
+public interface SessionDialect {
+
+    /**
+     * Whether {@link #setCharacteristics} must run with auto-commit enabled, e.g. because the statement it issues
+     * would otherwise start a transaction that still has the old characteristics.
+     */
+    boolean requiresAutoCommit();
+
+    /**
+     * Change the session characteristics of the physical connection.
+     *
+     * @param readOnly the new read-only mode, {@code null} if unchanged
+     * @param level the new isolation level, -1 if unchanged
+     */
+    void setCharacteristics(Connection connection, Boolean readOnly, int level) throws SQLException;
+
+}
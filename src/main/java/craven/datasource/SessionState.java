@@ -0,0 +1,92 @@
+package craven.datasource;
+
+import craven.interceptor.TxIsolation;
+
+/**
+ * The session characteristics of a connection that a transaction cares about.
+ *
+ * Instances are canonical, compare them by identity. An isolation of {@link TxIsolation#DEFAULT} stands for the
+ * default isolation level of the connection.
+ */
+public final class SessionState {
+
+    private static final TxIsolation[] ISOLATIONS = TxIsolation.values();
+
+    private static final SessionState[] STATES = new SessionState[2 * ISOLATIONS.length * 2];
+
+    static {
+        for (boolean readOnly : new boolean[] { false, true }) {
+            for (TxIsolation isolation : ISOLATIONS) {
+                for (boolean autoCommit : new boolean[] { false, true }) {
+                    int index = index(readOnly, isolation, autoCommit);
+                    STATES[index] = new SessionState(readOnly, isolation, autoCommit, index);
+                }
+            }
+        }
+    }
+
+    /**
+     * The characteristics of a fresh connection.
+     */
+    public static final SessionState DEFAULT = of(false, TxIsolation.DEFAULT, true);
+
+    private final boolean readOnly;
+    private final TxIsolation isolation;
+    private final boolean autoCommit;
+    private final int index;
+
+    private SessionState(boolean readOnly, TxIsolation isolation, boolean autoCommit, int index) {
+        this.readOnly = readOnly;
+        this.isolation = isolation;
+        this.autoCommit = autoCommit;
+        this.index = index;
+    }
+
+    public static SessionState of(boolean readOnly, TxIsolation isolation, boolean autoCommit) {
+        return STATES[index(readOnly, isolation, autoCommit)];
+    }
+
+    private static int index(boolean readOnly, TxIsolation isolation, boolean autoCommit) {
+        return (((readOnly ? 1 : 0) * ISOLATIONS.length) + isolation.ordinal()) * 2 + (autoCommit ? 1 : 0);
+    }
+
+    static int count() {
+        return STATES.length;
+    }
+
+    int index() {
+        return index;
+    }
+
+    // --
+
+    public boolean readOnly() {
+        return readOnly;
+    }
+
+    public TxIsolation isolation() {
+        return isolation;
+    }
+
+    public boolean autoCommit() {
+        return autoCommit;
+    }
+
+    public SessionState withReadOnly(boolean readOnly) {
+        return of(readOnly, isolation, autoCommit);
+    }
+
+    public SessionState withIsolation(TxIsolation isolation) {
+        return of(readOnly, isolation, autoCommit);
+    }
+
+    public SessionState withAutoCommit(boolean autoCommit) {
+        return of(readOnly, isolation, autoCommit);
+    }
+
+    @Override
+    public String toString() {
+        return "SessionState[readOnly=" + readOnly + ", isolation=" + isolation + ", autoCommit=" + autoCommit + "]";
+    }
+
+}
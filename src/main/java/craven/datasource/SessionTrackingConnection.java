@@ -0,0 +1,162 @@
+package craven.datasource;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import com.google.common.base.Objects;
+
+/**
+ * Keeps a client-side copy of the session state of a physical connection, so that getters never reach the driver
+ * and setters only reach it when the value actually changes.
+ *
+ * Each characteristic is read from the driver at most once, the first time it is needed. Changing the session
+ * behind the wrapper's back, e.g. by executing {@code SET TRANSACTION} statements, makes the copy stale.
+ */
+public class SessionTrackingConnection extends DelegatingConnection {
+
+    private static final int UNKNOWN_LEVEL = -2;
+
+    private final Connection connection;
+    private final SessionDialect dialect;
+
+    // tracked session state, null or unknown until first read
+    private Boolean autoCommit;
+    private Boolean readOnly;
+    private int isolation = UNKNOWN_LEVEL;
+    private String schema;
+    private boolean schemaKnown = false;
+
+    public SessionTrackingConnection(Connection connection, SessionDialect dialect) {
+        this.connection = connection;
+        this.dialect = dialect;
+    }
+
+    /**
+     * Wrap the connection, unless it is a tracking connection already.
+     */
+    public static SessionTrackingConnection wrap(Connection connection, SessionDialect dialect) {
+        if (connection instanceof SessionTrackingConnection) {
+            return (SessionTrackingConnection) connection;
+        }
+        return new SessionTrackingConnection(connection, dialect);
+    }
+
+    @Override
+    protected Connection delegate() {
+        return connection;
+    }
+
+    @Override
+    protected void checkOpen() throws SQLException {
+        // the physical connection checks for itself
+    }
+
+    // --
+
+    @Override
+    public boolean getAutoCommit() throws SQLException {
+        if (autoCommit == null) {
+            autoCommit = connection.getAutoCommit();
+        }
+        return autoCommit;
+    }
+
+    @Override
+    public void setAutoCommit(boolean autoCommit) throws SQLException {
+        if (this.autoCommit == null || this.autoCommit != autoCommit) {
+            connection.setAutoCommit(autoCommit);
+            this.autoCommit = autoCommit;
+        }
+    }
+
+    @Override
+    public boolean isReadOnly() throws SQLException {
+        if (readOnly == null) {
+            readOnly = connection.isReadOnly();
+        }
+        return readOnly;
+    }
+
+    @Override
+    public void setReadOnly(boolean readOnly) throws SQLException {
+        if (this.readOnly == null || this.readOnly != readOnly) {
+            connection.setReadOnly(readOnly);
+            this.readOnly = readOnly;
+        }
+    }
+
+    @Override
+    public int getTransactionIsolation() throws SQLException {
+        if (isolation == UNKNOWN_LEVEL) {
+            isolation = connection.getTransactionIsolation();
+        }
+        return isolation;
+    }
+
+    @Override
+    public void setTransactionIsolation(int level) throws SQLException {
+        if (isolation != level) {
+            connection.setTransactionIsolation(level);
+            isolation = level;
+        }
+    }
+
+    @Override
+    public String getSchema() throws SQLException {
+        if (!schemaKnown) {
+            schema = connection.getSchema();
+            schemaKnown = true;
+        }
+        return schema;
+    }
+
+    @Override
+    public void setSchema(String schema) throws SQLException {
+        if (!schemaKnown || !Objects.equal(this.schema, schema)) {
+            connection.setSchema(schema);
+            this.schema = schema;
+            schemaKnown = true;
+        }
+    }
+
+    // --
+
+    /**
+     * Bring the session to the given characteristics in as few driver calls as possible: the read-only mode and the
+     * isolation level are changed together through the {@link SessionDialect}, with auto-commit enabled if the
+     * dialect requires it.
+     *
+     * @param level the isolation level, -1 to leave it unchanged
+     */
+    public void setSessionCharacteristics(boolean readOnly, int level, boolean autoCommit) throws SQLException {
+        Boolean newReadOnly = (isReadOnly() != readOnly) ? Boolean.valueOf(readOnly) : null;
+        int newLevel = (level != -1 && getTransactionIsolation() != level) ? level : -1;
+
+        boolean changeCharacteristics = (newReadOnly != null || newLevel != -1);
+
+        // Enable auto-commit before, disable it after changing the other characteristics
+        if (autoCommit || (changeCharacteristics && dialect.requiresAutoCommit())) {
+            setAutoCommit(true);
+        }
+
+        if (changeCharacteristics) {
+            dialect.setCharacteristics(connection, newReadOnly, newLevel);
+            if (newReadOnly != null) {
+                this.readOnly = newReadOnly;
+            }
+            if (newLevel != -1) {
+                this.isolation = newLevel;
+            }
+        }
+
+        if (!autoCommit) {
+            setAutoCommit(false);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "SessionTrackingConnection[" + connection + "]";
+    }
+
+}
@@ -0,0 +1,79 @@
+package craven.datasource;
+
+import java.util.regex.Pattern;
+
+/**
+ * Normalizes SQL so that statements differing only in literal values or IN-list lengths share a fingerprint:
+ * literals become {@code ?}, lists of placeholders become {@code (?+)} and whitespace is collapsed.
+ */
+public final class SqlFingerprint {
+
+    private static final Pattern IN_LIST = Pattern.compile("\\(\\?(?:, ?\\?)+\\)");
+
+    private SqlFingerprint() {
+    }
+
+    public static String of(String sql) {
+        if (sql == null) {
+            return null;
+        }
+
+        int length = sql.length();
+        StringBuilder sb = new StringBuilder(length);
+        boolean placeholders = false;
+
+        for (int i = 0; i < length; i++) {
+            char c = sql.charAt(i);
+
+            if (Character.isWhitespace(c)) {
+                while (i + 1 < length && Character.isWhitespace(sql.charAt(i + 1))) {
+                    i++;
+                }
+                if (sb.length() > 0 && i + 1 < length) {
+                    sb.append(' ');
+                }
+            }
+            else if (c == '\'') {
+                // string literal, '' is an escaped quote
+                i++;
+                while (i < length) {
+                    if (sql.charAt(i) == '\'') {
+                        if (i + 1 < length && sql.charAt(i + 1) == '\'') {
+                            i += 2;
+                            continue;
+                        }
+                        break;
+                    }
+                    i++;
+                }
+                sb.append('?');
+                placeholders = true;
+            }
+            else if (c == '"') {
+                // quoted identifier
+                int end = sql.indexOf('"', i + 1);
+                end = (end < 0) ? length - 1 : end;
+                sb.append(sql, i, end + 1);
+                i = end;
+            }
+            else if (Character.isDigit(c) && (sb.length() == 0 || !isIdentifierPart(sb.charAt(sb.length() - 1)))) {
+                while (i + 1 < length && (Character.isLetterOrDigit(sql.charAt(i + 1)) || sql.charAt(i + 1) == '.')) {
+                    i++;
+                }
+                sb.append('?');
+                placeholders = true;
+            }
+            else {
+                sb.append(c);
+                placeholders |= (c == '?');
+            }
+        }
+
+        return placeholders ? IN_LIST.matcher(sb).replaceAll("(?+)") : sb.toString();
+    }
+
+    private static boolean isIdentifierPart(char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '$';
+    }
+
+}
@@ -0,0 +1,109 @@
+package craven.datasource;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Session dialects for common databases.
+ *
+ * The SQL dialects change the session with one statement instead of one driver call per characteristic, the driver
+ * is not told about the change: use them with a {@link SessionTrackingConnection}, which answers the getters itself,
+ * kept with the physical connection for its whole life, as the entries of a {@link PooledDataSource} do. A new wrapper
+ * would believe the stale getters of the driver.
+ */
+public enum StandardSessionDialect implements SessionDialect {
+
+    /**
+     * Plain JDBC setters, one driver call per changed characteristic.
+     */
+    JDBC {
+        @Override
+        public boolean requiresAutoCommit() {
+            return false;
+        }
+
+        @Override
+        public void setCharacteristics(Connection connection, Boolean readOnly, int level) throws SQLException {
+            if (readOnly != null) {
+                connection.setReadOnly(readOnly);
+            }
+            if (level != -1) {
+                connection.setTransactionIsolation(level);
+            }
+        }
+    },
+
+    /**
+     * {@code SET SESSION CHARACTERISTICS AS TRANSACTION ...}, the statement would begin a transaction when
+     * auto-commit is disabled.
+     */
+    POSTGRESQL {
+        @Override
+        public boolean requiresAutoCommit() {
+            return true;
+        }
+
+        @Override
+        public void setCharacteristics(Connection connection, Boolean readOnly, int level) throws SQLException {
+            execute(connection, "SET SESSION CHARACTERISTICS AS TRANSACTION", readOnly, level);
+        }
+    },
+
+    /**
+     * {@code SET SESSION TRANSACTION ...}, which does not begin a transaction.
+     */
+    MYSQL {
+        @Override
+        public boolean requiresAutoCommit() {
+            return false;
+        }
+
+        @Override
+        public void setCharacteristics(Connection connection, Boolean readOnly, int level) throws SQLException {
+            execute(connection, "SET SESSION TRANSACTION", readOnly, level);
+        }
+    };
+
+    private static void execute(Connection connection, String prefix, Boolean readOnly, int level) throws SQLException {
+        if (level == Connection.TRANSACTION_NONE) {
+            JDBC.setCharacteristics(connection, readOnly, level);
+            return;
+        }
+
+        StringBuilder sql = new StringBuilder(prefix);
+        if (level != -1) {
+            sql.append(" ISOLATION LEVEL ").append(levelName(level));
+        }
+        if (readOnly != null) {
+            if (level != -1) {
+                sql.append(",");
+            }
+            sql.append(readOnly ? " READ ONLY" : " READ WRITE");
+        }
+
+        Statement stmt = connection.createStatement();
+        try {
+            stmt.execute(sql.toString());
+        }
+        finally {
+            JdbcUtils.closeStatement(stmt);
+        }
+    }
+
+    private static String levelName(int level) {
+        switch (level) {
+            case Connection.TRANSACTION_READ_UNCOMMITTED:
+                return "READ UNCOMMITTED";
+            case Connection.TRANSACTION_READ_COMMITTED:
+                return "READ COMMITTED";
+            case Connection.TRANSACTION_REPEATABLE_READ:
+                return "REPEATABLE READ";
+            case Connection.TRANSACTION_SERIALIZABLE:
+                return "SERIALIZABLE";
+            default:
+                throw new IllegalArgumentException("Unknown isolation level " + level);
+        }
+    }
+
+}
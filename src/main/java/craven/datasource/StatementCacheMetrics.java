@@ -0,0 +1,61 @@
+package craven.datasource;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link StatementCachingConnection} counters, usually shared by all the connections of a pool.
+ */
+public class StatementCacheMetrics {
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+
+    public StatementCacheMetrics() {
+    }
+
+    // --
+
+    void recordHit() {
+        hitCount.incrementAndGet();
+    }
+
+    void recordMiss() {
+        missCount.incrementAndGet();
+    }
+
+    void recordEviction() {
+        evictionCount.incrementAndGet();
+    }
+
+    // --
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * Number of idle statements closed to make room in a full cache.
+     */
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    public double getHitRatio() {
+        long hits = hitCount.get();
+        long total = hits + missCount.get();
+        return (total > 0) ? (double) hits / total : 0;
+    }
+
+    @Override
+    public String toString() {
+        return "StatementCacheMetrics[hits=" + getHitCount()
+                + ", misses=" + getMissCount()
+                + ", evictions=" + getEvictionCount() + "]";
+    }
+
+}
@@ -0,0 +1,256 @@
+package craven.datasource;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * Keeps the prepared statements of a physical connection open for reuse: closing a statement returns it to a
+ * bounded cache of idle statements, preparing the same SQL with the same options again takes it back out.
+ *
+ * The least recently used idle statement is closed when the cache is full. Statements are reset when they return to
+ * the cache: parameters and batch are cleared, the result set is closed and the changed settings are restored. Each
+ * checkout gets a statement object of its own over the cached one, which stays closed once closed.
+ *
+ * Like the physical connection, the cache must not be used by several threads at the same time.
+ */
+public class StatementCachingConnection extends DelegatingConnection {
+
+    private final Connection connection;
+    private final int maxSize;
+    private final StatementCacheMetrics metrics;
+
+    private final LinkedHashMap<Key, PreparedStatement> cache;
+
+    // also set by an abort from another thread
+    private volatile boolean closed = false;
+
+    public StatementCachingConnection(Connection connection, int maxSize) {
+        this(connection, maxSize, new StatementCacheMetrics());
+    }
+
+    public StatementCachingConnection(Connection connection, final int maxSize, StatementCacheMetrics metrics) {
+        this.connection = connection;
+        this.maxSize = maxSize;
+        this.metrics = metrics;
+
+        this.cache = new LinkedHashMap<Key, PreparedStatement>(16, 0.75f, true) {
+            @Override protected boolean removeEldestEntry(Map.Entry<Key, PreparedStatement> eldest) {
+                if (size() > maxSize) {
+                    StatementCachingConnection.this.metrics.recordEviction();
+                    JdbcUtils.closeStatement(eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    @Override
+    protected Connection delegate() {
+        return connection;
+    }
+
+    @Override
+    protected void checkOpen() throws SQLException {
+        // the physical connection checks for itself
+    }
+
+    public StatementCacheMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Number of idle statements in the cache.
+     */
+    public int getCacheSize() {
+        return cache.size();
+    }
+
+    // --
+
+    @Override
+    public PreparedStatement prepareStatement(String sql) throws SQLException {
+        Key key = new Key(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY, -1, -1, null, null);
+        PreparedStatement statement = take(key);
+        return wrap(key, (statement != null) ? statement : connection.prepareStatement(sql));
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency) throws SQLException {
+        Key key = new Key(sql, resultSetType, resultSetConcurrency, -1, -1, null, null);
+        PreparedStatement statement = take(key);
+        return wrap(key, (statement != null) ? statement
+                : connection.prepareStatement(sql, resultSetType, resultSetConcurrency));
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency, int resultSetHoldability) throws SQLException {
+        Key key = new Key(sql, resultSetType, resultSetConcurrency, resultSetHoldability, -1, null, null);
+        PreparedStatement statement = take(key);
+        return wrap(key, (statement != null) ? statement
+                : connection.prepareStatement(sql, resultSetType, resultSetConcurrency, resultSetHoldability));
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql, int autoGeneratedKeys) throws SQLException {
+        Key key = new Key(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY, -1, autoGeneratedKeys, null, null);
+        PreparedStatement statement = take(key);
+        return wrap(key, (statement != null) ? statement : connection.prepareStatement(sql, autoGeneratedKeys));
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql, int[] columnIndexes) throws SQLException {
+        Key key = new Key(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY, -1, -1, columnIndexes, null);
+        PreparedStatement statement = take(key);
+        return wrap(key, (statement != null) ? statement : connection.prepareStatement(sql, columnIndexes));
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql, String[] columnNames) throws SQLException {
+        Key key = new Key(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY, -1, -1, null, columnNames);
+        PreparedStatement statement = take(key);
+        return wrap(key, (statement != null) ? statement : connection.prepareStatement(sql, columnNames));
+    }
+
+    // --
+
+    @Override
+    public void close() throws SQLException {
+        closed = true;
+        clear();
+        connection.close();
+    }
+
+    /**
+     * Called from another thread, e.g. a transaction watchdog, while the owner may be using the cache: the cache is
+     * left alone, the statements go away with the connection, and the statements closed later are not cached.
+     */
+    @Override
+    public void abort(Executor executor) throws SQLException {
+        closed = true;
+        connection.abort(executor);
+    }
+
+    /**
+     * Close all idle statements.
+     */
+    public void clear() {
+        List<PreparedStatement> statements = new ArrayList<PreparedStatement>(cache.values());
+        cache.clear();
+
+        for (PreparedStatement statement : statements) {
+            JdbcUtils.closeStatement(statement);
+        }
+    }
+
+    // --
+
+    private PreparedStatement take(Key key) {
+        PreparedStatement statement = cache.remove(key);
+        if (statement != null) {
+            metrics.recordHit();
+        }
+        else {
+            metrics.recordMiss();
+        }
+        return statement;
+    }
+
+    private CachedPreparedStatement wrap(Key key, PreparedStatement statement) {
+        return new CachedPreparedStatement(this, key, statement);
+    }
+
+    /**
+     * Called on the logical close of a statement, with the physical statement once reset.
+     */
+    void release(Key key, PreparedStatement statement) {
+        if (closed || maxSize <= 0 || cache.containsKey(key)) {
+            // Note: An equal statement may have been in use at the same time and returned first.
+            JdbcUtils.closeStatement(statement);
+            return;
+        }
+        cache.put(key, statement);
+    }
+
+    @Override
+    public String toString() {
+        return "StatementCachingConnection[" + connection + "]";
+    }
+
+    // --
+
+    /**
+     * The SQL with the options given to {@code prepareStatement}, -1 and null stand for options not given.
+     */
+    static final class Key {
+
+        private final String sql;
+        private final int resultSetType;
+        private final int resultSetConcurrency;
+        private final int resultSetHoldability;
+        private final int autoGeneratedKeys;
+        private final int[] columnIndexes;
+        private final String[] columnNames;
+
+        private final int hash;
+
+        Key(String sql, int resultSetType, int resultSetConcurrency, int resultSetHoldability,
+                int autoGeneratedKeys, int[] columnIndexes, String[] columnNames) {
+            this.sql = sql;
+            this.resultSetType = resultSetType;
+            this.resultSetConcurrency = resultSetConcurrency;
+            this.resultSetHoldability = resultSetHoldability;
+            this.autoGeneratedKeys = autoGeneratedKeys;
+            this.columnIndexes = (columnIndexes != null) ? columnIndexes.clone() : null;
+            this.columnNames = (columnNames != null) ? columnNames.clone() : null;
+
+            int h = sql.hashCode();
+            h = 31 * h + resultSetType;
+            h = 31 * h + resultSetConcurrency;
+            h = 31 * h + resultSetHoldability;
+            h = 31 * h + autoGeneratedKeys;
+            h = 31 * h + Arrays.hashCode(this.columnIndexes);
+            h = 31 * h + Arrays.hashCode(this.columnNames);
+            this.hash = h;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return hash == other.hash
+                    && resultSetType == other.resultSetType
+                    && resultSetConcurrency == other.resultSetConcurrency
+                    && resultSetHoldability == other.resultSetHoldability
+                    && autoGeneratedKeys == other.autoGeneratedKeys
+                    && sql.equals(other.sql)
+                    && Arrays.equals(columnIndexes, other.columnIndexes)
+                    && Arrays.equals(columnNames, other.columnNames);
+        }
+
+        @Override
+        public String toString() {
+            return sql;
+        }
+
+    }
+
+}
@@ -0,0 +1,22 @@
+package craven.datasource;
+
+/**
+ * Notified of the statements executed through an {@link InstrumentedDataSource}, on the executing thread.
+ *
+ * Statements are identified by their {@link SqlFingerprint}, times are in nanoseconds.
+ */
+public interface StatementListener {
+
+    /**
+     * @param rows the update count, or the sum of the batch update counts, -1 for queries
+     */
+    void executed(String fingerprint, long elapsed, long rows);
+
+    void failed(String fingerprint, long elapsed);
+
+    /**
+     * The rows read from the result set of a query, reported when the result set is closed.
+     */
+    void rowsRead(String fingerprint, long rows);
+
+}
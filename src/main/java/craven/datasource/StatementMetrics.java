@@ -0,0 +1,164 @@
+package craven.datasource;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Per-fingerprint latency histograms and row counts of the statements executed through an
+ * {@link InstrumentedDataSource}.
+ *
+ * The number of fingerprints is capped, statements beyond it are counted under {@link #OTHER}. The statistics cover
+ * the interval since the last {@link #reset()}.
+ */
+public class StatementMetrics implements StatementListener, StatementMetricsMBean {
+
+    public static final String OTHER = "<other>";
+
+    private final int maxFingerprints;
+
+    private volatile ConcurrentMap<String, StatementStats> stats = new ConcurrentHashMap<String, StatementStats>();
+
+    public StatementMetrics() {
+        this(500);
+    }
+
+    public StatementMetrics(int maxFingerprints) {
+        this.maxFingerprints = maxFingerprints;
+    }
+
+    /**
+     * Register under {@code craven.datasource:type=StatementMetrics,name=<name>} in the platform MBean server.
+     */
+    public ObjectName registerMBean(String name) throws JMException {
+        ObjectName objectName = new ObjectName("craven.datasource:type=StatementMetrics,name=" + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        return objectName;
+    }
+
+    // -- StatementListener
+
+    @Override
+    public void executed(String fingerprint, long elapsed, long rows) {
+        get(fingerprint).recordExecution(elapsed, rows);
+    }
+
+    @Override
+    public void failed(String fingerprint, long elapsed) {
+        get(fingerprint).recordFailure(elapsed);
+    }
+
+    @Override
+    public void rowsRead(String fingerprint, long rows) {
+        get(fingerprint).recordRows(rows);
+    }
+
+    private StatementStats get(String fingerprint) {
+        ConcurrentMap<String, StatementStats> current = stats;
+
+        StatementStats s = current.get(fingerprint);
+        if (s != null) {
+            return s;
+        }
+
+        // Note: The cap may be exceeded by a few concurrent insertions.
+        String key = (current.size() < maxFingerprints) ? fingerprint : OTHER;
+        s = current.get(key);
+        if (s == null) {
+            StatementStats created = new StatementStats(key);
+            s = current.putIfAbsent(key, created);
+            if (s == null) {
+                s = created;
+            }
+        }
+        return s;
+    }
+
+    // --
+
+    public StatementStats getStats(String fingerprint) {
+        return stats.get(fingerprint);
+    }
+
+    public List<StatementStats> getAllStats() {
+        return new ArrayList<StatementStats>(stats.values());
+    }
+
+    // -- StatementMetricsMBean
+
+    @Override
+    public int getFingerprintCount() {
+        return stats.size();
+    }
+
+    @Override
+    public String[] getSummary() {
+        List<StatementStats> all = getAllStats();
+
+        final List<LatencyHistogram.Snapshot> snapshots = new ArrayList<LatencyHistogram.Snapshot>(all.size());
+        List<Integer> order = new ArrayList<Integer>(all.size());
+        for (int i = 0; i < all.size(); i++) {
+            snapshots.add(all.get(i).getLatency().snapshot());
+            order.add(i);
+        }
+
+        Collections.sort(order, new Comparator<Integer>() {
+            @Override public int compare(Integer a, Integer b) {
+                long pa = snapshots.get(a).getPercentile(0.99);
+                long pb = snapshots.get(b).getPercentile(0.99);
+                return (pa < pb) ? 1 : (pa > pb) ? -1 : 0;
+            }
+        });
+
+        String[] lines = new String[order.size()];
+        for (int i = 0; i < lines.length; i++) {
+            StatementStats s = all.get(order.get(i));
+            LatencyHistogram.Snapshot snapshot = snapshots.get(order.get(i));
+            lines[i] = "count=" + snapshot.getCount()
+                    + " failures=" + s.getFailures()
+                    + " rows=" + s.getRows()
+                    + " p50=" + micros(snapshot.getPercentile(0.5))
+                    + " p99=" + micros(snapshot.getPercentile(0.99))
+                    + " p999=" + micros(snapshot.getPercentile(0.999))
+                    + " max=" + micros(snapshot.getMax())
+                    + " " + s.getFingerprint();
+        }
+        return lines;
+    }
+
+    @Override
+    public long getCount(String fingerprint) {
+        StatementStats s = stats.get(fingerprint);
+        return (s != null) ? s.getLatency().snapshot().getCount() : 0;
+    }
+
+    @Override
+    public long getPercentile(String fingerprint, double fraction) {
+        StatementStats s = stats.get(fingerprint);
+        return (s != null) ? micros(s.getLatency().snapshot().getPercentile(fraction)) : 0;
+    }
+
+    @Override
+    public long getMax(String fingerprint) {
+        StatementStats s = stats.get(fingerprint);
+        return (s != null) ? micros(s.getLatency().snapshot().getMax()) : 0;
+    }
+
+    @Override
+    public void reset() {
+        stats = new ConcurrentHashMap<String, StatementStats>();
+    }
+
+    private static long micros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+
+}
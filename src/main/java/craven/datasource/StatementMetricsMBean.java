@@ -0,0 +1,26 @@
+package craven.datasource;
+
+/**
+ * JMX view of {@link StatementMetrics}, times are in microseconds.
+ */
+public interface StatementMetricsMBean {
+
+    int getFingerprintCount();
+
+    /**
+     * One line per fingerprint, slowest p99 first: count, failures, rows, p50, p99, p999, max and the fingerprint.
+     */
+    String[] getSummary();
+
+    long getCount(String fingerprint);
+
+    long getPercentile(String fingerprint, double fraction);
+
+    long getMax(String fingerprint);
+
+    /**
+     * Forget all statistics and start a new interval.
+     */
+    void reset();
+
+}
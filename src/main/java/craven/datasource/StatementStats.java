@@ -0,0 +1,59 @@
+package craven.datasource;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Execution statistics of the statements sharing a fingerprint, see {@link StatementMetrics}.
+ */
+public class StatementStats {
+
+    private final String fingerprint;
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final AtomicLong rows = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    StatementStats(String fingerprint) {
+        this.fingerprint = fingerprint;
+    }
+
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * Execution times, failed executions included.
+     */
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    /**
+     * Rows updated and rows read.
+     */
+    public long getRows() {
+        return rows.get();
+    }
+
+    public long getFailures() {
+        return failures.get();
+    }
+
+    // --
+
+    void recordExecution(long elapsed, long rows) {
+        latency.record(elapsed);
+        if (rows > 0) {
+            this.rows.addAndGet(rows);
+        }
+    }
+
+    void recordFailure(long elapsed) {
+        latency.record(elapsed);
+        failures.incrementAndGet();
+    }
+
+    void recordRows(long rows) {
+        this.rows.addAndGet(rows);
+    }
+
+}
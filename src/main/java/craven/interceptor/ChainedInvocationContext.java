@@ -0,0 +1,124 @@
+package craven.interceptor;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import javax.interceptor.InvocationContext;
+
+/**
+ * The invocation context of one call through an {@link InterceptorChain}: each {@link #proceed()} runs the next
+ * interceptor, and the last one the target method or function.
+ */
+final class ChainedInvocationContext implements InvocationContext {
+
+    private final Interceptor[] interceptors;
+    private final InterceptorChain.Invoker invoker;    // null for a function
+    private final Callable<?> function;                 // null for a method
+    private final TransactionPlan plan;                 // null unless given with the function
+
+    private final Object target;
+    private Object[] parameters;
+
+    private int index = 0;
+    private Map<String, Object> contextData;
+
+    ChainedInvocationContext(Interceptor[] interceptors, InterceptorChain.Invoker invoker, Object target, Object[] parameters) {
+        this.interceptors = interceptors;
+        this.invoker = invoker;
+        this.function = null;
+        this.plan = null;
+        this.target = target;
+        this.parameters = parameters;
+    }
+
+    ChainedInvocationContext(Interceptor[] interceptors, Callable<?> function, TransactionPlan plan) {
+        this.interceptors = interceptors;
+        this.invoker = null;
+        this.function = function;
+        this.plan = plan;
+        this.target = null;
+        this.parameters = null;
+    }
+
+    /**
+     * The transaction attributes given with the function, null when they come from the method.
+     */
+    TransactionPlan getPlan() {
+        return plan;
+    }
+
+    @Override
+    public Object getTarget() {
+        return target;
+    }
+
+    /**
+     * Null when a function is called.
+     */
+    @Override
+    public Method getMethod() {
+        return (invoker != null) ? invoker.method : null;
+    }
+
+    @Override
+    public Object[] getParameters() throws IllegalStateException {
+        return parameters;
+    }
+
+    @Override
+    public void setParameters(Object[] params) throws IllegalStateException, IllegalArgumentException {
+        if (invoker == null) {
+            throw new IllegalStateException("A function has no parameters");
+        }
+        int newParametersCount = (params == null) ? 0 : params.length;
+        if (invoker.parameterCount != newParametersCount) {
+            throw new IllegalArgumentException();
+        }
+        this.parameters = params;
+    }
+
+    @Override
+    public Map<String, Object> getContextData() {
+        if (contextData == null) {
+            contextData = new HashMap<String, Object>();
+        }
+        return contextData;
+    }
+
+    @Override
+    public Object getTimer() {
+        return null;
+    }
+
+    @Override
+    public Object proceed() throws Exception {
+        if (index < interceptors.length) {
+            Interceptor interceptor = interceptors[index++];
+            try {
+                return interceptor.around(this);
+            }
+            finally {
+                // an interceptor may proceed more than once, e.g. to retry
+                index--;
+            }
+        }
+
+        if (function != null) {
+            return function.call();
+        }
+
+        try {
+            return invoker.invokeTarget(target, parameters);
+        }
+        catch (Exception | Error e) {
+            throw e;
+        }
+        catch (Throwable t) {
+            throw new UndeclaredThrowableException(t);
+        }
+    }
+
+}
@@ -0,0 +1,12 @@
+package craven.interceptor;
+
+import javax.interceptor.InvocationContext;
+
+/**
+ * An around-invoke interceptor that can be composed in an {@link InterceptorChain}.
+ */
+public interface Interceptor {
+
+    Object around(InvocationContext ic) throws Exception;
+
+}
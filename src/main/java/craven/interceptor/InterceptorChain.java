@@ -0,0 +1,153 @@
+package craven.interceptor;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Runs calls through an ordered list of interceptors, the first one outermost.
+ *
+ * A method is bound once to an {@link Invoker} which calls the target through a method handle rather than
+ * reflection. The same interceptors apply to functions, e.g. a {@link TransactionInterceptor} with the attributes
+ * given to {@link #call(Transactional, Callable)}.
+ */
+public final class InterceptorChain {
+
+    // up to which the parameters are passed to the method handle one by one rather than spread from the array
+    private static final int MAX_ARITY = 3;
+
+    private final Interceptor[] interceptors;
+
+    private final ConcurrentMap<Method, Invoker> invokers = new ConcurrentHashMap<Method, Invoker>();
+
+    public InterceptorChain(Interceptor... interceptors) {
+        this.interceptors = interceptors.clone();
+    }
+
+    public InterceptorChain(List<? extends Interceptor> interceptors) {
+        this.interceptors = interceptors.toArray(new Interceptor[interceptors.size()]);
+    }
+
+    public List<Interceptor> getInterceptors() {
+        return Arrays.asList(interceptors.clone());
+    }
+
+    /**
+     * The invoker of the method through this chain, created on first use.
+     */
+    public Invoker bind(Method method) {
+        Invoker invoker = invokers.get(method);
+        if (invoker == null) {
+            invoker = new Invoker(this, method);
+            Invoker existing = invokers.putIfAbsent(method, invoker);
+            if (existing != null) {
+                invoker = existing;
+            }
+        }
+        return invoker;
+    }
+
+    public Object invoke(Object target, Method method, Object... parameters) throws Exception {
+        return bind(method).invoke(target, parameters);
+    }
+
+    public <T> T call(Callable<T> function) throws Exception {
+        return call(TxConfig.DEFAULT, function);
+    }
+
+    /**
+     * Run the function through the interceptors, without target nor method, in a transaction with the given
+     * attributes if the chain has a {@link TransactionInterceptor}.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T call(Transactional annotation, Callable<T> function) throws Exception {
+        return (T) new ChainedInvocationContext(interceptors, function, TransactionPlan.of(annotation)).proceed();
+    }
+
+    // --
+
+    /**
+     * A method bound to a chain.
+     */
+    public static final class Invoker {
+
+        private final InterceptorChain chain;
+
+        final Method method;
+        final int parameterCount;
+
+        // (Object target, Object... parameters) Object, or (Object target, Object[] parameters) Object above MAX_ARITY
+        private final MethodHandle handle;
+
+        Invoker(InterceptorChain chain, Method method) {
+            this.chain = chain;
+            this.method = method;
+            this.parameterCount = method.getParameterTypes().length;
+            this.handle = adapt(method);
+        }
+
+        public Method getMethod() {
+            return method;
+        }
+
+        public Object invoke(Object target, Object... parameters) throws Exception {
+            return new ChainedInvocationContext(chain.interceptors, this, target, parameters).proceed();
+        }
+
+        Object invokeTarget(Object target, Object[] parameters) throws Throwable {
+            int count = (parameters == null) ? 0 : parameters.length;
+            if (count != parameterCount) {
+                throw new IllegalArgumentException("Wrong number of parameters: " + count + " for " + method);
+            }
+
+            if (count > MAX_ARITY) {
+                return handle.invokeExact(target, parameters);
+            }
+
+            // A handle that is not a constant is not inlined, spreading an array takes a few more calls.
+            switch (count) {
+                case 0: return handle.invokeExact(target);
+                case 1: return handle.invokeExact(target, parameters[0]);
+                case 2: return handle.invokeExact(target, parameters[0], parameters[1]);
+                default: return handle.invokeExact(target, parameters[0], parameters[1], parameters[2]);
+            }
+        }
+
+        private static MethodHandle adapt(Method method) {
+            MethodHandle handle;
+            try {
+                handle = MethodHandles.publicLookup().unreflect(method);
+            }
+            catch (IllegalAccessException e) {
+                // e.g. a public method of a class that is not
+                method.setAccessible(true);
+                try {
+                    handle = MethodHandles.lookup().unreflect(method);
+                }
+                catch (IllegalAccessException e2) {
+                    throw new IllegalArgumentException("Cannot access " + method, e2);
+                }
+            }
+
+            handle = handle.asFixedArity();
+            if (Modifier.isStatic(method.getModifiers())) {
+                handle = MethodHandles.dropArguments(handle, 0, Object.class);
+            }
+            int count = method.getParameterTypes().length;
+            if (count > MAX_ARITY) {
+                handle = handle.asSpreader(Object[].class, count);
+                return handle.asType(MethodType.methodType(Object.class, Object.class, Object[].class));
+            }
+            return handle.asType(MethodType.genericMethodType(count + 1));
+        }
+
+    }
+
+}
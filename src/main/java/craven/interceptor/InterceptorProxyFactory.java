@@ -0,0 +1,148 @@
+package craven.interceptor;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Creates proxies that run the calls to an implementation through the interceptors bound to the annotations on its
+ * methods or class, e.g. {@link Transactional} and {@link Logging}, without a CDI container:
+ *
+ * <pre>
+ * InterceptorProxyFactory factory = new InterceptorProxyFactory.Builder()
+ *         .bind(Logging.class, new LoggingInterceptor())
+ *         .bind(Transactional.class, new TransactionInterceptor(transactionManager))
+ *         .build();
+ * AccountService accountService = factory.create(AccountService.class, new AccountServiceImpl(accountRepository));
+ * </pre>
+ *
+ * The interceptors of each method are resolved when the proxy is created, a call only looks up its invoker.
+ */
+public class InterceptorProxyFactory {
+
+    // in chain order, the first outermost
+    private final Map<Class<? extends Annotation>, Interceptor> bindings;
+
+    private InterceptorProxyFactory(Builder builder) {
+        this.bindings = new LinkedHashMap<Class<? extends Annotation>, Interceptor>(builder.bindings);
+    }
+
+    public <T> T create(Class<T> type, T implementation) {
+        if (!type.isInterface()) {
+            throw new IllegalArgumentException(type.getName() + " is not an interface");
+        }
+        Class<?> implementationClass = implementation.getClass();
+
+        Map<List<Interceptor>, InterceptorChain> chains = new HashMap<List<Interceptor>, InterceptorChain>();
+        Map<Method, InterceptorChain.Invoker> invokers = new HashMap<Method, InterceptorChain.Invoker>();
+
+        for (Method method : type.getMethods()) {
+            Method implementationMethod;
+            try {
+                implementationMethod = implementationClass.getMethod(method.getName(), method.getParameterTypes());
+            }
+            catch (NoSuchMethodException e) {
+                throw new IllegalArgumentException("Could not find " + method + " in " + implementationClass.getName(), e);
+            }
+
+            List<Interceptor> interceptors = new ArrayList<Interceptor>();
+            for (Map.Entry<Class<? extends Annotation>, Interceptor> binding : bindings.entrySet()) {
+                if (implementationMethod.isAnnotationPresent(binding.getKey())
+                        || implementationClass.isAnnotationPresent(binding.getKey())) {
+                    interceptors.add(binding.getValue());
+                }
+            }
+
+            InterceptorChain chain = chains.get(interceptors);
+            if (chain == null) {
+                chain = new InterceptorChain(interceptors);
+                chains.put(interceptors, chain);
+            }
+            invokers.put(method, chain.bind(implementationMethod));
+        }
+
+        Object proxy = Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type },
+                new Handler(implementation, invokers));
+        return type.cast(proxy);
+    }
+
+    // --
+
+    private static final class Handler implements InvocationHandler {
+
+        private final Object implementation;
+        private final Map<Method, InterceptorChain.Invoker> invokers;
+
+        // The proxy class passes the same method instances on each call, which are cheaper to look up by identity
+        // than by equality. Copied on write, it stops changing once each method was called.
+        private volatile Map<Method, InterceptorChain.Invoker> invokersByIdentity = new IdentityHashMap<Method, InterceptorChain.Invoker>();
+
+        Handler(Object implementation, Map<Method, InterceptorChain.Invoker> invokers) {
+            this.implementation = implementation;
+            this.invokers = invokers;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            InterceptorChain.Invoker invoker = invokersByIdentity.get(method);
+            if (invoker == null) {
+                invoker = invokers.get(method);
+                if (invoker != null) {
+                    Map<Method, InterceptorChain.Invoker> copy = new IdentityHashMap<Method, InterceptorChain.Invoker>(invokersByIdentity);
+                    copy.put(method, invoker);
+                    invokersByIdentity = copy;
+                }
+            }
+            if (invoker != null) {
+                return invoker.invoke(implementation, args);
+            }
+
+            // The methods of Object, not intercepted
+            String name = method.getName();
+            if (name.equals("equals")) {
+                return proxy == args[0];
+            }
+            if (name.equals("hashCode")) {
+                return System.identityHashCode(proxy);
+            }
+            if (name.equals("toString")) {
+                return "Proxy[" + implementation + "]";
+            }
+            throw new UnsupportedOperationException(method.toString());
+        }
+
+    }
+
+    /**
+     * Builder for {@link InterceptorProxyFactory} to simulate named optional parameters.
+     */
+    public static class Builder {
+
+        private final Map<Class<? extends Annotation>, Interceptor> bindings = new LinkedHashMap<Class<? extends Annotation>, Interceptor>();
+
+        public Builder() {
+        }
+
+        /**
+         * Run the methods annotated with the interceptor binding, or of a class annotated with it, through the
+         * interceptor. Interceptors run in the order they are bound, the first outermost.
+         */
+        public Builder bind(Class<? extends Annotation> binding, Interceptor interceptor) {
+            bindings.put(binding, interceptor);
+            return this;
+        }
+
+        public InterceptorProxyFactory build() {
+            return new InterceptorProxyFactory(this);
+        }
+
+    }
+
+}
@@ -1,47 +1,408 @@
 package craven.interceptor;
 
+import java.io.Closeable;
 import java.lang.reflect.Method;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
 
 import javax.interceptor.InvocationContext;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-public class LoggingInterceptor {
+/**
+ * Logs calls with their parameters and result at debug level.
+ *
+ * By default calls are formatted and logged on the caller thread. In asynchronous mode the caller only stores
+ * references to the target, parameters and result in a preallocated ring buffer, a background thread formats and
+ * logs them; calls are dropped and counted when the buffer is full.
+ *
+ * Either way the parameters are captured before the call, strings, boxed primitives and enums as they are and other
+ * values as their truncated string, so that they are logged as they were passed.
+ *
+ * Nothing is captured when debug is disabled, and with a sample rate of N only one call in N is logged.
+ */
+public class LoggingInterceptor implements Interceptor, Closeable {
 
-    private static final Logger logger = LoggerFactory.getLogger(LoggingInterceptor.class);
+    private final Logger logger;
+
+    private final int sampleRate;
+    private final int maxParameterLength;
+
+    // null in synchronous mode
+    private final RingBuffer buffer;
 
     public LoggingInterceptor() {
+        this(new Builder());
+    }
+
+    private LoggingInterceptor(Builder builder) {
+        this.logger = builder.logger;
+        this.sampleRate = Math.max(1, builder.sampleRate);
+        this.maxParameterLength = builder.maxParameterLength;
+        this.buffer = (builder.bufferSize > 0) ? new RingBuffer(builder.bufferSize) : null;
     }
 
+    @Override
     public Object around(InvocationContext ic) throws Exception {
-        Object target = ic.getTarget();
+        if (!isLogged()) {
+            return ic.proceed();
+        }
+
+        Object[] params = snapshot(ic.getParameters());
+        Object result = ic.proceed();
+
+        // no method for a function called through an InterceptorChain
         Method method = ic.getMethod();
-        Object[] params = ic.getParameters();
+        log(ic.getTarget(), (method != null) ? method.getName() : "call", params, result);
+
+        return result;
+    }
+
+    /**
+     * Log the call of the function as a call of the named method of the target, e.g. from generated code.
+     */
+    public <T> T apply(Object target, String method, Object[] parameters, Callable<T> function) {
+        try {
+            if (!isLogged()) {
+                return function.call();
+            }
+
+            Object[] params = snapshot(parameters);
+            T result = function.call();
+            log(target, method, params, result);
+            return result;
+        }
+        catch (Exception e) {
+            LoggingInterceptor.<RuntimeException>rethrow(e);
+            return null;
+        }
+    }
+
+    private boolean isLogged() {
+        return logger.isDebugEnabled() && (sampleRate == 1 || ThreadLocalRandom.current().nextInt(sampleRate) == 0);
+    }
+
+    private void log(Object target, String method, Object[] params, Object result) {
+        if (buffer != null) {
+            buffer.offer(target, method, params, result);
+        }
+        else {
+            logger.debug(format(target, method, params, result));
+        }
+    }
+
+    /**
+     * Number of calls not logged because the buffer was full.
+     */
+    public long getDroppedCount() {
+        return (buffer != null) ? buffer.dropped.get() : 0;
+    }
+
+    /**
+     * Log the buffered calls and stop the background thread, if any.
+     */
+    @Override
+    public void close() {
+        if (buffer != null) {
+            buffer.close();
+        }
+    }
 
+    // --
+
+    /**
+     * The parameters as they are before the call, for mutable ones to be logged in that state.
+     */
+    private Object[] snapshot(Object[] params) {
+        if (params == null || params.length == 0) {
+            return params;
+        }
+
+        Object[] snapshot = new Object[params.length];
+        for (int i = 0; i < params.length; i++) {
+            Object param = params[i];
+            snapshot[i] = isImmutable(param) ? param : truncate(toString(param));
+        }
+        return snapshot;
+    }
+
+    private static boolean isImmutable(Object value) {
+        return value == null || value instanceof String || value instanceof Integer || value instanceof Long
+                || value instanceof Boolean || value instanceof Enum || value instanceof Double || value instanceof Float
+                || value instanceof Short || value instanceof Byte || value instanceof Character;
+    }
+
+    private static String toString(Object value) {
+        try {
+            return String.valueOf(value);
+        }
+        catch (RuntimeException e) {
+            // toString() of application objects might throw anything, the call goes on
+            return value.getClass().getName() + "@" + Integer.toHexString(System.identityHashCode(value));
+        }
+    }
+
+    private String truncate(String s) {
+        return (maxParameterLength > 0 && s.length() > maxParameterLength) ? s.substring(0, maxParameterLength) + "..." : s;
+    }
+
+    private String format(Object target, String method, Object[] params, Object result) {
         StringBuilder sb = new StringBuilder();
-        sb.append("[").append(target).append("] ");
-        sb.append(method.getName()).append("(");
+        sb.append("[");
+        append(sb, target);
+        sb.append("] ");
+        sb.append(method).append("(");
 
         if (params != null && params.length > 0) {
-            sb.append("<").append(params[0]).append(">");
+            sb.append("<");
+            append(sb, params[0]);
+            sb.append(">");
             for (int i = 1; i < params.length; i++) {
                 sb.append(", ");
-                sb.append("<").append(params[i]).append(">");
+                sb.append("<");
+                append(sb, params[i]);
+                sb.append(">");
             }
         }
 
         sb.append(")");
 
-        Object result = ic.proceed();
-
         if (result != null) {
-            sb.append(" → ").append("<").append(result).append(">");
+            sb.append(" → ").append("<");
+            append(sb, result);
+            sb.append(">");
         }
 
-        logger.debug(sb.toString());
+        return sb.toString();
+    }
+
+    private void append(StringBuilder sb, Object value) {
+        String s = String.valueOf(value);
+        if (maxParameterLength > 0 && s.length() > maxParameterLength) {
+            sb.append(s, 0, maxParameterLength).append("...");
+        }
+        else {
+            sb.append(s);
+        }
+    }
+
+    /**
+     * Bounded multi-producer, single-consumer queue of preallocated events.
+     *
+     * Each slot has a sequence number: a producer claims the slot whose sequence equals the tail position and
+     * publishes it by advancing the sequence, the consumer releases it for the next round of the ring.
+     */
+    private final class RingBuffer implements Runnable {
+
+        // set on the tail when closing, no slot can be claimed after
+        private static final long CLOSED = Long.MIN_VALUE;
+
+        private final Event[] events;
+        private final AtomicLongArray sequences;
+        private final int mask;
+
+        private final AtomicLong tail = new AtomicLong();
+        private long head = 0;
+
+        private final AtomicLong dropped = new AtomicLong();
+        private long reportedDropped = 0;
+
+        private final Thread writer;
+        private volatile boolean closed = false;
+
+        // whether the writer found the buffer empty and parks, for the producers to wake it up
+        private volatile boolean waiting = false;
+
+        RingBuffer(int size) {
+            int capacity = Integer.highestOneBit(Math.max(2, size - 1)) << 1;
+
+            this.events = new Event[capacity];
+            this.sequences = new AtomicLongArray(capacity);
+            for (int i = 0; i < capacity; i++) {
+                events[i] = new Event();
+                sequences.set(i, i);
+            }
+            this.mask = capacity - 1;
+
+            this.writer = new Thread(this, "craven-logging-writer");
+            this.writer.setDaemon(true);
+            this.writer.start();
+        }
+
+        void offer(Object target, String method, Object[] params, Object result) {
+            for (;;) {
+                long position = tail.get();
+                int index = (int) position & mask;
+                long diff = sequences.get(index) - position;
+
+                if (diff < 0 || position < 0) {
+                    dropped.incrementAndGet();
+                    return;
+                }
+                if (diff == 0 && tail.compareAndSet(position, position + 1)) {
+                    Event event = events[index];
+                    event.target = target;
+                    event.method = method;
+                    event.params = params;
+                    event.result = result;
+                    // Note: A full store, so that the writer either sees the event before it parks or is woken up.
+                    sequences.set(index, position + 1);
+                    if (waiting) {
+                        LockSupport.unpark(writer);
+                    }
+                    return;
+                }
+            }
+        }
+
+        private boolean isEmpty() {
+            return sequences.get((int) head & mask) != head + 1;
+        }
+
+        private boolean poll() {
+            if (isEmpty()) {
+                return false;
+            }
+
+            int index = (int) head & mask;
+            Event event = events[index];
+            try {
+                logger.debug(format(event.target, event.method, event.params, event.result));
+            }
+            catch (Throwable t) {
+                // toString() of application objects might throw anything
+                logger.debug("Could not log call", t);
+            }
+            event.clear();
+
+            sequences.lazySet(index, head + mask + 1);
+            head++;
+            return true;
+        }
+
+        @Override
+        public void run() {
+            while (!closed) {
+                if (!poll()) {
+                    reportDropped();
+                    waiting = true;
+                    if (isEmpty() && !closed) {
+                        LockSupport.park(this);
+                    }
+                    waiting = false;
+                }
+            }
+            // flush, including the slots claimed before closing and not published yet
+            long end = tail.get() & ~CLOSED;
+            while (head != end) {
+                if (!poll()) {
+                    Thread.yield();
+                }
+            }
+            reportDropped();
+        }
+
+        private void reportDropped() {
+            long count = dropped.get();
+            if (count != reportedDropped) {
+                logger.warn("Logging buffer full, dropped {} calls", count - reportedDropped);
+                reportedDropped = count;
+            }
+        }
+
+        void close() {
+            for (;;) {
+                long position = tail.get();
+                if (position < 0 || tail.compareAndSet(position, position | CLOSED)) {
+                    break;
+                }
+            }
+            closed = true;
+            LockSupport.unpark(writer);
+            try {
+                writer.join();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+    }
+
+    private static final class Event {
+
+        Object target;
+        String method;
+        Object[] params;
+        Object result;
+
+        void clear() {
+            target = null;
+            method = null;
+            params = null;
+            result = null;
+        }
+
+    }
+
+    // http://blog.jooq.org/2012/09/14/throw-checked-exceptions-like-runtime-exceptions-in-java/
+
+    @SuppressWarnings("unchecked")
+    private static <E extends Exception> void rethrow(Exception e) throws E {
+        throw (E) e;
+    }
+
+    /**
+     * Builder for {@link LoggingInterceptor} to simulate named optional parameters.
+     */
+    public static class Builder {
+
+        private int bufferSize = 0;
+        private int sampleRate = 1;
+        private int maxParameterLength = 0;
+        private Logger logger = LoggerFactory.getLogger(LoggingInterceptor.class);
+
+        public Builder() {
+        }
+
+        /**
+         * Log asynchronously through a buffer of this size, rounded up to a power of two. Zero logs synchronously.
+         */
+        public Builder async(int bufferSize) {
+            this.bufferSize = bufferSize;
+            return this;
+        }
+
+        /**
+         * Log one call in {@code sampleRate}, chosen at random.
+         */
+        public Builder sampleRate(int sampleRate) {
+            this.sampleRate = sampleRate;
+            return this;
+        }
+
+        /**
+         * Truncate the string of the target, each parameter and the result to this length, zero does not truncate.
+         */
+        public Builder maxParameterLength(int maxParameterLength) {
+            this.maxParameterLength = maxParameterLength;
+            return this;
+        }
+
+        // for tests
+        Builder logger(Logger logger) {
+            this.logger = logger;
+            return this;
+        }
+
+        public LoggingInterceptor build() {
+            return new LoggingInterceptor(this);
+        }
 
-        return result;
     }
 
 }
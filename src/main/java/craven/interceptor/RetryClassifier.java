@@ -0,0 +1,11 @@
+package craven.interceptor;
+
+/**
+ * Decides whether a transaction that failed with an exception may succeed if run again, see
+ * {@link TransactionInterceptor#setRetryClassifier(RetryClassifier)}.
+ */
+public interface RetryClassifier {
+
+    boolean isTransient(Exception ex);
+
+}
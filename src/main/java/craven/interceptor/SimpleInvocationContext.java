@@ -12,7 +12,8 @@ public class SimpleInvocationContext implements InvocationContext {
     private final Method method;
     private Object[] parameters;
 
-    private final Map<String, Object> contextData = new HashMap<String, Object>();
+    // created on first use
+    private Map<String, Object> contextData;
 
     public SimpleInvocationContext(Object target, Method method, Object[] parameters) {
         this.target = target;
@@ -46,6 +47,9 @@ public class SimpleInvocationContext implements InvocationContext {
 
     @Override
     public Map<String, Object> getContextData() {
+        if (contextData == null) {
+            contextData = new HashMap<String, Object>();
+        }
         return contextData;
     }
 
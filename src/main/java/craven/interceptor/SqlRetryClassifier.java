@@ -0,0 +1,51 @@
+package craven.interceptor;
+
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+/**
+ * Classifies serialization failures and deadlocks as transient, by the SQLState or vendor code of any
+ * {@link SQLException} in the cause chain or chained to one.
+ */
+public class SqlRetryClassifier implements RetryClassifier {
+
+    @Override
+    public boolean isTransient(Exception ex) {
+        Set<Throwable> seen = Collections.newSetFromMap(new IdentityHashMap<Throwable, Boolean>());
+        for (Throwable t = ex; t != null && seen.add(t); t = t.getCause()) {
+            if (t instanceof SQLException) {
+                for (SQLException next = ((SQLException) t).getNextException(); next != null && seen.add(next); next = next.getNextException()) {
+                    if (isTransient(next)) {
+                        return true;
+                    }
+                }
+                if (isTransient((SQLException) t)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    protected boolean isTransient(SQLException ex) {
+        // Class 40 is transaction rollback: 40001 serialization failure, 40P01 deadlock (PostgreSQL), ...
+        String state = ex.getSQLState();
+        if (state != null && state.startsWith("40")) {
+            return true;
+        }
+
+        // Drivers that do not report class 40
+        switch (ex.getErrorCode()) {
+            case 1205:  // MySQL lock wait timeout, SQL Server deadlock victim
+            case 1213:  // MySQL deadlock
+            case 60:    // Oracle deadlock
+            case 8177:  // Oracle can't serialize access
+                return true;
+            default:
+                return false;
+        }
+    }
+
+}
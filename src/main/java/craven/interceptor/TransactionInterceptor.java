@@ -5,35 +5,61 @@ import java.lang.annotation.Annotation;
 import java.lang.reflect.AnnotatedElement;
 import java.lang.reflect.Method;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 
 import javax.interceptor.InvocationContext;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import craven.jfr.JfrEvents;
+import craven.transaction.SavepointManager;
 import craven.transaction.Status;
 import craven.transaction.TransactionManager;
+import craven.transaction.TransactionManagerTemplate;
+import craven.transaction.TransactionMetrics;
 
-public class TransactionInterceptor {
+public class TransactionInterceptor implements Interceptor {
 
     private static final Logger logger = LoggerFactory.getLogger(TransactionInterceptor.class);
 
+    // Plans by method, per target class: the entries go away with the class when its class loader is unloaded.
+    private static final ClassValue<ConcurrentMap<Method, TransactionPlan>> plans = new ClassValue<ConcurrentMap<Method, TransactionPlan>>() {
+        @Override protected ConcurrentMap<Method, TransactionPlan> computeValue(Class<?> type) {
+            return new ConcurrentHashMap<Method, TransactionPlan>();
+        }
+    };
+
     private final TransactionManager tm;
 
+    private RetryClassifier retryClassifier = new SqlRetryClassifier();
+
     public TransactionInterceptor(TransactionManager tm) {
         this.tm = tm;
     }
 
+    /**
+     * Decides which failures of a transaction with more than one attempt are retried, see
+     * {@link Transactional#maxAttempts()}.
+     */
+    public void setRetryClassifier(RetryClassifier retryClassifier) {
+        this.retryClassifier = retryClassifier;
+    }
+
+    @Override
     public Object around(final InvocationContext ic) throws Exception {
-        Object target = ic.getTarget();
         Method method = ic.getMethod();
 
-        Transactional annotation = getAnnotation(Transactional.class, target, method);
-        if (annotation == null) {
-            throw new IllegalStateException("Could not find @Transactional annotation");
+        TransactionPlan plan = (ic instanceof ChainedInvocationContext) ? ((ChainedInvocationContext) ic).getPlan() : null;
+        if (plan == null) {
+            Object target = ic.getTarget();
+            plan = getPlan((target != null) ? target.getClass() : method.getDeclaringClass(), method);
         }
 
-        return _apply(annotation, new Callable<Object>() {
+        return plan.apply(this, method, new Callable<Object>() {
             @Override public Object call() throws Exception {
                 return ic.proceed();
             }
@@ -46,7 +72,7 @@ public class TransactionInterceptor {
 
     public <T> T apply(Transactional annotation, Callable<T> function) {
         try {
-            return _apply(annotation, function);
+            return TransactionPlan.of(annotation).apply(this, null, function);
         }
         catch (Exception e) {
             TransactionInterceptor.<RuntimeException>rethrow(e);
@@ -54,13 +80,73 @@ public class TransactionInterceptor {
         }
     }
 
-    private <T> T _apply(Transactional annotation, Callable<T> function) throws Exception {
+    // -- Propagation strategies, see TxPropagation
 
-        // TODO implement transaction propagation using an enum strategy
+    boolean hasTransaction() {
+        return tm.getStatus() != Status.NO_TRANSACTION;
+    }
+
+    /**
+     * Start a transaction without one to suspend, the only case where the whole unit of work can be run again.
+     */
+    <T> T inOutermostTransaction(TransactionPlan plan, Method method, Callable<T> function) throws Exception {
+        if (plan.maxAttempts <= 1) {
+            return inNewTransaction(plan, method, function);
+        }
 
+        long deadline = (plan.retryDeadlineNanos > 0) ? System.nanoTime() + plan.retryDeadlineNanos : 0;
+
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return inNewTransaction(plan, method, function);
+            }
+            catch (Exception ex) {
+                if (attempt >= plan.maxAttempts || !retryClassifier.isTransient(ex)) {
+                    throw ex;
+                }
+
+                long backoff = backoff(plan.retryBackoff, attempt);
+                if (deadline != 0 && System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(backoff) - deadline > 0) {
+                    logger.debug("Not retrying transaction, deadline reached");
+                    throw ex;
+                }
+
+                logger.debug("Retrying transaction in {} ms, attempt {} failed", backoff, attempt, ex);
+                recordRetry(plan.annotation);
+                try {
+                    Thread.sleep(backoff);
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw ex;
+                }
+            }
+        }
+    }
+
+    /**
+     * Exponential backoff with jitter, between half and all of the doubled initial backoff, so that the
+     * transactions that conflicted do not retry in lockstep.
+     */
+    private static long backoff(long initial, int attempt) {
+        long max = Math.max(1, initial) << Math.min(attempt - 1, 16);
+        return max / 2 + ThreadLocalRandom.current().nextLong(max - max / 2 + 1);
+    }
+
+    private void recordRetry(Transactional annotation) {
+        if (tm instanceof TransactionManagerTemplate) {
+            TransactionMetrics metrics = ((TransactionManagerTemplate) tm).getMetrics();
+            if (metrics != null) {
+                metrics.recordRetry(annotation);
+            }
+        }
+    }
+
+    <T> T inNewTransaction(TransactionPlan plan, Method method, Callable<T> function) throws Exception {
+        Object event = JfrEvents.beginInvocation();
         try {
             logger.debug("Beginning transaction");
-            tm.begin(annotation);
+            tm.begin(plan.annotation);
 
             T result = function.call();
 
@@ -69,10 +155,12 @@ public class TransactionInterceptor {
             if (tm.getStatus() == Status.MARKED_ROLLBACK) {
                 logger.debug("Rolling back transaction (marked)");
                 tm.rollback();
+                JfrEvents.endInvocation(event, method, function, "rolledback");
             }
             else {
                 logger.debug("Committing transaction");
                 tm.commit();
+                JfrEvents.endInvocation(event, method, function, "committed");
             }
 
             return result;
@@ -89,17 +177,119 @@ public class TransactionInterceptor {
                 }
             }
 
+            JfrEvents.endInvocation(event, method, function, "exception");
             throw ex;
         }
     }
 
-    private static <A extends Annotation> A getAnnotation(Class<A> annotationType, Object target, Method method) {
+    <T> T inCurrentTransaction(Method method, Callable<T> function) throws Exception {
+        Object event = JfrEvents.beginInvocation();
+        try {
+            T result = function.call();
+            JfrEvents.endInvocation(event, method, function, "joined");
+            return result;
+        }
+        catch (Exception ex) {
+            // The transaction belongs to the caller, which can no longer commit it.
+            if (tm.getStatus() == Status.ACTIVE) {
+                logger.debug("Marking transaction as rollback only (exception)", ex);
+                tm.setRollbackOnly();
+            }
+
+            JfrEvents.endInvocation(event, method, function, "exception");
+            throw ex;
+        }
+    }
+
+    <T> T inNestedTransaction(Method method, Callable<T> function) throws Exception {
+        if (!(tm instanceof SavepointManager)) {
+            throw new IllegalStateException("Transaction manager does not support savepoints, propagation is NESTED");
+        }
+        SavepointManager savepoints = (SavepointManager) tm;
+
+        Object event = JfrEvents.beginInvocation();
+
+        logger.debug("Creating savepoint");
+        Object savepoint = savepoints.createSavepoint();
+
+        T result;
+        try {
+            result = function.call();
+        }
+        catch (Exception ex) {
+            // Only the work of the nested call is undone, the transaction goes on.
+            try {
+                logger.debug("Rolling back to savepoint (exception)", ex);
+                savepoints.rollbackToSavepoint(savepoint);
+            }
+            catch (Exception rbEx) {
+                logger.debug("Could not roll back to savepoint", rbEx);
+                if (tm.getStatus() == Status.ACTIVE) {
+                    tm.setRollbackOnly();
+                }
+            }
+
+            JfrEvents.endInvocation(event, method, function, "exception");
+            throw ex;
+        }
+
+        logger.debug("Releasing savepoint");
+        savepoints.releaseSavepoint(savepoint);
+        JfrEvents.endInvocation(event, method, function, "released");
+        return result;
+    }
+
+    <T> T withoutTransaction(Method method, Callable<T> function) throws Exception {
+        Object event = JfrEvents.beginInvocation();
+        try {
+            T result = function.call();
+            JfrEvents.endInvocation(event, method, function, "none");
+            return result;
+        }
+        catch (Exception ex) {
+            JfrEvents.endInvocation(event, method, function, "exception");
+            throw ex;
+        }
+    }
+
+    <T> T suspended(TransactionPlan plan, Method method, Callable<T> function, boolean newTransaction) throws Exception {
+        logger.debug("Suspending transaction");
+        tm.suspend();
+        try {
+            return newTransaction
+                    ? inNewTransaction(plan, method, function)
+                    : withoutTransaction(method, function);
+        }
+        finally {
+            logger.debug("Resuming transaction");
+            tm.resume();
+        }
+    }
+
+    // --
+
+    private static TransactionPlan getPlan(Class<?> targetClass, Method method) {
+        ConcurrentMap<Method, TransactionPlan> classPlans = plans.get(targetClass);
+        TransactionPlan plan = classPlans.get(method);
+        if (plan == null) {
+            Transactional annotation = getAnnotation(Transactional.class, targetClass, method);
+            if (annotation == null) {
+                throw new IllegalStateException("Could not find @Transactional annotation");
+            }
+            // Racing threads resolve equal plans, keep either.
+            plan = TransactionPlan.of(annotation);
+            classPlans.putIfAbsent(method, plan);
+        }
+        return plan;
+    }
+
+    private static <A extends Annotation> A getAnnotation(Class<A> annotationType, Class<?> targetClass, Method method) {
         A annotation = getAnnotation(annotationType, method);
         if (annotation != null) {
             return annotation;
         }
 
-        annotation = getAnnotation(annotationType, target.getClass());
+        annotation = getAnnotation(annotationType, targetClass);
         if (annotation != null) {
             return annotation;
         }
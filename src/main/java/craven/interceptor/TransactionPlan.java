@@ -0,0 +1,36 @@
+package craven.interceptor;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The effective attributes of a transactional method, resolved once so that an invocation does not go through
+ * reflection or the annotation proxy, see {@link TransactionInterceptor#around(javax.interceptor.InvocationContext)}.
+ */
+final class TransactionPlan {
+
+    final Transactional annotation;
+    final TxPropagation propagation;
+
+    final int maxAttempts;
+    final long retryBackoff;
+    final long retryDeadlineNanos;  // zero for no limit
+
+    private TransactionPlan(Transactional annotation) {
+        this.annotation = annotation;
+        this.propagation = annotation.propagation();
+        this.maxAttempts = annotation.maxAttempts();
+        this.retryBackoff = annotation.retryBackoff();
+        this.retryDeadlineNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, annotation.retryDeadline()));
+    }
+
+    static TransactionPlan of(Transactional annotation) {
+        return new TransactionPlan(annotation);
+    }
+
+    <T> T apply(TransactionInterceptor ti, Method method, Callable<T> function) throws Exception {
+        return propagation.apply(ti, this, method, function);
+    }
+
+}
@@ -27,4 +27,19 @@ public @interface Transactional {
 
     @Nonbinding boolean readOnly() default false;
 
+    /**
+     * Attempts of an outermost transaction failing with a transient exception, see {@link RetryClassifier}.
+     */
+    @Nonbinding int maxAttempts() default 1;
+
+    /**
+     * Initial backoff in milliseconds between attempts, doubled with each retry, with jitter.
+     */
+    @Nonbinding long retryBackoff() default 20;
+
+    /**
+     * Time in milliseconds after which no attempt starts, zero for no limit.
+     */
+    @Nonbinding long retryDeadline() default 0;
+
 }
@@ -10,6 +10,9 @@ public class TxConfig extends AnnotationLiteral<Transactional> implements Transa
     private final TxIsolation isolation;
     private final int timeout;
     private final boolean readOnly;
+    private final int maxAttempts;
+    private final long retryBackoff;
+    private final long retryDeadline;
 
     @Override
     public TxPropagation propagation() {
@@ -31,6 +34,21 @@ public class TxConfig extends AnnotationLiteral<Transactional> implements Transa
         return readOnly;
     }
 
+    @Override
+    public int maxAttempts() {
+        return maxAttempts;
+    }
+
+    @Override
+    public long retryBackoff() {
+        return retryBackoff;
+    }
+
+    @Override
+    public long retryDeadline() {
+        return retryDeadline;
+    }
+
     public static Builder propagation(TxPropagation propagation) {
         return new Builder().propagation(propagation);
     }
@@ -47,6 +65,10 @@ public class TxConfig extends AnnotationLiteral<Transactional> implements Transa
         return new Builder().readOnly(readOnly);
     }
 
+    public static Builder maxAttempts(int maxAttempts) {
+        return new Builder().maxAttempts(maxAttempts);
+    }
+
     private TxConfig() {
         Transactional defaultTx = DefaultTransactional.class.getAnnotation(Transactional.class);
 
@@ -54,6 +76,9 @@ public class TxConfig extends AnnotationLiteral<Transactional> implements Transa
         this.isolation = defaultTx.isolation();
         this.timeout = defaultTx.timeout();
         this.readOnly = defaultTx.readOnly();
+        this.maxAttempts = defaultTx.maxAttempts();
+        this.retryBackoff = defaultTx.retryBackoff();
+        this.retryDeadline = defaultTx.retryDeadline();
     }
 
     private TxConfig(Builder builder) {
@@ -61,6 +86,9 @@ public class TxConfig extends AnnotationLiteral<Transactional> implements Transa
         this.isolation = builder.isolation;
         this.timeout = builder.timeout;
         this.readOnly = builder.readOnly;
+        this.maxAttempts = builder.maxAttempts;
+        this.retryBackoff = builder.retryBackoff;
+        this.retryDeadline = builder.retryDeadline;
     }
 
     /**
@@ -78,6 +106,9 @@ public class TxConfig extends AnnotationLiteral<Transactional> implements Transa
         private TxIsolation isolation = DEFAULT.isolation();
         private int timeout = DEFAULT.timeout();
         private boolean readOnly = DEFAULT.readOnly();
+        private int maxAttempts = DEFAULT.maxAttempts();
+        private long retryBackoff = DEFAULT.retryBackoff();
+        private long retryDeadline = DEFAULT.retryDeadline();
 
         public Builder() {
         }
@@ -102,6 +133,21 @@ public class TxConfig extends AnnotationLiteral<Transactional> implements Transa
             return this;
         }
 
+        public Builder maxAttempts(int maxAttempts) {
+            this.maxAttempts = maxAttempts;
+            return this;
+        }
+
+        public Builder retryBackoff(long retryBackoff) {
+            this.retryBackoff = retryBackoff;
+            return this;
+        }
+
+        public Builder retryDeadline(long retryDeadline) {
+            this.retryDeadline = retryDeadline;
+            return this;
+        }
+
         public Transactional build() {
             return new TxConfig(this);
         }
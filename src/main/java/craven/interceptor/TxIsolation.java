@@ -29,12 +29,22 @@ public enum TxIsolation {
     }
 
     public static TxIsolation fromLevel(int level) {
-        for (TxIsolation e : TxIsolation.values()) {
-            if (e.level == level) {
-                return e;
-            }
+        switch (level) {
+            case -1:
+                return DEFAULT;
+            case Connection.TRANSACTION_NONE:
+                return NONE;
+            case Connection.TRANSACTION_READ_UNCOMMITTED:
+                return READ_UNCOMMITTED;
+            case Connection.TRANSACTION_READ_COMMITTED:
+                return READ_COMMITTED;
+            case Connection.TRANSACTION_REPEATABLE_READ:
+                return REPEATABLE_READ;
+            case Connection.TRANSACTION_SERIALIZABLE:
+                return SERIALIZABLE;
+            default:
+                throw new IllegalArgumentException();
         }
-        throw new IllegalArgumentException();
     }
 
 }
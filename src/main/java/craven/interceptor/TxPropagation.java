@@ -1,17 +1,80 @@
 package craven.interceptor;
 
+import java.lang.reflect.Method;
+import java.util.concurrent.Callable;
+
 public enum TxPropagation {
 
-    REQUIRES_NEW,   // suspend (and start new)
+    REQUIRES_NEW {  // suspend (and start new)
+        @Override
+        <T> T apply(TransactionInterceptor ti, TransactionPlan plan, Method method, Callable<T> function) throws Exception {
+            return ti.hasTransaction()
+                    ? ti.suspended(plan, method, function, true)
+                    : ti.inOutermostTransaction(plan, method, function);
+        }
+    },
+
+    MANDATORY {     // throw exception (if not exists)
+        @Override
+        <T> T apply(TransactionInterceptor ti, TransactionPlan plan, Method method, Callable<T> function) throws Exception {
+            if (!ti.hasTransaction()) {
+                throw new IllegalStateException("Transaction is not active, propagation is MANDATORY");
+            }
+            return ti.inCurrentTransaction(method, function);
+        }
+    },
+
+    REQUIRED {      // use existing (otherwise start new)
+        @Override
+        <T> T apply(TransactionInterceptor ti, TransactionPlan plan, Method method, Callable<T> function) throws Exception {
+            return ti.hasTransaction()
+                    ? ti.inCurrentTransaction(method, function)
+                    : ti.inOutermostTransaction(plan, method, function);
+        }
+    },
+
+    SUPPORTS {      // use existing (otherwise do not start new)
+        @Override
+        <T> T apply(TransactionInterceptor ti, TransactionPlan plan, Method method, Callable<T> function) throws Exception {
+            return ti.hasTransaction()
+                    ? ti.inCurrentTransaction(method, function)
+                    : ti.withoutTransaction(method, function);
+        }
+    },
 
-    MANDATORY,      // throw exception (if not exists)
+    NEVER {         // throw exception (if exists)
+        @Override
+        <T> T apply(TransactionInterceptor ti, TransactionPlan plan, Method method, Callable<T> function) throws Exception {
+            if (ti.hasTransaction()) {
+                throw new IllegalStateException("Transaction is already active, propagation is NEVER");
+            }
+            return ti.withoutTransaction(method, function);
+        }
+    },
 
-    REQUIRED,       // use existing (otherwise start new)
+    NOT_SUPPORTED { // suspend (and do not start new)
+        @Override
+        <T> T apply(TransactionInterceptor ti, TransactionPlan plan, Method method, Callable<T> function) throws Exception {
+            return ti.hasTransaction()
+                    ? ti.suspended(plan, method, function, false)
+                    : ti.withoutTransaction(method, function);
+        }
+    },
 
-    SUPPORTS,       // use existing (otherwise do not start new)
+    NESTED {        // savepoint in existing (otherwise start new)
+        @Override
+        <T> T apply(TransactionInterceptor ti, TransactionPlan plan, Method method, Callable<T> function) throws Exception {
+            return ti.hasTransaction()
+                    ? ti.inNestedTransaction(method, function)
+                    : ti.inOutermostTransaction(plan, method, function);
+        }
+    };
 
-    NEVER,          // throw exception (if exists)
+    // --
 
-    NOT_SUPPORTED   // suspend (and do not start new)
+    /**
+     * Run the function as the propagation requires, called by the {@link TransactionInterceptor}.
+     */
+    abstract <T> T apply(TransactionInterceptor ti, TransactionPlan plan, Method method, Callable<T> function) throws Exception;
 
 }
@@ -0,0 +1,61 @@
+package craven.jfr;
+
+import java.lang.reflect.Method;
+
+import craven.interceptor.Transactional;
+import craven.transaction.Status;
+
+/**
+ * Java Flight Recorder events for transactions, transactional invocations and statements.
+ *
+ * This is the Java 7 version, which records nothing. The multi-release jar built with the {@code jfr} profile holds
+ * a Java 11 version of this class in {@code META-INF/versions/11} that emits the events of this package, see
+ * {@code src/main/java11}. Each {@code begin} method returns an event, or null if the event type is not enabled in
+ * a running recording; the matching {@code end} method ignores null.
+ */
+public final class JfrEvents {
+
+    private JfrEvents() {
+    }
+
+    /**
+     * Whether the events are emitted, i.e. the Java 11 version of this class is loaded.
+     */
+    public static boolean isAvailable() {
+        return false;
+    }
+
+    public static Object beginTransaction() {
+        return null;
+    }
+
+    /**
+     * @param action begin, commit or rollback
+     * @param status the status the action left the transaction in
+     */
+    public static void endTransaction(Object event, String action, Status status, Transactional annotation) {
+    }
+
+    public static Object beginInvocation() {
+        return null;
+    }
+
+    /**
+     * @param method the intercepted method, null if the function was applied directly
+     * @param outcome committed or rolledback for a transaction of its own, joined for the transaction of the caller,
+     *        released for a nested transaction, none without a transaction, or exception
+     */
+    public static void endInvocation(Object event, Method method, Object function, String outcome) {
+    }
+
+    public static Object beginStatement() {
+        return null;
+    }
+
+    /**
+     * @param rows the update count or the sum of the batch counts, -1 for queries
+     */
+    public static void endStatement(Object event, String fingerprint, long rows, boolean failed) {
+    }
+
+}
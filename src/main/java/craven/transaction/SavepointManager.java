@@ -0,0 +1,26 @@
+package craven.transaction;
+
+/**
+ * Savepoints within the transaction associated with the current thread, for nested transactions.
+ *
+ * Savepoints are opaque to the caller and only valid in the transaction that created them.
+ */
+public interface SavepointManager {
+
+    /**
+     * Create a savepoint in the transaction associated with the current thread.
+     */
+    public Object createSavepoint() throws IllegalStateException, SystemException;
+
+    /**
+     * Undo the work of the transaction associated with the current thread done since the savepoint, and release it.
+     * A transaction active at the savepoint and marked as rollback only since is active again.
+     */
+    public void rollbackToSavepoint(Object savepoint) throws IllegalStateException, SystemException;
+
+    /**
+     * Release the savepoint, keeping the work done since.
+     */
+    public void releaseSavepoint(Object savepoint) throws IllegalStateException, SystemException;
+
+}
@@ -0,0 +1,50 @@
+package craven.transaction;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A counter spread over cells picked by thread, so that threads updating it concurrently rarely touch the same
+ * cache line. Reading sums the cells and is not atomic with respect to updates.
+ */
+final class StripedCounter {
+
+    // longs per cell, keeps cells on separate 64 byte cache lines
+    private static final int PADDING = 8;
+
+    private static final int STRIPES = stripes();
+
+    private final AtomicLongArray cells = new AtomicLongArray(STRIPES * PADDING);
+
+    StripedCounter() {
+    }
+
+    void add(long value) {
+        cells.addAndGet(index(), value);
+    }
+
+    void increment() {
+        cells.incrementAndGet(index());
+    }
+
+    long sum() {
+        long sum = 0;
+        for (int i = 0; i < STRIPES; i++) {
+            sum += cells.get(i * PADDING);
+        }
+        return sum;
+    }
+
+    // --
+
+    private static int index() {
+        long id = Thread.currentThread().getId();
+        int h = (int) (id ^ (id >>> 32)) * 0x9e3779b9;
+        return ((h ^ (h >>> 16)) & (STRIPES - 1)) * PADDING;
+    }
+
+    private static int stripes() {
+        int processors = Runtime.getRuntime().availableProcessors();
+        return Integer.highestOneBit(Math.max(1, processors * 2 - 1)) << 1;
+    }
+
+}
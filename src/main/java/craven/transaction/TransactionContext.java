@@ -2,4 +2,9 @@ package craven.transaction;
 
 public interface TransactionContext {
 
+    /**
+     * Forget the ended transaction, the context is reused by the next transaction of the thread.
+     */
+    void reset();
+
 }
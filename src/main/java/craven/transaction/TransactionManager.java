@@ -28,6 +28,20 @@ public interface TransactionManager {
      */
     public void rollback() throws IllegalStateException, SystemException;
 
+    /**
+     * Suspend the transaction associated with the current thread onto a per-thread stack.
+     *
+     * When this method completes, the thread is no longer associated with a transaction.
+     */
+    public void suspend() throws IllegalStateException, SystemException;
+
+    /**
+     * Resume the transaction suspended last by the current thread.
+     *
+     * The thread must not be associated with a transaction.
+     */
+    public void resume() throws IllegalStateException, SystemException;
+
     /**
      * Modify the transaction associated with the current thread such that the only possible outcome of the transaction is to roll back the transaction.
      */
@@ -1,11 +1,17 @@
 package craven.transaction;
 
 
+import java.util.ArrayDeque;
+import java.util.Deque;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import craven.interceptor.Transactional;
 import craven.interceptor.TxConfig;
+import craven.jfr.JfrEvents;
+import craven.transaction.TransactionMetrics.Outcome;
+import craven.transaction.TransactionMetrics.Phase;
 
 /**
  * Transaction Manager implementation with the Template pattern, could also use the Strategy pattern.
@@ -14,21 +20,26 @@ public abstract class TransactionManagerTemplate<ContextType extends Transaction
 
     private static final Logger logger = LoggerFactory.getLogger(TransactionManagerTemplate.class);
 
-    private final ThreadLocal<Status> status = new ThreadLocal<Status>() {
-        @Override protected Status initialValue() {
-            return Status.NO_TRANSACTION;
-        }
-    };
+    // the frame of the current thread, see TransactionScope
+    private final TransactionScope.Slot<Frame> frames = TransactionScope.newSlot();
 
-    private final ThreadLocal<ContextType> context = new ThreadLocal<ContextType>() {
-        @Override protected ContextType initialValue() {
-            return createTransactionContext();
-        }
-    };
+    // null unless metrics are recorded
+    private volatile TransactionMetrics metrics;
 
     public TransactionManagerTemplate() {
     }
 
+    /**
+     * Record the outcomes and phase times of the transactions, null disables recording.
+     */
+    public void setMetrics(TransactionMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public TransactionMetrics getMetrics() {
+        return metrics;
+    }
+
     @Override
     public void begin() throws IllegalStateException, SystemException {
         begin(TxConfig.DEFAULT);
@@ -36,27 +47,33 @@ public abstract class TransactionManagerTemplate<ContextType extends Transaction
 
     @Override
     public void begin(Transactional annotation) throws IllegalStateException, SystemException {
+        Frame frame = frame();
 
-        if (status.get() != Status.NO_TRANSACTION) {
+        if (frame.status != Status.NO_TRANSACTION) {
             throw new IllegalStateException("Transaction is already active");
         }
+        if (frame.detached) {
+            throw new IllegalStateException("Thread is detached from its transaction");
+        }
 
         String thread = Thread.currentThread().getName();
+        Object event = JfrEvents.beginTransaction();
 
         try {
             logger.debug("[{}] Beginning transaction", thread);
+            frame.annotation = annotation;
             doBeginTransaction(annotation);
-            status.set(Status.ACTIVE);
+            frame.status = Status.ACTIVE;
+            frame.workStarted = now();
+            transactionEvent(frame, event, "begin");
 
             return;
         }
         catch (SystemException beginEx) {
             logger.debug("[{}] Could not begin transaction", thread, beginEx);
-            status.set(Status.UNKNOWN);
+            frame.status = Status.UNKNOWN;
 
-            doEndTransaction();
-            context.remove();
-            status.remove();
+            endTransaction(frame, Outcome.UNKNOWN, event, "begin");
 
             throw beginEx;
         }
@@ -64,32 +81,38 @@ public abstract class TransactionManagerTemplate<ContextType extends Transaction
 
     @Override
     public void commit() throws IllegalStateException, RollbackException, SystemException {
-
-        if (status.get() != Status.ACTIVE && status.get() != Status.MARKED_ROLLBACK) {
-            throw new IllegalStateException("Transaction is not active");
-        }
+        Frame frame = ownFrame();
 
         String thread = Thread.currentThread().getName();
+        endWork(frame);
+        Object event = JfrEvents.beginTransaction();
+
+        boolean timedOut = isTimedOut();
+        if (timedOut) {
+            logger.debug("[{}] Transaction timed out", thread);
+            frame.status = Status.MARKED_ROLLBACK;
+        }
 
-        if (status.get() == Status.MARKED_ROLLBACK) {
+        if (frame.status == Status.MARKED_ROLLBACK) {
             try {
                 logger.debug("[{}] Rolling back transaction (marked)", thread);
-                doRollbackTransaction();
-                status.set(Status.ROLLEDBACK);
+                rollbackTransaction();
+                frame.status = Status.ROLLEDBACK;
+
+                if (timedOut) {
+                    endTransaction(frame, Outcome.TIMED_OUT, event, "commit");
+                    throw new TransactionTimeoutException("Transaction timed out");
+                }
 
-                doEndTransaction();
-                context.remove();
-                status.remove();
+                endTransaction(frame, Outcome.MARKED_ROLLBACK, event, "commit");
 
                 throw new RollbackException("Transaction was marked as rollback only");
             }
             catch (SystemException rollbackEx) {
                 logger.debug("[{}] Could not rollback transaction", thread, rollbackEx);
-                status.set(Status.UNKNOWN);
+                frame.status = Status.UNKNOWN;
 
-                doEndTransaction();
-                context.remove();
-                status.remove();
+                endTransaction(frame, Outcome.UNKNOWN, event, "commit");
 
                 throw rollbackEx;
             }
@@ -97,37 +120,31 @@ public abstract class TransactionManagerTemplate<ContextType extends Transaction
         else {
             try {
                 logger.debug("[{}] Committing transaction", thread);
-                doCommitTransaction();
-                status.set(Status.COMMITTED);
+                commitTransaction();
+                frame.status = Status.COMMITTED;
 
-                doEndTransaction();
-                context.remove();
-                status.remove();
+                endTransaction(frame, Outcome.COMMITTED, event, "commit");
 
                 return;
             }
             catch (SystemException commitEx) {
                 logger.debug("[{}] Could not commit transaction", thread, commitEx);
-                status.set(Status.UNKNOWN);
+                frame.status = Status.UNKNOWN;
 
                 try {
                     logger.debug("[{}] Rolling back transaction (exception)", thread);
-                    doRollbackTransaction();
-                    status.set(Status.ROLLEDBACK);
+                    rollbackTransaction();
+                    frame.status = Status.ROLLEDBACK;
 
-                    doEndTransaction();
-                    context.remove();
-                    status.remove();
+                    endTransaction(frame, Outcome.FAILED_COMMIT, event, "commit");
 
                     throw new RollbackException("Transaction failed to commit", commitEx);
                 }
                 catch (SystemException rollbackEx) {
                     logger.debug("[{}] Could not rollback transaction", thread, rollbackEx);
-                    status.set(Status.UNKNOWN);
+                    frame.status = Status.UNKNOWN;
 
-                    doEndTransaction();
-                    context.remove();
-                    status.remove();
+                    endTransaction(frame, Outcome.UNKNOWN, event, "commit");
 
                     throw rollbackEx;
                 }
@@ -137,61 +154,368 @@ public abstract class TransactionManagerTemplate<ContextType extends Transaction
 
     @Override
     public void rollback() throws IllegalStateException, SystemException {
-
-        if (status.get() != Status.ACTIVE && status.get() != Status.MARKED_ROLLBACK) {
-            throw new IllegalStateException("Transaction is not active");
-        }
+        Frame frame = ownFrame();
 
         String thread = Thread.currentThread().getName();
+        endWork(frame);
+        Object event = JfrEvents.beginTransaction();
 
         try {
             logger.debug("[{}] Rolling back transaction", thread);
-            doRollbackTransaction();
-            status.set(Status.ROLLEDBACK);
+            rollbackTransaction();
+            frame.status = Status.ROLLEDBACK;
 
-            doEndTransaction();
-            context.remove();
-            status.remove();
+            endTransaction(frame, Outcome.ROLLED_BACK, event, "rollback");
 
             return;
         }
         catch (SystemException rollbackEx) {
             logger.debug("[{}] Could not rollback transaction", thread, rollbackEx);
-            status.set(Status.UNKNOWN);
+            frame.status = Status.UNKNOWN;
 
-            doEndTransaction();
-            context.remove();
-            status.remove();
+            endTransaction(frame, Outcome.UNKNOWN, event, "rollback");
 
             throw rollbackEx;
         }
     }
 
     @Override
-    public void setRollbackOnly() throws IllegalStateException {
+    public void suspend() throws IllegalStateException, SystemException {
+        Frame frame = ownFrame();
 
-        if (status.get() != Status.ACTIVE && status.get() != Status.MARKED_ROLLBACK) {
-            throw new IllegalStateException("Transaction is not active");
+        String thread = Thread.currentThread().getName();
+
+        logger.debug("[{}] Suspending transaction", thread);
+        doSuspendTransaction();
+
+        if (frame.suspended == null) {
+            frame.suspended = new ArrayDeque<Suspended>();
+        }
+        frame.suspended.push(new Suspended(frame.status, frame.context, frame.annotation, frame.workStarted, frame.shared));
+
+        // the context goes with the suspended transaction, the next one gets a new context
+        frame.context = null;
+        frame.annotation = null;
+        frame.shared = false;
+        frame.status = Status.NO_TRANSACTION;
+    }
+
+    @Override
+    public void resume() throws IllegalStateException, SystemException {
+        Frame frame = frame();
+
+        if (frame.status != Status.NO_TRANSACTION) {
+            throw new IllegalStateException("Transaction is already active");
+        }
+
+        Suspended transaction = (frame.suspended != null) ? frame.suspended.poll() : null;
+        if (transaction == null) {
+            throw new IllegalStateException("No suspended transaction");
         }
 
         String thread = Thread.currentThread().getName();
 
+        logger.debug("[{}] Resuming transaction", thread);
+        frame.status = transaction.status;
+        frame.context = transaction.context;
+        frame.annotation = transaction.annotation;
+        frame.workStarted = transaction.workStarted;
+        frame.shared = transaction.shared;
+
+        doResumeTransaction();
+    }
+
+    /**
+     * In a thread attached to the transaction of another, only marks the transaction as seen by the task, the failure
+     * of the task reaches the other thread through the task itself.
+     */
+    @Override
+    public void setRollbackOnly() throws IllegalStateException {
+        Frame frame = activeFrame();
+
+        String thread = Thread.currentThread().getName();
+
         logger.debug("[{}] Marking transaction as rollback only", thread);
-        status.set(Status.MARKED_ROLLBACK);
+        frame.status = Status.MARKED_ROLLBACK;
     }
 
+    /**
+     * Timeout of the transactions begun next by the current thread whose {@link Transactional#timeout()} is not set,
+     * zero for no timeout.
+     */
     @Override
     public void setTransactionTimeout(int seconds) throws SystemException {
-        throw new UnsupportedOperationException();
+        if (seconds < 0) {
+            throw new SystemException("Transaction timeout must not be negative");
+        }
+        frame().transactionTimeout = seconds;
     }
 
     @Override
     public Status getStatus() {
-        return status.get();
+        // no frame for a thread that never began a transaction
+        Frame frame = frames.get();
+        return (frame != null) ? frame.status : Status.NO_TRANSACTION;
     }
 
     protected ContextType getCurrentContext() {
-        return context.get();
+        Frame frame = frame();
+        if (frame.context == null) {
+            frame.context = createTransactionContext();
+        }
+        return frame.context;
+    }
+
+    /**
+     * Record the time spent in a phase of the current transaction, for the phases run by the subclass.
+     */
+    protected void recordPhase(Phase phase, long elapsed) {
+        TransactionMetrics currentMetrics = metrics;
+        if (currentMetrics != null) {
+            Frame frame = frames.get();
+            Transactional annotation = (frame != null) ? frame.annotation : null;
+            if (annotation != null) {
+                currentMetrics.record(annotation, phase, elapsed);
+            }
+        }
+    }
+
+    /**
+     * The timeout in seconds of a transaction begun with the annotation, zero for none.
+     */
+    protected int getTransactionTimeout(Transactional annotation) {
+        return (annotation.timeout() > 0) ? annotation.timeout() : frame().transactionTimeout;
+    }
+
+    /**
+     * Whether the current transaction ran past its timeout, it then rolls back on commit.
+     */
+    protected boolean isTimedOut() {
+        return false;
+    }
+
+    // -- Tasks of other threads
+
+    /**
+     * The active transaction of the current thread, for the tasks it hands to other threads, see
+     * {@link #attachTransaction(Object, boolean)}; null if none. Once captured, the context is no longer reused by the
+     * next transaction of the thread, as the tasks may outlive the transaction.
+     */
+    protected final Object captureTransaction() {
+        Frame frame = frames.get();
+        if (frame == null || (frame.status != Status.ACTIVE && frame.status != Status.MARKED_ROLLBACK)) {
+            return null;
+        }
+
+        frame.shared = true;
+        return new Captured(frame.status, getCurrentContext(), frame.annotation);
+    }
+
+    /**
+     * Run the current thread on behalf of a captured transaction until {@link #detachTransaction(Object)}, returns
+     * what to give it back. A shared transaction is active on the thread, which may use its context but neither end
+     * nor suspend it; otherwise the thread is only marked as detached from the transaction, see {@link #isDetached()}.
+     * The transaction of the thread itself, if any, is set aside meanwhile.
+     */
+    @SuppressWarnings("unchecked")
+    protected final Object attachTransaction(Object transaction, boolean shared) {
+        Captured captured = (Captured) transaction;
+        Frame previous = frames.get();
+
+        Frame frame = new Frame();
+        if (shared) {
+            frame.status = captured.status;
+            frame.context = captured.context;
+            frame.annotation = captured.annotation;
+            frame.attached = true;
+        }
+        else {
+            frame.detached = true;
+        }
+        frames.set(frame);
+
+        return previous;
+    }
+
+    @SuppressWarnings("unchecked")
+    protected final void detachTransaction(Object previous) {
+        frames.set((Frame) previous);
+    }
+
+    /**
+     * Whether the current thread runs a task in the transaction of another thread.
+     */
+    protected final boolean isAttached() {
+        Frame frame = frames.get();
+        return frame != null && frame.attached;
+    }
+
+    /**
+     * Whether the current thread runs a task detached from the transaction of another thread, it may then neither
+     * begin a transaction nor use the one it was detached from.
+     */
+    protected final boolean isDetached() {
+        Frame frame = frames.get();
+        return frame != null && frame.detached;
+    }
+
+    /**
+     * Undo {@link #setRollbackOnly()} in the current transaction, for the work undone by a rollback to a savepoint taken
+     * while the transaction was active.
+     */
+    protected final void clearRollbackOnly() {
+        Frame frame = activeFrame();
+        if (frame.status == Status.MARKED_ROLLBACK) {
+            logger.debug("[{}] Clearing rollback only mark", Thread.currentThread().getName());
+            frame.status = Status.ACTIVE;
+        }
+    }
+
+    // -- Timed phases
+
+    private void commitTransaction() throws SystemException {
+        long started = now();
+        try {
+            doCommitTransaction();
+        }
+        finally {
+            recordSince(Phase.COMMIT, started);
+        }
+    }
+
+    private void rollbackTransaction() throws SystemException {
+        long started = now();
+        try {
+            doRollbackTransaction();
+        }
+        finally {
+            recordSince(Phase.ROLLBACK, started);
+        }
+    }
+
+    private void endTransaction(Frame frame, Outcome outcome, Object event, String action) {
+        long started = now();
+        doEndTransaction();
+        recordSince(Phase.END, started);
+
+        TransactionMetrics currentMetrics = metrics;
+        if (currentMetrics != null && frame.annotation != null) {
+            currentMetrics.record(frame.annotation, outcome);
+        }
+        transactionEvent(frame, event, action);
+        frame.annotation = null;
+
+        // reused by the next transaction of the thread, unless tasks of other threads may still hold it
+        if (frame.context != null) {
+            if (frame.shared) {
+                frame.context = null;
+            }
+            else {
+                frame.context.reset();
+            }
+        }
+        frame.shared = false;
+        frame.status = Status.NO_TRANSACTION;
+    }
+
+    private void transactionEvent(Frame frame, Object event, String action) {
+        if (event != null) {
+            JfrEvents.endTransaction(event, action, frame.status, frame.annotation);
+        }
+    }
+
+    private void endWork(Frame frame) {
+        if (metrics != null) {
+            recordSince(Phase.WORK, frame.workStarted);
+        }
+    }
+
+    private Frame frame() {
+        Frame frame = frames.get();
+        if (frame == null) {
+            frame = new Frame();
+            frames.set(frame);
+        }
+        return frame;
+    }
+
+    private Frame activeFrame() {
+        Frame frame = frames.get();
+        if (frame == null || (frame.status != Status.ACTIVE && frame.status != Status.MARKED_ROLLBACK)) {
+            throw new IllegalStateException("Transaction is not active");
+        }
+        return frame;
+    }
+
+    private Frame ownFrame() {
+        Frame frame = activeFrame();
+        if (frame.attached) {
+            throw new IllegalStateException("Transaction belongs to another thread");
+        }
+        return frame;
+    }
+
+    private long now() {
+        return (metrics != null) ? System.nanoTime() : 0;
+    }
+
+    private void recordSince(Phase phase, long started) {
+        if (started != 0) {
+            recordPhase(phase, System.nanoTime() - started);
+        }
+    }
+
+    /**
+     * A transaction taken off the thread by {@link #suspend()}.
+     */
+    private final class Suspended {
+
+        final Status status;
+        final ContextType context;
+        final Transactional annotation;
+        final long workStarted;
+        final boolean shared;
+
+        Suspended(Status status, ContextType context, Transactional annotation, long workStarted, boolean shared) {
+            this.status = status;
+            this.context = context;
+            this.annotation = annotation;
+            this.workStarted = workStarted;
+            this.shared = shared;
+        }
+
+    }
+
+    /**
+     * A transaction taken by {@link #captureTransaction()} to the tasks of other threads.
+     */
+    private final class Captured {
+
+        final Status status;
+        final ContextType context;
+        final Transactional annotation;
+
+        Captured(Status status, ContextType context, Transactional annotation) {
+            this.status = status;
+            this.context = context;
+            this.annotation = annotation;
+        }
+
+    }
+
+    /**
+     * The current transaction of a thread, its suspended transactions and the timeout set for the thread.
+     */
+    private final class Frame {
+        Status status = Status.NO_TRANSACTION;
+        ContextType context;            // created on first use, then reused
+        Transactional annotation;
+        long workStarted;
+        int transactionTimeout;
+        Deque<Suspended> suspended;     // created on first use
+        boolean shared;                 // the context was captured for tasks of other threads
+        boolean attached;               // runs a task in the transaction of another thread
+        boolean detached;               // runs a task detached from the transaction of another thread
     }
 
     // -- Protected methods
@@ -206,4 +530,16 @@ public abstract class TransactionManagerTemplate<ContextType extends Transaction
 
     protected abstract void doRollbackTransaction() throws SystemException;
 
+    /**
+     * Called before the current transaction is taken off the thread, its context is still current.
+     */
+    protected void doSuspendTransaction() throws SystemException {
+    }
+
+    /**
+     * Called after the transaction is back on the thread, its context is current again.
+     */
+    protected void doResumeTransaction() throws SystemException {
+    }
+
 }
@@ -0,0 +1,246 @@
+package craven.transaction;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import craven.interceptor.Transactional;
+import craven.interceptor.TxIsolation;
+import craven.interceptor.TxPropagation;
+
+/**
+ * Counts the outcomes of the transactions of a {@link TransactionManagerTemplate} and the time spent in each phase,
+ * tagged by the {@link Transactional} attributes (read-only, isolation and propagation), see
+ * {@link TransactionManagerTemplate#setMetrics(TransactionMetrics)}.
+ *
+ * Counters are striped so that concurrent transactions do not contend on them.
+ */
+public class TransactionMetrics implements TransactionMetricsMBean {
+
+    public static enum Phase {
+
+        ACQUIRE,    // getting a connection
+
+        SETUP,      // setting the session characteristics
+
+        WORK,       // between begin and commit or rollback
+
+        COMMIT,
+
+        ROLLBACK,
+
+        END         // restoring the session and releasing the connection
+
+    }
+
+    public static enum Outcome {
+
+        COMMITTED,
+
+        ROLLED_BACK,
+
+        MARKED_ROLLBACK,    // rolled back on commit, marked as rollback only
+
+        FAILED_COMMIT,      // rolled back after the commit failed
+
+        TIMED_OUT,          // rolled back on commit, ran past its timeout
+
+        UNKNOWN             // begin, commit or rollback failed
+
+    }
+
+    private static final int ISOLATIONS = TxIsolation.values().length;
+    private static final int TAGS = 2 * ISOLATIONS * TxPropagation.values().length;
+
+    // created on first use, indexed by tag
+    private volatile AtomicReferenceArray<Stats> stats = new AtomicReferenceArray<Stats>(TAGS);
+
+    public TransactionMetrics() {
+    }
+
+    public ObjectName registerMBean(String name) throws JMException {
+        ObjectName objectName = new ObjectName("craven.transaction:type=TransactionMetrics,name=" + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        return objectName;
+    }
+
+    // -- Called by the transaction manager
+
+    void record(Transactional annotation, Phase phase, long elapsed) {
+        get(annotation).record(phase, elapsed);
+    }
+
+    void record(Transactional annotation, Outcome outcome) {
+        get(annotation).record(outcome);
+    }
+
+    /**
+     * Called by the {@link craven.interceptor.TransactionInterceptor} when it runs a transaction again after a
+     * transient failure.
+     */
+    public void recordRetry(Transactional annotation) {
+        get(annotation).retries.increment();
+    }
+
+    private Stats get(Transactional annotation) {
+        AtomicReferenceArray<Stats> current = stats;
+
+        int tag = (annotation.readOnly() ? 1 : 0)
+                + 2 * (annotation.isolation().ordinal() + ISOLATIONS * annotation.propagation().ordinal());
+
+        Stats s = current.get(tag);
+        if (s == null) {
+            current.compareAndSet(tag, null, new Stats(annotation));
+            s = current.get(tag);
+        }
+        return s;
+    }
+
+    // -- TransactionMetricsMBean
+
+    @Override
+    public long getCommitCount() {
+        return getCount(Outcome.COMMITTED);
+    }
+
+    @Override
+    public long getRollbackCount() {
+        return getCount(Outcome.ROLLED_BACK);
+    }
+
+    @Override
+    public long getMarkedRollbackCount() {
+        return getCount(Outcome.MARKED_ROLLBACK);
+    }
+
+    @Override
+    public long getFailedCommitCount() {
+        return getCount(Outcome.FAILED_COMMIT);
+    }
+
+    @Override
+    public long getTimedOutCount() {
+        return getCount(Outcome.TIMED_OUT);
+    }
+
+    @Override
+    public long getUnknownCount() {
+        return getCount(Outcome.UNKNOWN);
+    }
+
+    @Override
+    public long getRetryCount() {
+        AtomicReferenceArray<Stats> current = stats;
+        long count = 0;
+        for (int i = 0; i < TAGS; i++) {
+            Stats s = current.get(i);
+            if (s != null) {
+                count += s.retries.sum();
+            }
+        }
+        return count;
+    }
+
+    public long getCount(Outcome outcome) {
+        AtomicReferenceArray<Stats> current = stats;
+        long count = 0;
+        for (int i = 0; i < TAGS; i++) {
+            Stats s = current.get(i);
+            if (s != null) {
+                count += s.outcomes[outcome.ordinal()].sum();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Total time spent in the phase in nanoseconds, all tags.
+     */
+    public long getTime(Phase phase) {
+        AtomicReferenceArray<Stats> current = stats;
+        long time = 0;
+        for (int i = 0; i < TAGS; i++) {
+            Stats s = current.get(i);
+            if (s != null) {
+                time += s.phaseTimes[phase.ordinal()].sum();
+            }
+        }
+        return time;
+    }
+
+    @Override
+    public String[] getSummary() {
+        AtomicReferenceArray<Stats> current = stats;
+        List<String> lines = new ArrayList<String>();
+        for (int i = 0; i < TAGS; i++) {
+            Stats s = current.get(i);
+            if (s != null) {
+                lines.add(s.toString());
+            }
+        }
+        return lines.toArray(new String[lines.size()]);
+    }
+
+    @Override
+    public void reset() {
+        stats = new AtomicReferenceArray<Stats>(TAGS);
+    }
+
+    // --
+
+    private static final class Stats {
+
+        private final String tag;
+
+        private final StripedCounter[] outcomes = counters(Outcome.values().length);
+        private final StripedCounter[] phaseCounts = counters(Phase.values().length);
+        private final StripedCounter[] phaseTimes = counters(Phase.values().length);
+        private final StripedCounter retries = new StripedCounter();
+
+        Stats(Transactional annotation) {
+            this.tag = "readOnly=" + annotation.readOnly()
+                    + ",isolation=" + annotation.isolation()
+                    + ",propagation=" + annotation.propagation();
+        }
+
+        void record(Phase phase, long elapsed) {
+            phaseCounts[phase.ordinal()].increment();
+            phaseTimes[phase.ordinal()].add(elapsed);
+        }
+
+        void record(Outcome outcome) {
+            outcomes[outcome.ordinal()].increment();
+        }
+
+        private static StripedCounter[] counters(int length) {
+            StripedCounter[] counters = new StripedCounter[length];
+            for (int i = 0; i < length; i++) {
+                counters[i] = new StripedCounter();
+            }
+            return counters;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder(tag);
+            for (Outcome outcome : Outcome.values()) {
+                sb.append(' ').append(outcome.name().toLowerCase()).append('=').append(outcomes[outcome.ordinal()].sum());
+            }
+            sb.append(" retries=").append(retries.sum());
+            for (Phase phase : Phase.values()) {
+                long count = phaseCounts[phase.ordinal()].sum();
+                long time = phaseTimes[phase.ordinal()].sum();
+                sb.append(' ').append(phase.name().toLowerCase()).append('=').append(count).append('/');
+                sb.append((count > 0) ? TimeUnit.NANOSECONDS.toMicros(time / count) : 0).append("us");
+            }
+            return sb.toString();
+        }
+
+    }
+
+}
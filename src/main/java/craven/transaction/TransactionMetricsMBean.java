@@ -0,0 +1,36 @@
+package craven.transaction;
+
+/**
+ * JMX view of {@link TransactionMetrics}.
+ */
+public interface TransactionMetricsMBean {
+
+    long getCommitCount();
+
+    long getRollbackCount();
+
+    long getMarkedRollbackCount();
+
+    long getFailedCommitCount();
+
+    long getTimedOutCount();
+
+    long getUnknownCount();
+
+    /**
+     * Transactions run again after a transient failure.
+     */
+    long getRetryCount();
+
+    /**
+     * One line per combination of transaction attributes: the outcome counts, and the count and mean time in
+     * microseconds of each phase.
+     */
+    String[] getSummary();
+
+    /**
+     * Forget all statistics and start a new interval.
+     */
+    void reset();
+
+}
@@ -0,0 +1,58 @@
+package craven.transaction;
+
+import java.util.concurrent.Callable;
+
+/**
+ * Where the transaction managers keep the transaction of the current thread.
+ *
+ * This is the thread local binding: a manager keeps one frame per thread, reused by each transaction the thread
+ * begins. On JDK 25 and later the multi-release jar replaces this class with one that also supports scoped values:
+ * within {@link #run(Runnable)} the frames are bound to the scope rather than the thread, and go away with it, which
+ * suits many short-lived virtual threads. Before that, {@link #run(Runnable)} only runs the task.
+ */
+public final class TransactionScope {
+
+    private TransactionScope() {
+    }
+
+    /**
+     * Whether the frames of the current thread are bound to a scope rather than the thread.
+     */
+    public static boolean isScoped() {
+        return false;
+    }
+
+    /**
+     * Run the task with frames bound to a new scope, unless already in one. A transaction begun outside the scope
+     * is not visible inside it.
+     */
+    public static void run(Runnable task) {
+        task.run();
+    }
+
+    public static <V> V call(Callable<V> task) throws Exception {
+        return task.call();
+    }
+
+    static <T> Slot<T> newSlot() {
+        return new Slot<T>();
+    }
+
+    /**
+     * The frame of one transaction manager, null until set.
+     */
+    static final class Slot<T> {
+
+        private final ThreadLocal<T> local = new ThreadLocal<T>();
+
+        T get() {
+            return local.get();
+        }
+
+        void set(T value) {
+            local.set(value);
+        }
+
+    }
+
+}
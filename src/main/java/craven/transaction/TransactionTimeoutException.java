@@ -0,0 +1,25 @@
+package craven.transaction;
+
+/**
+ * The TransactionTimeoutException exception indicates that the transaction has
+ * been rolled back instead of committed because it ran past its timeout.
+ */
+public class TransactionTimeoutException extends RollbackException {
+
+    public TransactionTimeoutException() {
+        super();
+    }
+
+    public TransactionTimeoutException(String message) {
+        super(message);
+    }
+
+    public TransactionTimeoutException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+    public TransactionTimeoutException(Throwable cause) {
+        super(cause);
+    }
+
+}
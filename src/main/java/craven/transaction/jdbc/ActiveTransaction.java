@@ -0,0 +1,113 @@
+package craven.transaction.jdbc;
+
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import craven.interceptor.Transactional;
+
+/**
+ * A transaction in a {@link TransactionRegistry}, as seen from other threads.
+ *
+ * The connection is only set while the transaction holds one, so that it cannot be aborted after it went back to
+ * the pool.
+ */
+public class ActiveTransaction {
+
+    private final long id;
+    private final Thread thread;
+    private final Transactional annotation;
+    private final long startedMillis;
+    private final long startedNanos;
+
+    private volatile String lastStatement;
+    private volatile boolean aborted = false;
+
+    // guarded by this
+    private Connection connection;
+
+    // whether the watchdog logged it already, only used by the watchdog
+    boolean reported = false;
+
+    ActiveTransaction(long id, Thread thread, Transactional annotation) {
+        this.id = id;
+        this.thread = thread;
+        this.annotation = annotation;
+        this.startedMillis = System.currentTimeMillis();
+        this.startedNanos = System.nanoTime();
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public Thread getThread() {
+        return thread;
+    }
+
+    public Transactional getAnnotation() {
+        return annotation;
+    }
+
+    /**
+     * Start time in milliseconds since the epoch.
+     */
+    public long getStarted() {
+        return startedMillis;
+    }
+
+    public long getAge(TimeUnit unit) {
+        return unit.convert(System.nanoTime() - startedNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * The SQL of the last statement executed, null if none.
+     */
+    public String getLastStatement() {
+        return lastStatement;
+    }
+
+    public boolean isAborted() {
+        return aborted;
+    }
+
+    public synchronized boolean hasConnection() {
+        return connection != null;
+    }
+
+    // --
+
+    void setLastStatement(String lastStatement) {
+        this.lastStatement = lastStatement;
+    }
+
+    synchronized void setConnection(Connection connection) {
+        this.connection = connection;
+    }
+
+    /**
+     * Abort the connection, returns false if the transaction holds no connection or was already aborted.
+     */
+    synchronized boolean abort(Executor executor) throws SQLException {
+        if (aborted || connection == null) {
+            return false;
+        }
+        aborted = true;
+        connection.abort(executor);
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return "Transaction " + id + " on thread " + thread.getName()
+                + " for " + getAge(TimeUnit.MILLISECONDS) + "ms"
+                + " (readOnly=" + annotation.readOnly()
+                + ", isolation=" + annotation.isolation()
+                + ", propagation=" + annotation.propagation() + ")"
+                + (aborted ? " aborted" : "")
+                + ", last statement: " + lastStatement;
+    }
+
+}
@@ -2,14 +2,43 @@ package craven.transaction.jdbc;
 
 
 import java.sql.Connection;
+import java.util.concurrent.locks.ReentrantLock;
 
+import craven.interceptor.Transactional;
 import craven.interceptor.TxIsolation;
 import craven.transaction.TransactionContext;
 
 public class JdbcTransactionContext implements TransactionContext {
 
+    // incremented by each reset, so that the connections of an ended transaction can tell
+    private int generation;
+
+    private Transactional annotation;
+
     private Connection connection;
 
+    // whether statements were created on the connection, and whether one of them may have written
+    private boolean used;
+    private boolean written;
+
+    // statements executed, null unless recorded
+    private StatementRecorder recorder;
+
+    // entry in the transaction registry, null unless registered
+    private ActiveTransaction active;
+
+    // null unless the transaction has a timeout
+    private TransactionDeadline deadline;
+
+    // null unless tasks of other threads share the transaction, see TransactionalExecutor
+    private ReentrantLock sharedLock;
+
+    // whether the transaction ended, for the tasks of other threads that outlive it
+    private boolean ended;
+
+    // connections handed out by the TransactionalDataSource and not closed yet
+    private int openConnections;
+
     // saved values of changed transaction attibutes - a null value means no change
     private Boolean previousAutoCommit;
     private TxIsolation previousIsolation;
@@ -18,8 +47,72 @@ public class JdbcTransactionContext implements TransactionContext {
     public JdbcTransactionContext() {
     }
 
+    @Override
+    public void reset() {
+        generation++;
+        annotation = null;
+        connection = null;
+        used = false;
+        written = false;
+        recorder = null;
+        active = null;
+        deadline = null;
+        sharedLock = null;
+        ended = false;
+        openConnections = 0;
+        previousAutoCommit = null;
+        previousIsolation = null;
+        previousReadOnly = null;
+    }
+
+    int getGeneration() {
+        return generation;
+    }
+
+    /**
+     * The lock serializing the use of the connection by the threads sharing the transaction, created on first use.
+     */
+    ReentrantLock share() {
+        if (sharedLock == null) {
+            sharedLock = new ReentrantLock();
+        }
+        return sharedLock;
+    }
+
+    ReentrantLock getSharedLock() {
+        return sharedLock;
+    }
+
+    int getOpenConnections() {
+        return openConnections;
+    }
+
+    void opened() {
+        openConnections++;
+    }
+
+    void closed() {
+        openConnections--;
+    }
+
+    boolean isEnded() {
+        return ended;
+    }
+
+    void setEnded(boolean ended) {
+        this.ended = ended;
+    }
+
     // -- Getters and Setters
 
+    public Transactional getAnnotation() {
+        return annotation;
+    }
+
+    public void setAnnotation(Transactional annotation) {
+        this.annotation = annotation;
+    }
+
     public Connection getConnection() {
         return connection;
     }
@@ -28,6 +121,60 @@ public class JdbcTransactionContext implements TransactionContext {
         this.connection = connection;
     }
 
+    public boolean isUsed() {
+        return used;
+    }
+
+    public void setUsed(boolean used) {
+        this.used = used;
+    }
+
+    public boolean isWritten() {
+        return written;
+    }
+
+    public void setWritten(boolean written) {
+        this.written = written;
+    }
+
+    public StatementRecorder getRecorder() {
+        return recorder;
+    }
+
+    public void setRecorder(StatementRecorder recorder) {
+        this.recorder = recorder;
+    }
+
+    public ActiveTransaction getActive() {
+        return active;
+    }
+
+    public void setActive(ActiveTransaction active) {
+        this.active = active;
+    }
+
+    /**
+     * Whether the connection was aborted from another thread, see {@link TransactionRegistry}.
+     */
+    public boolean isAborted() {
+        return active != null && active.isAborted();
+    }
+
+    TransactionDeadline getDeadline() {
+        return deadline;
+    }
+
+    void setDeadline(TransactionDeadline deadline) {
+        this.deadline = deadline;
+    }
+
+    /**
+     * Whether the transaction ran past its timeout.
+     */
+    public boolean isTimedOut() {
+        return deadline != null && deadline.isExpired();
+    }
+
     public Boolean getPreviousAutoCommit() {
         return previousAutoCommit;
     }
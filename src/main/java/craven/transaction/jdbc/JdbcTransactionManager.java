@@ -3,6 +3,11 @@ package craven.transaction.jdbc;
 
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Savepoint;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 
 import javax.sql.DataSource;
 
@@ -10,20 +15,119 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import craven.datasource.JdbcUtils;
+import craven.datasource.SessionAwareDataSource;
+import craven.datasource.SessionDialect;
+import craven.datasource.SessionState;
+import craven.datasource.SessionTrackingConnection;
+import craven.datasource.StandardSessionDialect;
 import craven.interceptor.Transactional;
 import craven.interceptor.TxIsolation;
+import craven.transaction.HashedWheelTimer;
+import craven.transaction.SavepointManager;
 import craven.transaction.Status;
 import craven.transaction.SystemException;
 import craven.transaction.TransactionManagerTemplate;
+import craven.transaction.TransactionMetrics.Phase;
 
-public class JdbcTransactionManager extends TransactionManagerTemplate<JdbcTransactionContext> {
+public class JdbcTransactionManager extends TransactionManagerTemplate<JdbcTransactionContext> implements SavepointManager {
 
     private static final Logger logger = LoggerFactory.getLogger(JdbcTransactionManager.class);
 
     private final DataSource dataSource;
+    private final SessionDialect sessionDialect;
+
+    private boolean lazyConnection = false;
+
+    private int statementRecorderCapacity = 0;
+    private StatementRecorder.Sink statementRecorderSink = StatementRecorder.LOG;
+
+    // null unless transactions are registered
+    private TransactionRegistry transactionRegistry;
+
+    // null for the shared default timer
+    private HashedWheelTimer timeoutTimer;
+
+    // reused by the transactions of each thread
+    private final ThreadLocal<StatementRecorder> statementRecorders = new ThreadLocal<StatementRecorder>();
+
+    // commit and rollback round trips saved on transactions that created no statement
+    private final AtomicLong elidedCommits = new AtomicLong();
+    private final AtomicLong elidedRollbacks = new AtomicLong();
 
     public JdbcTransactionManager(DataSource dataSource) {
+        this(dataSource, StandardSessionDialect.JDBC);
+    }
+
+    /**
+     * The SQL dialects change the session behind the driver's back, only a pool that keeps the session state with
+     * the physical connection can use them, see {@link craven.datasource.PoolConfig.Builder#sessionDialect}. With a
+     * data source that hands out connections in a requested state, the dialect is not used at all.
+     *
+     * @throws IllegalArgumentException for a SQL dialect with a data source that is not a {@link SessionAwareDataSource}
+     */
+    public JdbcTransactionManager(DataSource dataSource, SessionDialect sessionDialect) {
+        if (!(dataSource instanceof SessionAwareDataSource) && sessionDialect != StandardSessionDialect.JDBC) {
+            throw new IllegalArgumentException("SQL session dialects need a pool that tracks the session state");
+        }
         this.dataSource = dataSource;
+        this.sessionDialect = sessionDialect;
+    }
+
+    /**
+     * In lazy mode begin only records the transaction attributes, the connection is acquired and set up the first
+     * time it is requested from the {@link TransactionalDataSource}. A transaction that never asks for a connection
+     * commits and rolls back without touching the database.
+     */
+    public void setLazyConnection(boolean lazyConnection) {
+        this.lazyConnection = lazyConnection;
+    }
+
+    public boolean isLazyConnection() {
+        return lazyConnection;
+    }
+
+    /**
+     * Record the last {@code capacity} statements of each transaction with their bind parameters and times, and
+     * emit them to the sink when the transaction does not commit. Zero disables recording.
+     */
+    public void setStatementRecorderCapacity(int statementRecorderCapacity) {
+        this.statementRecorderCapacity = statementRecorderCapacity;
+    }
+
+    public int getStatementRecorderCapacity() {
+        return statementRecorderCapacity;
+    }
+
+    public void setStatementRecorderSink(StatementRecorder.Sink statementRecorderSink) {
+        this.statementRecorderSink = statementRecorderSink;
+    }
+
+    /**
+     * Register the transactions in progress so that they can be watched and aborted from other threads, null
+     * disables registration. A registry may be shared by several transaction managers.
+     */
+    public void setTransactionRegistry(TransactionRegistry transactionRegistry) {
+        this.transactionRegistry = transactionRegistry;
+    }
+
+    public TransactionRegistry getTransactionRegistry() {
+        return transactionRegistry;
+    }
+
+    /**
+     * The timer of the transaction timeouts, by default a timer shared by all transaction managers with a tick of
+     * 100 milliseconds.
+     */
+    public void setTimeoutTimer(HashedWheelTimer timeoutTimer) {
+        this.timeoutTimer = timeoutTimer;
+    }
+
+    public long getElidedCommitCount() {
+        return elidedCommits.get();
+    }
+
+    public long getElidedRollbackCount() {
+        return elidedRollbacks.get();
     }
 
     @Override
@@ -34,20 +138,24 @@ public class JdbcTransactionManager extends TransactionManagerTemplate<JdbcTrans
     @Override
     protected void doBeginTransaction(Transactional annotation) throws SystemException {
         JdbcTransactionContext currentContext = getCurrentContext();
+        currentContext.setAnnotation(annotation);
+        currentContext.setRecorder(getStatementRecorder());
+        if (transactionRegistry != null) {
+            currentContext.setActive(transactionRegistry.register(annotation));
+        }
 
-        try {
-            Connection connection = dataSource.getConnection();
-            currentContext.setConnection(connection);
-
-            boolean currentAutoCommit = connection.getAutoCommit();
+        int timeout = getTransactionTimeout(annotation);
+        if (timeout > 0) {
+            HashedWheelTimer timer = (timeoutTimer != null) ? timeoutTimer : DefaultTimer.INSTANCE;
+            currentContext.setDeadline(TransactionDeadline.start(timeout, timer));
+        }
 
-            setReadOnly(currentAutoCommit, annotation.readOnly());
-            setIsolation(currentAutoCommit, annotation.isolation());
+        if (lazyConnection) {
+            return;
+        }
 
-            if (currentAutoCommit) {
-                currentContext.setPreviousAutoCommit(currentAutoCommit);
-                connection.setAutoCommit(false);
-            }
+        try {
+            acquireConnection(currentContext);
         }
         catch (SQLException e) {
             throw new SystemException(e);
@@ -60,94 +168,191 @@ public class JdbcTransactionManager extends TransactionManagerTemplate<JdbcTrans
     @Override
     protected void doEndTransaction() {
         JdbcTransactionContext currentContext = getCurrentContext();
-        Connection connection = currentContext.getConnection();
+        endSharing(currentContext);
 
-        Boolean previousAutoCommit = currentContext.getPreviousAutoCommit();
+        // Note: First, so that the timer no longer cancels statements of the connection once released.
+        TransactionDeadline deadline = currentContext.getDeadline();
+        if (deadline != null) {
+            deadline.cancel();
+            currentContext.setDeadline(null);
+        }
 
-        if (previousAutoCommit != null) {
-            try {
-                connection.setAutoCommit(true);
-            }
-            catch (SQLException e) {
-                logger.debug("Could not restore session auto-commit mode", e);
-            }
-            catch (Throwable t) {
-                // We don't trust the JDBC driver: It might throw RuntimeException or Error.
-                logger.debug("Unexpected exception while restoring auto-commit mode", t);
-            }
+        if (currentContext.getConnection() != null) {
+            releaseConnection(currentContext);
         }
 
-        try {
-            unsetIsolation();
-            unsetReadOnly();
+        StatementRecorder recorder = currentContext.getRecorder();
+        if (recorder != null) {
+            emitStatements(recorder, getStatus());
+            recorder.reset();
+            currentContext.setRecorder(null);
         }
-        catch (SQLException e) {
-            logger.debug("Could not restore session characteristics", e);
+
+        ActiveTransaction active = currentContext.getActive();
+        if (active != null) {
+            transactionRegistry.unregister(active);
+            currentContext.setActive(null);
         }
-        catch (Throwable t) {
-            // We don't trust the JDBC driver: It might throw RuntimeException or Error.
-            logger.debug("Unexpected exception while restoring session characteristics", t);
+    }
+
+    @Override
+    protected void doSuspendTransaction() {
+        // The recorder stays with the suspended transaction, the next one of the thread gets its own
+        if (getCurrentContext().getRecorder() != null) {
+            statementRecorders.remove();
         }
+    }
 
-        JdbcUtils.closeConnection(connection);
+    @Override
+    protected boolean isTimedOut() {
+        return getCurrentContext().isTimedOut();
     }
 
     // --
 
-    private void setReadOnly(boolean autoCommit, boolean newReadOnly) throws SQLException {
-        JdbcTransactionContext currentContext = getCurrentContext();
-        Connection connection = currentContext.getConnection();
+    /**
+     * Created with the first transaction with a timeout.
+     */
+    private static final class DefaultTimer {
+        static final HashedWheelTimer INSTANCE = new HashedWheelTimer("craven-transaction-timeout", 100, TimeUnit.MILLISECONDS, 512);
+    }
+
+    private StatementRecorder getStatementRecorder() {
+        int capacity = statementRecorderCapacity;
+        if (capacity <= 0) {
+            return null;
+        }
+
+        StatementRecorder recorder = statementRecorders.get();
+        if (recorder == null || recorder.capacity() != capacity) {
+            recorder = new StatementRecorder(capacity);
+            statementRecorders.set(recorder);
+        }
+        return recorder;
+    }
 
+    private void emitStatements(StatementRecorder recorder, Status status) {
+        // Rolled back, failed to commit or unknown
+        if (status == Status.COMMITTED || recorder.getCount() == 0) {
+            return;
+        }
+
+        try {
+            statementRecorderSink.emit(status, recorder);
+        }
+        catch (Throwable t) {
+            logger.debug("Could not emit recorded statements", t);
+        }
+    }
+
+    // --
+
+    private void acquireConnection(JdbcTransactionContext currentContext) throws SQLException {
+        Transactional annotation = currentContext.getAnnotation();
+        long started = System.nanoTime();
+
+        if (dataSource instanceof SessionAwareDataSource) {
+            // The connection comes in the requested state and is left in it, nothing to set or restore
+            SessionState sessionState = SessionState.of(annotation.readOnly(), annotation.isolation(), false);
+            Connection connection = ((SessionAwareDataSource) dataSource).getConnection(sessionState);
+            setConnection(currentContext, connection);
+            recordPhase(Phase.ACQUIRE, System.nanoTime() - started);
+            return;
+        }
+
+        SessionTrackingConnection connection = SessionTrackingConnection.wrap(dataSource.getConnection(), sessionDialect);
+        setConnection(currentContext, connection);
+
+        long acquired = System.nanoTime();
+        recordPhase(Phase.ACQUIRE, acquired - started);
+
+        boolean currentAutoCommit = connection.getAutoCommit();
+
+        boolean newReadOnly = annotation.readOnly();
         boolean currentReadOnly = connection.isReadOnly();
         if (newReadOnly != currentReadOnly) {
-            if (autoCommit) {
-                currentContext.setPreviousReadOnly(currentReadOnly);
-                // Note: This method cannot be called during a transaction.
-                connection.setReadOnly(newReadOnly);
-            }
-            else {
+            if (!currentAutoCommit) {
                 throw new SystemException("Cannot set transaction read-only, session already in transaction");
             }
+            currentContext.setPreviousReadOnly(currentReadOnly);
         }
-    }
-
-    private void setIsolation(boolean autoCommit, TxIsolation newIsolation) throws SQLException {
-        JdbcTransactionContext currentContext = getCurrentContext();
-        Connection connection = currentContext.getConnection();
 
+        TxIsolation newIsolation = annotation.isolation();
         if (newIsolation != TxIsolation.DEFAULT) {
             TxIsolation currentIsolation = TxIsolation.fromLevel(connection.getTransactionIsolation());
             if (newIsolation != currentIsolation) {
-                if (autoCommit) {
-                    currentContext.setPreviousIsolation(currentIsolation);
-                    // Note: If this method is called during a transaction, the result is implementation-defined.
-                    connection.setTransactionIsolation(newIsolation.level());
-                }
-                else {
+                if (!currentAutoCommit) {
                     throw new SystemException("Cannot set transaction isolation level, session already in transaction");
                 }
+                currentContext.setPreviousIsolation(currentIsolation);
             }
         }
-    }
 
-    private void unsetReadOnly() throws SQLException {
-        JdbcTransactionContext currentContext = getCurrentContext();
-        Connection connection = currentContext.getConnection();
+        if (currentAutoCommit) {
+            currentContext.setPreviousAutoCommit(currentAutoCommit);
+        }
 
-        Boolean previousReadOnly = currentContext.getPreviousReadOnly();
-        if (previousReadOnly != null) {
-            connection.setReadOnly(previousReadOnly);
+        // Note: Read-only and isolation change with auto-commit enabled, a single step with an SQL dialect.
+        connection.setSessionCharacteristics(newReadOnly, newIsolation.level(), false);
+        recordPhase(Phase.SETUP, System.nanoTime() - acquired);
+    }
+
+    private void setConnection(JdbcTransactionContext currentContext, Connection connection) {
+        currentContext.setConnection(connection);
+        if (currentContext.getActive() != null) {
+            currentContext.getActive().setConnection(connection);
         }
     }
 
-    private void unsetIsolation() throws SQLException {
-        JdbcTransactionContext currentContext = getCurrentContext();
+    private void releaseConnection(JdbcTransactionContext currentContext) {
         Connection connection = currentContext.getConnection();
 
+        // Note: Once detached, the connection can no longer be aborted from another thread.
+        if (currentContext.getActive() != null) {
+            currentContext.getActive().setConnection(null);
+        }
+
+        Boolean previousAutoCommit = currentContext.getPreviousAutoCommit();
+        Boolean previousReadOnly = currentContext.getPreviousReadOnly();
         TxIsolation previousIsolation = currentContext.getPreviousIsolation();
-        if (previousIsolation != null) {
-            connection.setTransactionIsolation(previousIsolation.level());
+
+        boolean discard = false;
+        if (currentContext.isAborted()) {
+            // closed by the abort, nothing to restore
+        }
+        else if (previousAutoCommit != null || previousReadOnly != null || previousIsolation != null) {
+            try {
+                SessionTrackingConnection session = SessionTrackingConnection.wrap(connection, sessionDialect);
+                session.setSessionCharacteristics(
+                        (previousReadOnly != null) ? previousReadOnly : session.isReadOnly(),
+                        (previousIsolation != null) ? previousIsolation.level() : -1,
+                        (previousAutoCommit != null) ? previousAutoCommit : session.getAutoCommit());
+            }
+            catch (SQLException e) {
+                logger.warn("Could not restore session characteristics, discarding connection", e);
+                discard = true;
+            }
+            catch (Throwable t) {
+                // We don't trust the JDBC driver: It might throw RuntimeException or Error.
+                logger.warn("Unexpected exception while restoring session characteristics, discarding connection", t);
+                discard = true;
+            }
         }
+
+        // Note: The next user of a connection in an unknown session state would inherit it.
+        if (discard) {
+            JdbcUtils.discardConnection(connection);
+        }
+        else {
+            JdbcUtils.closeConnection(connection);
+        }
+
+        currentContext.setConnection(null);
+        currentContext.setUsed(false);
+        currentContext.setWritten(false);
+        currentContext.setPreviousAutoCommit(null);
+        currentContext.setPreviousReadOnly(null);
+        currentContext.setPreviousIsolation(null);
     }
 
     // --
@@ -155,8 +360,19 @@ public class JdbcTransactionManager extends TransactionManagerTemplate<JdbcTrans
     @Override
     protected void doCommitTransaction() throws SystemException {
         JdbcTransactionContext currentContext = getCurrentContext();
+        endSharing(currentContext);
         Connection connection = currentContext.getConnection();
 
+        if (currentContext.isAborted()) {
+            throw new SystemException("Transaction was aborted");
+        }
+
+        if (connection == null || !currentContext.isUsed()) {
+            // lazy transaction that never used the database, or no statement was created on the connection
+            elidedCommits.incrementAndGet();
+            return;
+        }
+
         try {
             connection.commit();
         }
@@ -171,8 +387,20 @@ public class JdbcTransactionManager extends TransactionManagerTemplate<JdbcTrans
     @Override
     protected void doRollbackTransaction() throws SystemException {
         JdbcTransactionContext currentContext = getCurrentContext();
+        endSharing(currentContext);
         Connection connection = currentContext.getConnection();
 
+        if (currentContext.isAborted()) {
+            // the database rolled back when the connection was aborted
+            return;
+        }
+
+        if (connection == null || !currentContext.isUsed()) {
+            // lazy transaction that never used the database, or no statement was created on the connection
+            elidedRollbacks.incrementAndGet();
+            return;
+        }
+
         try {
             connection.rollback();
         }
@@ -184,19 +412,208 @@ public class JdbcTransactionManager extends TransactionManagerTemplate<JdbcTrans
         }
     }
 
+    /**
+     * Wait for the tasks of other threads to be done with the connection, they can no longer get it once the
+     * transaction ends.
+     */
+    private void endSharing(JdbcTransactionContext currentContext) {
+        ReentrantLock lock = currentContext.getSharedLock();
+        if (lock == null) {
+            currentContext.setEnded(true);
+            return;
+        }
+
+        lock.lock();
+        try {
+            currentContext.setEnded(true);
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    // -- SavepointManager
+
+    @Override
+    public Object createSavepoint() throws IllegalStateException, SystemException {
+        if (getStatus() == Status.NO_TRANSACTION) {
+            throw new IllegalStateException("Transaction is not active");
+        }
+        if (isAttached()) {
+            throw new IllegalStateException("Savepoints belong to the thread of the transaction");
+        }
+
+        try {
+            Status status = getStatus();
+            Connection connection = getTransactionalConnection();
+            getCurrentContext().setUsed(true);
+            return new NestedSavepoint(connection.setSavepoint(), status);
+        }
+        catch (SQLException e) {
+            throw new SystemException(e);
+        }
+        catch (Throwable t) {
+            throw new SystemException(t);
+        }
+    }
+
+    @Override
+    public void rollbackToSavepoint(Object savepoint) throws IllegalStateException, SystemException {
+        Connection connection = getSavepointConnection();
+        NestedSavepoint nested = (NestedSavepoint) savepoint;
+
+        try {
+            connection.rollback(nested.savepoint);
+        }
+        catch (SQLException e) {
+            throw new SystemException(e);
+        }
+        catch (Throwable t) {
+            throw new SystemException(t);
+        }
+
+        releaseSavepoint(savepoint);
+
+        // the work that marked the transaction is undone
+        if (nested.status == Status.ACTIVE) {
+            clearRollbackOnly();
+        }
+    }
+
+    @Override
+    public void releaseSavepoint(Object savepoint) throws IllegalStateException, SystemException {
+        Connection connection = getSavepointConnection();
+
+        try {
+            connection.releaseSavepoint(((NestedSavepoint) savepoint).savepoint);
+        }
+        catch (SQLFeatureNotSupportedException e) {
+            // released with the transaction
+            logger.debug("Could not release savepoint", e);
+        }
+        catch (SQLException e) {
+            throw new SystemException(e);
+        }
+        catch (Throwable t) {
+            throw new SystemException(t);
+        }
+    }
+
+    /**
+     * A savepoint with the status of the transaction when it was taken.
+     */
+    private static final class NestedSavepoint {
+
+        final Savepoint savepoint;
+        final Status status;
+
+        NestedSavepoint(Savepoint savepoint, Status status) {
+            this.savepoint = savepoint;
+            this.status = status;
+        }
+
+    }
+
+    private Connection getSavepointConnection() {
+        if (isAttached()) {
+            throw new IllegalStateException("Savepoints belong to the thread of the transaction");
+        }
+        Connection connection = (getStatus() != Status.NO_TRANSACTION) ? getCurrentContext().getConnection() : null;
+        if (connection == null) {
+            throw new IllegalStateException("No savepoint in the current transaction");
+        }
+        return connection;
+    }
+
     // --
 
     DataSource getDataSource() {
         return dataSource;
     }
 
-    Connection getTransactionalConnection() {
-        if (getStatus() != Status.NO_TRANSACTION) {
-            return getCurrentContext().getConnection();
+    // -- Tasks of other threads, see TransactionalExecutor
+
+    /**
+     * The transaction of the current thread for the tasks of other threads to share, null without a transaction.
+     *
+     * @throws IllegalStateException if the thread still has a connection of the transaction open, the tasks would
+     *         wait for it
+     */
+    Object shareTransaction() {
+        if (getStatus() == Status.NO_TRANSACTION) {
+            return null;
         }
-        else {
+        JdbcTransactionContext currentContext = getCurrentContext();
+        ReentrantLock lock = currentContext.getSharedLock();
+        if ((lock != null) ? lock.isHeldByCurrentThread() : currentContext.getOpenConnections() > 0) {
+            throw new IllegalStateException("Connection of the transaction still open, close it before handing out tasks");
+        }
+
+        Object transaction = captureTransaction();
+        if (transaction != null) {
+            currentContext.share();
+        }
+        return transaction;
+    }
+
+    /**
+     * Whether the current thread holds the connection of a shared transaction, the tasks sharing it would wait for
+     * the thread.
+     */
+    boolean holdsSharedConnection() {
+        if (getStatus() == Status.NO_TRANSACTION) {
+            return false;
+        }
+        ReentrantLock lock = getCurrentContext().getSharedLock();
+        return lock != null && lock.isHeldByCurrentThread();
+    }
+
+    /**
+     * Run the current thread in the shared transaction, or detached from the transaction of the submitting thread if
+     * null, returns what to give to {@link #detach(Object)}.
+     */
+    Object attach(Object transaction) {
+        return attachTransaction(transaction, transaction != null);
+    }
+
+    void detach(Object previous) {
+        detachTransaction(previous);
+    }
+
+    boolean isSharedTask() {
+        return isAttached();
+    }
+
+    boolean isDetachedTask() {
+        return isDetached();
+    }
+
+    // --
+
+    JdbcTransactionContext getTransactionalContext() {
+        return getCurrentContext();
+    }
+
+    Connection getTransactionalConnection() throws SQLException {
+        if (getStatus() == Status.NO_TRANSACTION) {
             return null;
         }
+
+        JdbcTransactionContext currentContext = getCurrentContext();
+        if (currentContext.getConnection() == null) {
+            try {
+                acquireConnection(currentContext);
+            }
+            catch (SQLException e) {
+                releaseConnection(currentContext);
+                throw e;
+            }
+            catch (Throwable t) {
+                releaseConnection(currentContext);
+                throw new SQLException("Could not acquire transactional connection", t);
+            }
+        }
+        return currentContext.getConnection();
     }
 
 }
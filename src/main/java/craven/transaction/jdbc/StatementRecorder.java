@@ -0,0 +1,202 @@
+package craven.transaction.jdbc;
+
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import craven.transaction.Status;
+
+/**
+ * Records the last statements executed in a transaction with their bind parameters and times, to be dumped when the
+ * transaction does not commit, see {@link JdbcTransactionManager#setStatementRecorderCapacity(int)}.
+ *
+ * The buffer is preallocated and reused by the transactions of a thread. Recording a statement copies the
+ * parameter references, which are only turned into strings when the record is dumped.
+ */
+public class StatementRecorder {
+
+    private static final Logger logger = LoggerFactory.getLogger(StatementRecorder.class);
+
+    /**
+     * Where the records of transactions that did not commit go.
+     */
+    public static interface Sink {
+        void emit(Status status, StatementRecorder recorder);
+    }
+
+    /**
+     * Logs the records as a warning.
+     */
+    public static final Sink LOG = new Sink() {
+        @Override public void emit(Status status, StatementRecorder recorder) {
+            logger.warn("Transaction ended {}, statements executed:\n{}", status, recorder.dump());
+        }
+    };
+
+    static final int MAX_PARAMETERS = 32;
+    private static final int MAX_PARAMETER_LENGTH = 100;
+
+    // elapsed time of a statement that did not complete
+    private static final long FAILED = -1;
+
+    private final int capacity;
+
+    // ring of records indexed by sequence number modulo capacity
+    private final String[] sql;
+    private final Object[][] parameters;
+    private final int[] parameterCounts;
+    private final int[] batchSizes;
+    private final long[] started;
+    private final long[] elapsed;
+
+    private long sequence = 0;
+
+    public StatementRecorder(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.capacity = capacity;
+        this.sql = new String[capacity];
+        this.parameters = new Object[capacity][MAX_PARAMETERS];
+        this.parameterCounts = new int[capacity];
+        this.batchSizes = new int[capacity];
+        this.started = new long[capacity];
+        this.elapsed = new long[capacity];
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * Number of statements recorded, including the ones that no longer fit.
+     */
+    public long getCount() {
+        return sequence;
+    }
+
+    // -- Called by the statements
+
+    /**
+     * Record the start of an execution, returns its sequence number.
+     *
+     * @param params the bind parameters, parameter 1 first, may be null
+     */
+    long begin(String statement, Object[] params, int paramCount, int batchSize) {
+        long id = sequence++;
+        int index = (int) (id % capacity);
+
+        sql[index] = statement;
+        int count = (params != null) ? Math.min(paramCount, MAX_PARAMETERS) : 0;
+        if (count > 0) {
+            System.arraycopy(params, 0, parameters[index], 0, count);
+        }
+        if (count < parameterCounts[index]) {
+            Arrays.fill(parameters[index], count, parameterCounts[index], null);
+        }
+        parameterCounts[index] = count;
+        batchSizes[index] = batchSize;
+        elapsed[index] = FAILED;
+        started[index] = System.nanoTime();
+        return id;
+    }
+
+    /**
+     * Record the completion of an execution.
+     */
+    void end(long id) {
+        if (sequence - id <= capacity) {
+            int index = (int) (id % capacity);
+            elapsed[index] = System.nanoTime() - started[index];
+        }
+    }
+
+    /**
+     * Forget the records, keeping the buffers.
+     */
+    void reset() {
+        int used = (int) Math.min(sequence, capacity);
+        for (int i = 0; i < used; i++) {
+            sql[i] = null;
+            Arrays.fill(parameters[i], 0, parameterCounts[i], null);
+            parameterCounts[i] = 0;
+        }
+        sequence = 0;
+    }
+
+    // --
+
+    /**
+     * The records, oldest first, one statement per line.
+     */
+    public String dump() {
+        StringBuilder sb = new StringBuilder();
+
+        long first = Math.max(0, sequence - capacity);
+        if (first > 0) {
+            sb.append("  ... ").append(first).append(" earlier statements not recorded\n");
+        }
+
+        for (long id = first; id < sequence; id++) {
+            int index = (int) (id % capacity);
+
+            sb.append("  ").append(id + 1).append(": ").append(sql[index]);
+
+            int count = parameterCounts[index];
+            if (count > 0) {
+                sb.append(" [");
+                for (int i = 0; i < count; i++) {
+                    if (i > 0) {
+                        sb.append(", ");
+                    }
+                    appendParameter(sb, parameters[index][i]);
+                }
+                sb.append("]");
+            }
+
+            if (batchSizes[index] > 0) {
+                sb.append(" (batch of ").append(batchSizes[index]).append(")");
+            }
+
+            if (elapsed[index] == FAILED) {
+                sb.append(" failed");
+            }
+            else {
+                sb.append(" in ").append(TimeUnit.NANOSECONDS.toMicros(elapsed[index])).append("us");
+            }
+
+            sb.append("\n");
+        }
+
+        return sb.toString();
+    }
+
+    private static void appendParameter(StringBuilder sb, Object value) {
+        if (value instanceof String) {
+            String s = (String) value;
+            sb.append("'");
+            if (s.length() > MAX_PARAMETER_LENGTH) {
+                sb.append(s, 0, MAX_PARAMETER_LENGTH).append("...");
+            }
+            else {
+                sb.append(s);
+            }
+            sb.append("'");
+        }
+        else if (value instanceof byte[]) {
+            sb.append("<").append(((byte[]) value).length).append(" bytes>");
+        }
+        else {
+            sb.append(value);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "StatementRecorder[" + Math.min(sequence, capacity) + "/" + capacity + "]";
+    }
+
+}
@@ -0,0 +1,93 @@
+package craven.transaction.jdbc;
+
+
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import craven.transaction.HashedWheelTimer;
+
+/**
+ * The timeout of a transaction. On expiry, which runs on the timer thread, the statement in flight is cancelled;
+ * the transaction then rolls back on commit and its connection refuses further calls.
+ */
+final class TransactionDeadline implements Runnable {
+
+    private static final Logger logger = LoggerFactory.getLogger(TransactionDeadline.class);
+
+    private final long deadline;
+    private HashedWheelTimer.Timeout timeout;
+
+    private volatile boolean expired = false;
+
+    // the statement executing, if any
+    private volatile Statement executing;
+
+    // guarded by this
+    private boolean cancelled = false;
+
+    private TransactionDeadline(long deadline) {
+        this.deadline = deadline;
+    }
+
+    static TransactionDeadline start(int seconds, HashedWheelTimer timer) {
+        TransactionDeadline transactionDeadline = new TransactionDeadline(System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds));
+        transactionDeadline.timeout = timer.schedule(transactionDeadline, seconds, TimeUnit.SECONDS);
+        return transactionDeadline;
+    }
+
+    boolean isExpired() {
+        return expired;
+    }
+
+    /**
+     * The budget left, at least one second so that it does not read as no timeout.
+     */
+    int remainingSeconds() {
+        long remaining = deadline - System.nanoTime();
+        return (int) Math.max(1, (remaining + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1));
+    }
+
+    void executing(Statement statement) {
+        this.executing = statement;
+    }
+
+    /**
+     * Stop the timeout, waits for the cancellation of the statement if it is expiring.
+     */
+    synchronized void cancel() {
+        cancelled = true;
+        executing = null;
+        timeout.cancel();
+    }
+
+    // -- Timer thread
+
+    @Override
+    public synchronized void run() {
+        if (cancelled) {
+            return;
+        }
+        expired = true;
+
+        Statement statement = executing;
+        if (statement == null) {
+            return;
+        }
+
+        try {
+            statement.cancel();
+        }
+        catch (SQLException e) {
+            logger.debug("Could not cancel statement of timed out transaction", e);
+        }
+        catch (Throwable t) {
+            // We don't trust the JDBC driver: It might throw RuntimeException or Error.
+            logger.debug("Unexpected exception while cancelling statement of timed out transaction", t);
+        }
+    }
+
+}
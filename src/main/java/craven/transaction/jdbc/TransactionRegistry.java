@@ -0,0 +1,229 @@
+package craven.transaction.jdbc;
+
+
+import java.io.Closeable;
+import java.lang.management.ManagementFactory;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import craven.interceptor.Transactional;
+
+/**
+ * The transactions in progress of the {@link JdbcTransactionManager}s it is set on, visible from any thread, see
+ * {@link JdbcTransactionManager#setTransactionRegistry(TransactionRegistry)}.
+ *
+ * A watchdog logs the transactions running longer than a threshold with the stack trace of their thread, and aborts
+ * the connection of the ones running longer than the abort threshold. The thread of an aborted transaction gets an
+ * exception on its next call to the connection, and the transaction ends rolled back.
+ */
+public class TransactionRegistry implements TransactionRegistryMBean, Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(TransactionRegistry.class);
+
+    private static final Comparator<ActiveTransaction> OLDEST_FIRST = new Comparator<ActiveTransaction>() {
+        @Override public int compare(ActiveTransaction a, ActiveTransaction b) {
+            return (a.getId() < b.getId()) ? -1 : (a.getId() > b.getId()) ? 1 : 0;
+        }
+    };
+
+    private final ConcurrentMap<Long, ActiveTransaction> active = new ConcurrentHashMap<Long, ActiveTransaction>();
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicLong abortedCount = new AtomicLong();
+
+    private volatile long longRunningThreshold = 60000;
+    private volatile long abortThreshold = 0;
+
+    // runs the watchdog and the aborts, created on first use
+    private ScheduledExecutorService executor;
+    private boolean watching = false;
+
+    public TransactionRegistry() {
+    }
+
+    public ObjectName registerMBean(String name) throws JMException {
+        ObjectName objectName = new ObjectName("craven.transaction:type=TransactionRegistry,name=" + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        return objectName;
+    }
+
+    // -- Called by the transaction manager
+
+    ActiveTransaction register(Transactional annotation) {
+        ActiveTransaction transaction = new ActiveTransaction(sequence.incrementAndGet(), Thread.currentThread(), annotation);
+        active.put(transaction.getId(), transaction);
+        return transaction;
+    }
+
+    void unregister(ActiveTransaction transaction) {
+        active.remove(transaction.getId());
+    }
+
+    // --
+
+    /**
+     * The transactions in progress, oldest first.
+     */
+    public List<ActiveTransaction> getTransactions() {
+        List<ActiveTransaction> transactions = new ArrayList<ActiveTransaction>(active.values());
+        Collections.sort(transactions, OLDEST_FIRST);
+        return transactions;
+    }
+
+    /**
+     * Scan the transactions every {@code period} for the ones over the thresholds.
+     */
+    public synchronized void startWatchdog(long period, TimeUnit unit) {
+        if (watching) {
+            throw new IllegalStateException("Watchdog already started");
+        }
+        watching = true;
+        getExecutor().scheduleWithFixedDelay(new Runnable() {
+            @Override public void run() {
+                try {
+                    scan();
+                }
+                catch (Throwable t) {
+                    logger.warn("Could not scan active transactions", t);
+                }
+            }
+        }, period, period, unit);
+    }
+
+    @Override
+    public synchronized void close() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+        watching = false;
+    }
+
+    void scan() {
+        long reportAge = longRunningThreshold;
+        long abortAge = abortThreshold;
+
+        for (ActiveTransaction transaction : getTransactions()) {
+            long age = transaction.getAge(TimeUnit.MILLISECONDS);
+
+            if (reportAge > 0 && age >= reportAge && !transaction.reported) {
+                transaction.reported = true;
+                logger.warn(transaction.toString(), stackTrace(transaction));
+            }
+
+            if (abortAge > 0 && age >= abortAge && !transaction.isAborted()) {
+                abort(transaction);
+            }
+        }
+    }
+
+    private boolean abort(ActiveTransaction transaction) {
+        try {
+            if (transaction.abort(getExecutor())) {
+                abortedCount.incrementAndGet();
+                logger.warn("Aborted {}", transaction);
+                return true;
+            }
+        }
+        catch (SQLException e) {
+            logger.warn("Could not abort " + transaction, e);
+        }
+        catch (Throwable t) {
+            // We don't trust the JDBC driver: It might throw RuntimeException or Error.
+            logger.warn("Unexpected exception while aborting " + transaction, t);
+        }
+        return false;
+    }
+
+    private synchronized ScheduledExecutorService getExecutor() {
+        if (executor == null) {
+            executor = Executors.newSingleThreadScheduledExecutor(
+                    new ThreadFactoryBuilder().setDaemon(true).setNameFormat("craven-transaction-watchdog-%d").build());
+        }
+        return executor;
+    }
+
+    private static Throwable stackTrace(ActiveTransaction transaction) {
+        Throwable trace = new Throwable("Stack trace of " + transaction.getThread().getName());
+        trace.setStackTrace(transaction.getThread().getStackTrace());
+        return trace;
+    }
+
+    // -- TransactionRegistryMBean
+
+    @Override
+    public int getActiveCount() {
+        return active.size();
+    }
+
+    @Override
+    public String[] getActiveTransactions() {
+        List<ActiveTransaction> transactions = getTransactions();
+        String[] lines = new String[transactions.size()];
+        for (int i = 0; i < lines.length; i++) {
+            lines[i] = transactions.get(i).toString();
+        }
+        return lines;
+    }
+
+    @Override
+    public String getStackTrace(long id) {
+        ActiveTransaction transaction = active.get(id);
+        if (transaction == null) {
+            return null;
+        }
+        StringBuilder sb = new StringBuilder(transaction.toString());
+        for (StackTraceElement element : transaction.getThread().getStackTrace()) {
+            sb.append("\n\tat ").append(element);
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public boolean abort(long id) {
+        ActiveTransaction transaction = active.get(id);
+        return (transaction != null) && abort(transaction);
+    }
+
+    @Override
+    public long getAbortedCount() {
+        return abortedCount.get();
+    }
+
+    @Override
+    public long getLongRunningThreshold() {
+        return longRunningThreshold;
+    }
+
+    @Override
+    public void setLongRunningThreshold(long millis) {
+        this.longRunningThreshold = millis;
+    }
+
+    @Override
+    public long getAbortThreshold() {
+        return abortThreshold;
+    }
+
+    @Override
+    public void setAbortThreshold(long millis) {
+        this.abortThreshold = millis;
+    }
+
+}
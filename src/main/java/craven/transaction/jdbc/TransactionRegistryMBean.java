@@ -0,0 +1,41 @@
+package craven.transaction.jdbc;
+
+/**
+ * JMX view of {@link TransactionRegistry}, thresholds are in milliseconds.
+ */
+public interface TransactionRegistryMBean {
+
+    int getActiveCount();
+
+    /**
+     * One line per transaction in progress, oldest first: id, thread, age, attributes and last statement.
+     */
+    String[] getActiveTransactions();
+
+    /**
+     * The current stack trace of the thread running the transaction, null if it is no longer active.
+     */
+    String getStackTrace(long id);
+
+    /**
+     * Abort the connection of the transaction, returns false if it holds none or is no longer active.
+     */
+    boolean abort(long id);
+
+    long getAbortedCount();
+
+    /**
+     * Age over which the watchdog logs a transaction with its stack trace, zero to never log.
+     */
+    long getLongRunningThreshold();
+
+    void setLongRunningThreshold(long millis);
+
+    /**
+     * Age over which the watchdog aborts a transaction, zero to never abort.
+     */
+    long getAbortThreshold();
+
+    void setAbortThreshold(long millis);
+
+}
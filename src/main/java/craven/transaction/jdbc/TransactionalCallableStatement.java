@@ -0,0 +1,130 @@
+package craven.transaction.jdbc;
+
+
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import craven.datasource.DelegatingCallableStatement;
+
+/**
+ * A callable statement created on a {@link TransactionalConnection}, which reports it as writing when prepared.
+ * Executions are limited to the time left to the transaction and recorded if enabled, without their parameters.
+ */
+class TransactionalCallableStatement extends DelegatingCallableStatement {
+
+    private final TransactionalConnection connection;
+    private final CallableStatement statement;
+    private final String sql;
+
+    // null unless statements are recorded
+    private final StatementRecorder recorder;
+    private int batchSize = 0;
+
+    TransactionalCallableStatement(TransactionalConnection connection, CallableStatement statement, String sql) {
+        this.connection = connection;
+        this.statement = statement;
+        this.sql = sql;
+        this.recorder = connection.getRecorder();
+    }
+
+    @Override
+    protected CallableStatement delegate() {
+        return statement;
+    }
+
+    @Override
+    protected void checkOpen() throws SQLException {
+        connection.checkOpen();
+    }
+
+    // --
+
+    @Override
+    public ResultSet executeQuery() throws SQLException {
+        long id = begin(0);
+        try {
+            ResultSet rs = super.executeQuery();
+            end(id);
+            return rs;
+        }
+        finally {
+            connection.executing(null);
+        }
+    }
+
+    @Override
+    public int executeUpdate() throws SQLException {
+        long id = begin(0);
+        try {
+            int count = super.executeUpdate();
+            end(id);
+            return count;
+        }
+        finally {
+            connection.executing(null);
+        }
+    }
+
+    @Override
+    public boolean execute() throws SQLException {
+        long id = begin(0);
+        try {
+            boolean result = super.execute();
+            end(id);
+            return result;
+        }
+        finally {
+            connection.executing(null);
+        }
+    }
+
+    @Override
+    public void addBatch() throws SQLException {
+        super.addBatch();
+        batchSize++;
+    }
+
+    @Override
+    public void clearBatch() throws SQLException {
+        super.clearBatch();
+        batchSize = 0;
+    }
+
+    @Override
+    public int[] executeBatch() throws SQLException {
+        long id = begin(batchSize);
+        batchSize = 0;
+        try {
+            int[] counts = super.executeBatch();
+            end(id);
+            return counts;
+        }
+        finally {
+            connection.executing(null);
+        }
+    }
+
+    private long begin(int batchSize) throws SQLException {
+        connection.setLastStatement(sql);
+        connection.applyTimeout(statement);
+        connection.executing(statement);
+        return (recorder != null) ? recorder.begin(sql, null, 0, batchSize) : -1;
+    }
+
+    private void end(long id) {
+        if (recorder != null) {
+            recorder.end(id);
+        }
+    }
+
+    // --
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        checkOpen();
+        return connection;
+    }
+
+}
@@ -0,0 +1,271 @@
+package craven.transaction.jdbc;
+
+
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.SQLTransactionRollbackException;
+import java.sql.Savepoint;
+import java.sql.Statement;
+import java.util.concurrent.locks.ReentrantLock;
+
+import craven.datasource.DelegatingConnection;
+
+/**
+ * The connection handed out by {@link TransactionalDataSource} within a transaction. Closing it leaves the
+ * transactional connection open.
+ *
+ * Records in the {@link JdbcTransactionContext} whether the transaction created any statement and whether one of
+ * them may have written, so that {@link JdbcTransactionManager} can skip the commit or rollback of a transaction
+ * that never reached the database.
+ *
+ * When tasks of other threads share the transaction, see {@link TransactionalExecutor}, the handle holds the lock of
+ * the connection until closed, and the handles of the tasks only read.
+ */
+class TransactionalConnection extends DelegatingConnection {
+
+    private final Connection connection;
+    private final JdbcTransactionContext context;
+    private final int generation;
+
+    // held until closed, null unless the transaction is shared
+    private final ReentrantLock lock;
+    // handed out to a task sharing the transaction of another thread
+    private final boolean task;
+
+    private boolean closed = false;
+
+    TransactionalConnection(Connection connection, JdbcTransactionContext context) {
+        this(connection, context, null, false);
+    }
+
+    TransactionalConnection(Connection connection, JdbcTransactionContext context, ReentrantLock lock, boolean task) {
+        this.connection = connection;
+        this.context = context;
+        this.generation = context.getGeneration();
+        this.lock = lock;
+        this.task = task;
+        context.opened();
+    }
+
+    @Override
+    protected Connection delegate() {
+        return connection;
+    }
+
+    @Override
+    protected void checkOpen() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection is closed.");
+        }
+        // the context was reused by a later transaction
+        if (context.getGeneration() != generation || context.isEnded()) {
+            throw new SQLException("Transaction has ended.");
+        }
+        // the turns on the connection of a shared transaction go by the connections handed out
+        if (lock == null && context.getSharedLock() != null) {
+            throw new SQLException("Connection was handed out before the transaction was shared.");
+        }
+        if (context.isAborted()) {
+            throw new SQLTransactionRollbackException("Transaction was aborted");
+        }
+        if (context.isTimedOut()) {
+            throw new SQLTimeoutException("Transaction timed out");
+        }
+    }
+
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            if (context.getGeneration() == generation) {
+                context.closed();
+            }
+            if (lock != null) {
+                lock.unlock();
+            }
+        }
+    }
+
+    @Override
+    public boolean isClosed() {
+        return closed;
+    }
+
+    // -- Statements
+
+    @Override
+    public Statement createStatement() throws SQLException {
+        return new TransactionalStatement(this, super.createStatement());
+    }
+
+    @Override
+    public Statement createStatement(int resultSetType, int resultSetConcurrency) throws SQLException {
+        return new TransactionalStatement(this, super.createStatement(resultSetType, resultSetConcurrency));
+    }
+
+    @Override
+    public Statement createStatement(int resultSetType, int resultSetConcurrency, int resultSetHoldability) throws SQLException {
+        return new TransactionalStatement(this,
+                super.createStatement(resultSetType, resultSetConcurrency, resultSetHoldability));
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql) throws SQLException {
+        return new TransactionalPreparedStatement(this, super.prepareStatement(sql), sql);
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql, int autoGeneratedKeys) throws SQLException {
+        return new TransactionalPreparedStatement(this, super.prepareStatement(sql, autoGeneratedKeys), sql);
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql, int[] columnIndexes) throws SQLException {
+        return new TransactionalPreparedStatement(this, super.prepareStatement(sql, columnIndexes), sql);
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql, String[] columnNames) throws SQLException {
+        return new TransactionalPreparedStatement(this, super.prepareStatement(sql, columnNames), sql);
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency) throws SQLException {
+        return new TransactionalPreparedStatement(this,
+                super.prepareStatement(sql, resultSetType, resultSetConcurrency), sql);
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency, int resultSetHoldability) throws SQLException {
+        return new TransactionalPreparedStatement(this,
+                super.prepareStatement(sql, resultSetType, resultSetConcurrency, resultSetHoldability), sql);
+    }
+
+    // Note: Stored procedures may write whatever they execute.
+
+    @Override
+    public CallableStatement prepareCall(String sql) throws SQLException {
+        markWritten();
+        return new TransactionalCallableStatement(this, super.prepareCall(sql), sql);
+    }
+
+    @Override
+    public CallableStatement prepareCall(String sql, int resultSetType, int resultSetConcurrency) throws SQLException {
+        markWritten();
+        return new TransactionalCallableStatement(this,
+                super.prepareCall(sql, resultSetType, resultSetConcurrency), sql);
+    }
+
+    @Override
+    public CallableStatement prepareCall(String sql, int resultSetType, int resultSetConcurrency, int resultSetHoldability) throws SQLException {
+        markWritten();
+        return new TransactionalCallableStatement(this,
+                super.prepareCall(sql, resultSetType, resultSetConcurrency, resultSetHoldability), sql);
+    }
+
+    // -- Other ways to reach the database
+
+    @Override
+    public Savepoint setSavepoint() throws SQLException {
+        markUsed();
+        return super.setSavepoint();
+    }
+
+    @Override
+    public Savepoint setSavepoint(String name) throws SQLException {
+        markUsed();
+        return super.setSavepoint(name);
+    }
+
+    // -- Ending the transaction, left to its own thread
+
+    @Override
+    public void commit() throws SQLException {
+        checkWritable();
+        super.commit();
+    }
+
+    @Override
+    public void rollback() throws SQLException {
+        checkWritable();
+        super.rollback();
+    }
+
+    @Override
+    public void rollback(Savepoint savepoint) throws SQLException {
+        checkWritable();
+        super.rollback(savepoint);
+    }
+
+    @Override
+    public void setAutoCommit(boolean autoCommit) throws SQLException {
+        checkWritable();
+        super.setAutoCommit(autoCommit);
+    }
+
+    @Override
+    public DatabaseMetaData getMetaData() throws SQLException {
+        markUsed();
+        return super.getMetaData();
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        // the caller gets around the tracking
+        markWritten();
+        return super.unwrap(iface);
+    }
+
+    // -- Called by the statements
+
+    StatementRecorder getRecorder() {
+        return context.getRecorder();
+    }
+
+    /**
+     * Limit the statement about to execute to the time left to the transaction, if it has a timeout.
+     */
+    void applyTimeout(Statement statement) throws SQLException {
+        TransactionDeadline deadline = context.getDeadline();
+        if (deadline != null) {
+            statement.setQueryTimeout(deadline.remainingSeconds());
+        }
+    }
+
+    /**
+     * The statement now executing, null once done, to be cancelled if the transaction times out.
+     */
+    void executing(Statement statement) {
+        TransactionDeadline deadline = context.getDeadline();
+        if (deadline != null) {
+            deadline.executing(statement);
+        }
+    }
+
+    void setLastStatement(String sql) {
+        if (context.getActive() != null) {
+            context.getActive().setLastStatement(sql);
+        }
+    }
+
+    void markUsed() {
+        context.setUsed(true);
+    }
+
+    void markWritten() throws SQLException {
+        checkWritable();
+        context.setUsed(true);
+        context.setWritten(true);
+    }
+
+    private void checkWritable() throws SQLException {
+        if (task) {
+            throw new SQLException("Tasks sharing a transaction only read");
+        }
+    }
+
+}
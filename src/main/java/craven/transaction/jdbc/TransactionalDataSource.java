@@ -3,10 +3,10 @@ package craven.transaction.jdbc;
 
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.concurrent.locks.ReentrantLock;
 
 import javax.sql.DataSource;
 
-import craven.datasource.DelegatingConnection;
 import craven.datasource.DelegatingDataSource;
 import craven.transaction.Status;
 
@@ -42,50 +42,50 @@ public class TransactionalDataSource extends DelegatingDataSource {
     }
 
     private Connection getConnection(ConnectionProvider connectionProvider) throws SQLException {
+        if (transactionManager.isDetachedTask()) {
+            throw new SQLException("Task is detached from its transaction");
+        }
+
         if (transactionManager.getStatus() != Status.NO_TRANSACTION) {
-            return new TransactionalConnection(transactionManager.getTransactionalConnection());
+            JdbcTransactionContext context = transactionManager.getTransactionalContext();
+            ReentrantLock lock = context.getSharedLock();
+            if (lock == null) {
+                Connection connection = transactionManager.getTransactionalConnection();
+                return new TransactionalConnection(connection, context);
+            }
+            return getSharedConnection(context, lock);
         }
         else {
             return connectionProvider.get();
         }
     }
 
-    private static interface ConnectionProvider {
-        Connection get() throws SQLException;
-    }
-
-    private static class TransactionalConnection extends DelegatingConnection {
-
-        private final Connection connection;
-
-        private boolean closed = false;
-
-        public TransactionalConnection(Connection connection) {
-            this.connection = connection;
-        }
-
-        @Override
-        protected Connection delegate() {
-            return connection;
-        }
-
-        @Override
-        protected void checkOpen() throws SQLException {
-            if (closed) {
-                throw new SQLException("Connection is closed.");
+    /**
+     * The threads sharing the transaction take turns on its connection, each holds it until closing the connection
+     * handed out.
+     */
+    private Connection getSharedConnection(JdbcTransactionContext context, ReentrantLock lock) throws SQLException {
+        lock.lock();
+        boolean held = false;
+        try {
+            if (context.isEnded()) {
+                throw new SQLException("Transaction has ended.");
             }
+            Connection connection = transactionManager.getTransactionalConnection();
+            TransactionalConnection shared =
+                    new TransactionalConnection(connection, context, lock, transactionManager.isSharedTask());
+            held = true;
+            return shared;
         }
-
-        @Override
-        public void close() {
-            closed = true;
-        }
-
-        @Override
-        public boolean isClosed() {
-            return closed;
+        finally {
+            if (!held) {
+                lock.unlock();
+            }
         }
+    }
 
+    private static interface ConnectionProvider {
+        Connection get() throws SQLException;
     }
 
 }
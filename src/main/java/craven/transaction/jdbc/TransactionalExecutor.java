@@ -0,0 +1,185 @@
+package craven.transaction.jdbc;
+
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import craven.transaction.Status;
+
+/**
+ * Runs the tasks submitted within a transaction on the threads of another executor service with the transaction,
+ * so that the work around the database calls of a transaction can run in parallel without a connection per task.
+ *
+ * In {@link Mode#SHARED} mode the tasks join the transaction to read: they take turns on its connection, each one
+ * holding it from getting a connection of the {@link TransactionalDataSource} until closing it, and they can neither
+ * write nor end the transaction. Once tasks were submitted, the thread of the transaction takes its turn as well with
+ * the connections it gets. Since the tasks would wait for it, the thread of the transaction cannot submit tasks or wait
+ * for them with {@link Future#get()} or {@link #invokeAny(Collection)} while it has a connection open, these fail with
+ * an IllegalStateException. The transaction ends as soon as the tasks are done with the connection, the tasks that
+ * outlive it can no longer get the connection.
+ *
+ * In {@link Mode#DETACHED} mode the tasks run outside of any transaction and cannot get a connection of the
+ * {@link TransactionalDataSource}, for the work that does not need the database.
+ *
+ * Tasks submitted outside of a transaction run as they are, those submitted while the transaction ends are rejected.
+ */
+public class TransactionalExecutor extends AbstractExecutorService {
+
+    public static enum Mode {
+        SHARED,
+        DETACHED,
+    }
+
+    private final JdbcTransactionManager transactionManager;
+    private final ExecutorService executor;
+    private final Mode mode;
+
+    public TransactionalExecutor(JdbcTransactionManager transactionManager, ExecutorService executor, Mode mode) {
+        this.transactionManager = transactionManager;
+        this.executor = executor;
+        this.mode = mode;
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        if (transactionManager.getStatus() == Status.NO_TRANSACTION) {
+            executor.execute(command);
+            return;
+        }
+
+        Object transaction = null;
+        if (mode == Mode.SHARED) {
+            transaction = transactionManager.shareTransaction();
+            if (transaction == null) {
+                throw new RejectedExecutionException("Transaction is not active, status " + transactionManager.getStatus());
+            }
+        }
+
+        executor.execute(new TransactionalTask(transaction, command));
+    }
+
+    @Override
+    protected <T> RunnableFuture<T> newTaskFor(Runnable runnable, T value) {
+        return new TransactionalFuture<T>(Executors.callable(runnable, value));
+    }
+
+    @Override
+    protected <T> RunnableFuture<T> newTaskFor(Callable<T> callable) {
+        return new TransactionalFuture<T>(callable);
+    }
+
+    @Override
+    public <T> T invokeAny(Collection<? extends Callable<T>> tasks) throws InterruptedException, ExecutionException {
+        checkWaiting();
+        return super.invokeAny(tasks);
+    }
+
+    @Override
+    public <T> T invokeAny(Collection<? extends Callable<T>> tasks, long timeout, TimeUnit unit)
+            throws InterruptedException, ExecutionException, TimeoutException {
+        checkWaiting();
+        return super.invokeAny(tasks, timeout, unit);
+    }
+
+    private void checkWaiting() {
+        if (transactionManager.holdsSharedConnection()) {
+            throw new IllegalStateException("Connection of the transaction still open, close it before waiting for tasks");
+        }
+    }
+
+    // --
+
+    @Override
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        return executor.shutdownNow();
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return executor.isShutdown();
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return executor.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return executor.awaitTermination(timeout, unit);
+    }
+
+    /**
+     * The future of a task, that fails instead of waiting for the tasks that wait for the current thread.
+     */
+    private final class TransactionalFuture<T> extends FutureTask<T> {
+
+        TransactionalFuture(Callable<T> callable) {
+            super(callable);
+        }
+
+        @Override
+        public T get() throws InterruptedException, ExecutionException {
+            if (!isDone()) {
+                checkWaiting();
+            }
+            return super.get();
+        }
+
+        @Override
+        public T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+            if (!isDone()) {
+                checkWaiting();
+            }
+            return super.get(timeout, unit);
+        }
+
+    }
+
+    /**
+     * A task run in the shared transaction, or detached from the transaction if null.
+     */
+    private final class TransactionalTask implements Runnable {
+
+        private final Object transaction;
+        private final Runnable command;
+
+        TransactionalTask(Object transaction, Runnable command) {
+            this.transaction = transaction;
+            this.command = command;
+        }
+
+        @Override
+        public void run() {
+            Object previous = transactionManager.attach(transaction);
+            try {
+                command.run();
+            }
+            finally {
+                transactionManager.detach(previous);
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,353 @@
+package craven.transaction.jdbc;
+
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Calendar;
+
+import craven.datasource.DelegatingPreparedStatement;
+
+/**
+ * A prepared statement created on a {@link TransactionalConnection}, reports the statements that may write and
+ * records the executions if enabled.
+ *
+ * Only the values of the common setters are recorded, parameters set as streams, LOBs or other types show as null.
+ */
+class TransactionalPreparedStatement extends DelegatingPreparedStatement {
+
+    private final TransactionalConnection connection;
+    private final PreparedStatement statement;
+    private final String sql;
+    private final boolean query;
+
+    // null unless statements are recorded
+    private final StatementRecorder recorder;
+    private Object[] parameters;
+    private int parameterCount = 0;
+    private int batchSize = 0;
+
+    TransactionalPreparedStatement(TransactionalConnection connection, PreparedStatement statement, String sql) throws SQLException {
+        this.connection = connection;
+        this.statement = statement;
+        this.sql = sql;
+        this.query = TransactionalStatement.isQuery(sql);
+        this.recorder = connection.getRecorder();
+        connection.markUsed();
+    }
+
+    @Override
+    protected PreparedStatement delegate() {
+        return statement;
+    }
+
+    @Override
+    protected void checkOpen() throws SQLException {
+        connection.checkOpen();
+    }
+
+    // --
+
+    @Override
+    public ResultSet executeQuery() throws SQLException {
+        long id = begin(0);
+        try {
+            ResultSet rs = super.executeQuery();
+            end(id);
+            return rs;
+        }
+        finally {
+            connection.executing(null);
+        }
+    }
+
+    @Override
+    public int executeUpdate() throws SQLException {
+        connection.markWritten();
+        long id = begin(0);
+        try {
+            int count = super.executeUpdate();
+            end(id);
+            return count;
+        }
+        finally {
+            connection.executing(null);
+        }
+    }
+
+    @Override
+    public boolean execute() throws SQLException {
+        if (!query) {
+            connection.markWritten();
+        }
+        long id = begin(0);
+        try {
+            boolean result = super.execute();
+            end(id);
+            return result;
+        }
+        finally {
+            connection.executing(null);
+        }
+    }
+
+    @Override
+    public void addBatch() throws SQLException {
+        super.addBatch();
+        batchSize++;
+    }
+
+    @Override
+    public void clearBatch() throws SQLException {
+        super.clearBatch();
+        batchSize = 0;
+    }
+
+    @Override
+    public int[] executeBatch() throws SQLException {
+        connection.markWritten();
+        // the parameters of the last row added
+        long id = begin(batchSize);
+        batchSize = 0;
+        try {
+            int[] counts = super.executeBatch();
+            end(id);
+            return counts;
+        }
+        finally {
+            connection.executing(null);
+        }
+    }
+
+    /**
+     * Start an execution, limited to the time left to the transaction rather than when the statement was prepared.
+     */
+    private long begin(int batchSize) throws SQLException {
+        connection.setLastStatement(sql);
+        connection.applyTimeout(statement);
+        connection.executing(statement);
+        return (recorder != null) ? recorder.begin(sql, parameters, parameterCount, batchSize) : -1;
+    }
+
+    /**
+     * Record a successful execution, one never ended is recorded as failed.
+     */
+    private void end(long id) {
+        if (recorder != null) {
+            recorder.end(id);
+        }
+    }
+
+    // -- Record the bind parameters
+
+    @Override
+    public void clearParameters() throws SQLException {
+        super.clearParameters();
+        if (parameters != null) {
+            Arrays.fill(parameters, 0, parameterCount, null);
+            parameterCount = 0;
+        }
+    }
+
+    @Override
+    public void setNull(int parameterIndex, int sqlType) throws SQLException {
+        super.setNull(parameterIndex, sqlType);
+        if (recorder != null) {
+            bind(parameterIndex, null);
+        }
+    }
+
+    @Override
+    public void setNull(int parameterIndex, int sqlType, String typeName) throws SQLException {
+        super.setNull(parameterIndex, sqlType, typeName);
+        if (recorder != null) {
+            bind(parameterIndex, null);
+        }
+    }
+
+    @Override
+    public void setBoolean(int parameterIndex, boolean x) throws SQLException {
+        super.setBoolean(parameterIndex, x);
+        if (recorder != null) {
+            bind(parameterIndex, x);
+        }
+    }
+
+    @Override
+    public void setByte(int parameterIndex, byte x) throws SQLException {
+        super.setByte(parameterIndex, x);
+        if (recorder != null) {
+            bind(parameterIndex, x);
+        }
+    }
+
+    @Override
+    public void setShort(int parameterIndex, short x) throws SQLException {
+        super.setShort(parameterIndex, x);
+        if (recorder != null) {
+            bind(parameterIndex, x);
+        }
+    }
+
+    @Override
+    public void setInt(int parameterIndex, int x) throws SQLException {
+        super.setInt(parameterIndex, x);
+        if (recorder != null) {
+            bind(parameterIndex, x);
+        }
+    }
+
+    @Override
+    public void setLong(int parameterIndex, long x) throws SQLException {
+        super.setLong(parameterIndex, x);
+        if (recorder != null) {
+            bind(parameterIndex, x);
+        }
+    }
+
+    @Override
+    public void setFloat(int parameterIndex, float x) throws SQLException {
+        super.setFloat(parameterIndex, x);
+        if (recorder != null) {
+            bind(parameterIndex, x);
+        }
+    }
+
+    @Override
+    public void setDouble(int parameterIndex, double x) throws SQLException {
+        super.setDouble(parameterIndex, x);
+        if (recorder != null) {
+            bind(parameterIndex, x);
+        }
+    }
+
+    @Override
+    public void setBigDecimal(int parameterIndex, BigDecimal x) throws SQLException {
+        super.setBigDecimal(parameterIndex, x);
+        if (recorder != null) {
+            bind(parameterIndex, x);
+        }
+    }
+
+    @Override
+    public void setString(int parameterIndex, String x) throws SQLException {
+        super.setString(parameterIndex, x);
+        if (recorder != null) {
+            bind(parameterIndex, x);
+        }
+    }
+
+    @Override
+    public void setNString(int parameterIndex, String value) throws SQLException {
+        super.setNString(parameterIndex, value);
+        if (recorder != null) {
+            bind(parameterIndex, value);
+        }
+    }
+
+    @Override
+    public void setBytes(int parameterIndex, byte[] x) throws SQLException {
+        super.setBytes(parameterIndex, x);
+        if (recorder != null) {
+            bind(parameterIndex, x);
+        }
+    }
+
+    @Override
+    public void setDate(int parameterIndex, Date x) throws SQLException {
+        super.setDate(parameterIndex, x);
+        if (recorder != null) {
+            bind(parameterIndex, x);
+        }
+    }
+
+    @Override
+    public void setDate(int parameterIndex, Date x, Calendar cal) throws SQLException {
+        super.setDate(parameterIndex, x, cal);
+        if (recorder != null) {
+            bind(parameterIndex, x);
+        }
+    }
+
+    @Override
+    public void setTime(int parameterIndex, Time x) throws SQLException {
+        super.setTime(parameterIndex, x);
+        if (recorder != null) {
+            bind(parameterIndex, x);
+        }
+    }
+
+    @Override
+    public void setTime(int parameterIndex, Time x, Calendar cal) throws SQLException {
+        super.setTime(parameterIndex, x, cal);
+        if (recorder != null) {
+            bind(parameterIndex, x);
+        }
+    }
+
+    @Override
+    public void setTimestamp(int parameterIndex, Timestamp x) throws SQLException {
+        super.setTimestamp(parameterIndex, x);
+        if (recorder != null) {
+            bind(parameterIndex, x);
+        }
+    }
+
+    @Override
+    public void setTimestamp(int parameterIndex, Timestamp x, Calendar cal) throws SQLException {
+        super.setTimestamp(parameterIndex, x, cal);
+        if (recorder != null) {
+            bind(parameterIndex, x);
+        }
+    }
+
+    @Override
+    public void setObject(int parameterIndex, Object x) throws SQLException {
+        super.setObject(parameterIndex, x);
+        if (recorder != null) {
+            bind(parameterIndex, x);
+        }
+    }
+
+    @Override
+    public void setObject(int parameterIndex, Object x, int targetSqlType) throws SQLException {
+        super.setObject(parameterIndex, x, targetSqlType);
+        if (recorder != null) {
+            bind(parameterIndex, x);
+        }
+    }
+
+    @Override
+    public void setObject(int parameterIndex, Object x, int targetSqlType, int scaleOrLength) throws SQLException {
+        super.setObject(parameterIndex, x, targetSqlType, scaleOrLength);
+        if (recorder != null) {
+            bind(parameterIndex, x);
+        }
+    }
+
+    private void bind(int parameterIndex, Object value) {
+        if (parameterIndex < 1 || parameterIndex > StatementRecorder.MAX_PARAMETERS) {
+            return;
+        }
+        if (parameters == null) {
+            parameters = new Object[StatementRecorder.MAX_PARAMETERS];
+        }
+        parameters[parameterIndex - 1] = value;
+        parameterCount = Math.max(parameterCount, parameterIndex);
+    }
+
+    // --
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        checkOpen();
+        return connection;
+    }
+
+}
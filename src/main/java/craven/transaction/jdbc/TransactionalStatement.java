@@ -0,0 +1,253 @@
+package craven.transaction.jdbc;
+
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import craven.datasource.DelegatingStatement;
+
+/**
+ * A statement created on a {@link TransactionalConnection}, reports the statements that may write and records the
+ * executions if enabled.
+ */
+class TransactionalStatement extends DelegatingStatement {
+
+    private final TransactionalConnection connection;
+    private final Statement statement;
+
+    // null unless statements are recorded
+    private final StatementRecorder recorder;
+    private String batchSql;
+    private int batchSize = 0;
+
+    TransactionalStatement(TransactionalConnection connection, Statement statement) throws SQLException {
+        this.connection = connection;
+        this.statement = statement;
+        this.recorder = connection.getRecorder();
+        connection.markUsed();
+    }
+
+    @Override
+    protected Statement delegate() {
+        return statement;
+    }
+
+    @Override
+    protected void checkOpen() throws SQLException {
+        connection.checkOpen();
+    }
+
+    // --
+
+    @Override
+    public ResultSet executeQuery(String sql) throws SQLException {
+        long id = begin(sql, 0);
+        try {
+            ResultSet rs = super.executeQuery(sql);
+            end(id);
+            return rs;
+        }
+        finally {
+            connection.executing(null);
+        }
+    }
+
+    @Override
+    public int executeUpdate(String sql) throws SQLException {
+        connection.markWritten();
+        long id = begin(sql, 0);
+        try {
+            int count = super.executeUpdate(sql);
+            end(id);
+            return count;
+        }
+        finally {
+            connection.executing(null);
+        }
+    }
+
+    @Override
+    public int executeUpdate(String sql, int autoGeneratedKeys) throws SQLException {
+        connection.markWritten();
+        long id = begin(sql, 0);
+        try {
+            int count = super.executeUpdate(sql, autoGeneratedKeys);
+            end(id);
+            return count;
+        }
+        finally {
+            connection.executing(null);
+        }
+    }
+
+    @Override
+    public int executeUpdate(String sql, int[] columnIndexes) throws SQLException {
+        connection.markWritten();
+        long id = begin(sql, 0);
+        try {
+            int count = super.executeUpdate(sql, columnIndexes);
+            end(id);
+            return count;
+        }
+        finally {
+            connection.executing(null);
+        }
+    }
+
+    @Override
+    public int executeUpdate(String sql, String[] columnNames) throws SQLException {
+        connection.markWritten();
+        long id = begin(sql, 0);
+        try {
+            int count = super.executeUpdate(sql, columnNames);
+            end(id);
+            return count;
+        }
+        finally {
+            connection.executing(null);
+        }
+    }
+
+    @Override
+    public boolean execute(String sql) throws SQLException {
+        markWrittenUnlessQuery(sql);
+        long id = begin(sql, 0);
+        try {
+            boolean result = super.execute(sql);
+            end(id);
+            return result;
+        }
+        finally {
+            connection.executing(null);
+        }
+    }
+
+    @Override
+    public boolean execute(String sql, int autoGeneratedKeys) throws SQLException {
+        markWrittenUnlessQuery(sql);
+        long id = begin(sql, 0);
+        try {
+            boolean result = super.execute(sql, autoGeneratedKeys);
+            end(id);
+            return result;
+        }
+        finally {
+            connection.executing(null);
+        }
+    }
+
+    @Override
+    public boolean execute(String sql, int[] columnIndexes) throws SQLException {
+        markWrittenUnlessQuery(sql);
+        long id = begin(sql, 0);
+        try {
+            boolean result = super.execute(sql, columnIndexes);
+            end(id);
+            return result;
+        }
+        finally {
+            connection.executing(null);
+        }
+    }
+
+    @Override
+    public boolean execute(String sql, String[] columnNames) throws SQLException {
+        markWrittenUnlessQuery(sql);
+        long id = begin(sql, 0);
+        try {
+            boolean result = super.execute(sql, columnNames);
+            end(id);
+            return result;
+        }
+        finally {
+            connection.executing(null);
+        }
+    }
+
+    @Override
+    public void addBatch(String sql) throws SQLException {
+        super.addBatch(sql);
+        batchSql = sql;
+        batchSize++;
+    }
+
+    @Override
+    public void clearBatch() throws SQLException {
+        super.clearBatch();
+        batchSql = null;
+        batchSize = 0;
+    }
+
+    @Override
+    public int[] executeBatch() throws SQLException {
+        connection.markWritten();
+        long id = begin(batchSql, batchSize);
+        batchSql = null;
+        batchSize = 0;
+        try {
+            int[] counts = super.executeBatch();
+            end(id);
+            return counts;
+        }
+        finally {
+            connection.executing(null);
+        }
+    }
+
+    // --
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        checkOpen();
+        return connection;
+    }
+
+    /**
+     * Start an execution, limited to the time left to the transaction; the statement is no longer executing once the
+     * execution returns or throws, see {@link TransactionalConnection#executing(Statement)}.
+     */
+    private long begin(String sql, int batchSize) throws SQLException {
+        connection.setLastStatement(sql);
+        connection.applyTimeout(statement);
+        connection.executing(statement);
+        return (recorder != null) ? recorder.begin(sql, null, 0, batchSize) : -1;
+    }
+
+    /**
+     * Record a successful execution, one never ended is recorded as failed.
+     */
+    private void end(long id) {
+        if (recorder != null) {
+            recorder.end(id);
+        }
+    }
+
+    private void markWrittenUnlessQuery(String sql) throws SQLException {
+        if (!isQuery(sql)) {
+            connection.markWritten();
+        }
+    }
+
+    /**
+     * Whether the statement is a plain query, anything else is assumed to write.
+     */
+    static boolean isQuery(String sql) {
+        if (sql == null) {
+            return false;
+        }
+
+        int start = 0;
+        int length = sql.length();
+        while (start < length && (Character.isWhitespace(sql.charAt(start)) || sql.charAt(start) == '(')) {
+            start++;
+        }
+
+        // Note: A WITH clause may wrap a data-modifying statement, treat it as a write.
+        return sql.regionMatches(true, start, "SELECT", 0, 6)
+                || sql.regionMatches(true, start, "VALUES", 0, 6)
+                || sql.regionMatches(true, start, "SHOW", 0, 4);
+    }
+
+}
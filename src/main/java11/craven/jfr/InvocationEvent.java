@@ -0,0 +1,25 @@
+package craven.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+@Name("craven.TransactionalInvocation")
+@Label("Transactional Invocation")
+@Description("Method run by the transaction interceptor, from its begin to its end with the propagation applied")
+@Category({ "Craven", "Transaction" })
+@Threshold("20 ms")
+class InvocationEvent extends Event {
+
+    @Label("Method")
+    String method;
+
+    @Label("Outcome")
+    @Description("committed or rolledback for a transaction of its own, joined for the transaction of the caller, "
+            + "released for a nested transaction, none without a transaction, or exception")
+    String outcome;
+
+}
@@ -0,0 +1,100 @@
+package craven.jfr;
+
+import java.lang.reflect.Method;
+
+import jdk.jfr.EventType;
+
+import craven.interceptor.Transactional;
+import craven.transaction.Status;
+
+/**
+ * Java 11 version of the class, emits the events when they are enabled in a running recording.
+ */
+public final class JfrEvents {
+
+    private static final EventType TRANSACTION = EventType.getEventType(TransactionEvent.class);
+    private static final EventType INVOCATION = EventType.getEventType(InvocationEvent.class);
+    private static final EventType STATEMENT = EventType.getEventType(StatementEvent.class);
+
+    private JfrEvents() {
+    }
+
+    public static boolean isAvailable() {
+        return true;
+    }
+
+    public static Object beginTransaction() {
+        if (!TRANSACTION.isEnabled()) {
+            return null;
+        }
+        TransactionEvent event = new TransactionEvent();
+        event.begin();
+        return event;
+    }
+
+    public static void endTransaction(Object event, String action, Status status, Transactional annotation) {
+        if (event == null) {
+            return;
+        }
+        TransactionEvent e = (TransactionEvent) event;
+        e.end();
+        if (e.shouldCommit()) {
+            e.action = action;
+            e.status = (status != null) ? status.name() : null;
+            if (annotation != null) {
+                e.propagation = annotation.propagation().name();
+                e.isolation = annotation.isolation().name();
+                e.readOnly = annotation.readOnly();
+            }
+            e.commit();
+        }
+    }
+
+    public static Object beginInvocation() {
+        if (!INVOCATION.isEnabled()) {
+            return null;
+        }
+        InvocationEvent event = new InvocationEvent();
+        event.begin();
+        return event;
+    }
+
+    public static void endInvocation(Object event, Method method, Object function, String outcome) {
+        if (event == null) {
+            return;
+        }
+        InvocationEvent e = (InvocationEvent) event;
+        e.end();
+        if (e.shouldCommit()) {
+            e.method = (method != null)
+                    ? method.getDeclaringClass().getName() + "." + method.getName()
+                    : function.getClass().getName();
+            e.outcome = outcome;
+            e.commit();
+        }
+    }
+
+    public static Object beginStatement() {
+        if (!STATEMENT.isEnabled()) {
+            return null;
+        }
+        StatementEvent event = new StatementEvent();
+        event.begin();
+        return event;
+    }
+
+    public static void endStatement(Object event, String fingerprint, long rows, boolean failed) {
+        if (event == null) {
+            return;
+        }
+        StatementEvent e = (StatementEvent) event;
+        e.end();
+        if (e.shouldCommit()) {
+            e.fingerprint = fingerprint;
+            e.rows = rows;
+            e.failed = failed;
+            e.commit();
+        }
+    }
+
+}
@@ -0,0 +1,28 @@
+package craven.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+@Name("craven.Statement")
+@Label("Statement")
+@Description("SQL statement executed through an instrumented data source")
+@Category({ "Craven", "JDBC" })
+@Threshold("10 ms")
+class StatementEvent extends Event {
+
+    @Label("Fingerprint")
+    @Description("SQL with literals replaced by placeholders")
+    String fingerprint;
+
+    @Label("Rows")
+    @Description("Update count or sum of the batch update counts, -1 for queries")
+    long rows;
+
+    @Label("Failed")
+    boolean failed;
+
+}
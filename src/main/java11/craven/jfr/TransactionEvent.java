@@ -0,0 +1,33 @@
+package craven.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+@Name("craven.Transaction")
+@Label("Transaction")
+@Description("Begin, commit or rollback of a transaction")
+@Category({ "Craven", "Transaction" })
+@Threshold("10 ms")
+class TransactionEvent extends Event {
+
+    @Label("Action")
+    String action;
+
+    @Label("Status")
+    @Description("Status the action left the transaction in")
+    String status;
+
+    @Label("Propagation")
+    String propagation;
+
+    @Label("Isolation")
+    String isolation;
+
+    @Label("Read Only")
+    boolean readOnly;
+
+}
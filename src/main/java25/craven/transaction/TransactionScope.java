@@ -0,0 +1,128 @@
+package craven.transaction;
+
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+
+/**
+ * Where the transaction managers keep the transaction of the current thread.
+ *
+ * Within {@link #run(Runnable)} each manager keeps its frame in the scope, bound with a scoped value, and the frames
+ * go away with the scope; elsewhere in a thread local, one frame per thread reused by each transaction the thread
+ * begins. Scopes suit many short-lived virtual threads, which then never populate a thread local.
+ */
+public final class TransactionScope {
+
+    private static final ScopedValue<Frames> FRAMES = ScopedValue.newInstance();
+
+    private TransactionScope() {
+    }
+
+    /**
+     * Whether the frames of the current thread are bound to a scope rather than the thread.
+     */
+    public static boolean isScoped() {
+        return scoped() != null;
+    }
+
+    /**
+     * Run the task with frames bound to a new scope, unless already in one. A transaction begun outside the scope
+     * is not visible inside it.
+     */
+    public static void run(Runnable task) {
+        if (scoped() != null) {
+            task.run();
+            return;
+        }
+        ScopedValue.where(FRAMES, new Frames()).run(task);
+    }
+
+    public static <V> V call(Callable<V> task) throws Exception {
+        if (scoped() != null) {
+            return task.call();
+        }
+        return ScopedValue.where(FRAMES, new Frames()).call(task::call);
+    }
+
+    static <T> Slot<T> newSlot() {
+        return new Slot<>();
+    }
+
+    /**
+     * The frames of the scope, null outside a scope or in a thread that inherited it, e.g. a forked subtask,
+     * which must not share the transactions of the thread that opened the scope.
+     */
+    private static Frames scoped() {
+        if (FRAMES.isBound()) {
+            Frames frames = FRAMES.get();
+            if (frames.owner == Thread.currentThread()) {
+                return frames;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The frame of one transaction manager, null until set.
+     */
+    static final class Slot<T> {
+
+        private final ThreadLocal<T> local = new ThreadLocal<>();
+
+        T get() {
+            Frames frames = scoped();
+            return (frames != null) ? frames.get(this) : local.get();
+        }
+
+        void set(T value) {
+            Frames frames = scoped();
+            if (frames != null) {
+                frames.set(this, value);
+            }
+            else {
+                local.set(value);
+            }
+        }
+
+    }
+
+    /**
+     * The frames of a scope by slot, only for the few managers used within the scope, which a linear search finds
+     * faster than a map.
+     */
+    private static final class Frames {
+
+        final Thread owner = Thread.currentThread();
+
+        private Slot<?>[] slots = new Slot<?>[2];
+        private Object[] values = new Object[2];
+        private int size = 0;
+
+        @SuppressWarnings("unchecked")
+        <T> T get(Slot<T> slot) {
+            for (int i = 0; i < size; i++) {
+                if (slots[i] == slot) {
+                    return (T) values[i];
+                }
+            }
+            return null;
+        }
+
+        <T> void set(Slot<T> slot, T value) {
+            for (int i = 0; i < size; i++) {
+                if (slots[i] == slot) {
+                    values[i] = value;
+                    return;
+                }
+            }
+            if (size == slots.length) {
+                slots = Arrays.copyOf(slots, 2 * size);
+                values = Arrays.copyOf(values, 2 * size);
+            }
+            slots[size] = slot;
+            values[size] = value;
+            size++;
+        }
+
+    }
+
+}
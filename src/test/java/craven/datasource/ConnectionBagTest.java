@@ -0,0 +1,164 @@
+package craven.datasource;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import craven.interceptor.TxIsolation;
+
+public class ConnectionBagTest {
+
+    private static final SessionState READ_ONLY = SessionState.of(true, TxIsolation.DEFAULT, true);
+
+    private JdbcDataSource h2;
+    private List<PoolEntry> entries;
+    private ExecutorService executor;
+
+    // whether the bag may ask the pool for new entries
+    private volatile boolean growing = true;
+
+    private final ConnectionBag bag = new ConnectionBag(new ConnectionBag.Listener() {
+        @Override public boolean addBagItem(int waiting) {
+            return growing;
+        }
+    });
+
+    @Before
+    public void setUp() {
+        h2 = new JdbcDataSource();
+        h2.setURL("jdbc:h2:mem:bag;DB_CLOSE_DELAY=-1");
+        entries = new ArrayList<PoolEntry>();
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+        for (PoolEntry entry : entries) {
+            JdbcUtils.closeConnection(entry.getConnection());
+        }
+    }
+
+    @Test
+    public void threadBorrowsWhatItReturnedLast() throws Exception {
+        PoolEntry first = add();
+        PoolEntry second = add();
+
+        assertSame(first, borrow(SessionState.DEFAULT));
+        assertSame(second, borrow(SessionState.DEFAULT));
+        bag.requite(first);
+        bag.requite(second);
+
+        // the shared list would give the first one
+        assertSame(second, borrow(SessionState.DEFAULT));
+        assertSame(first, borrow(SessionState.DEFAULT));
+    }
+
+    @Test
+    public void otherThreadsBorrowFromTheSharedList() throws Exception {
+        PoolEntry entry = add();
+        assertSame(entry, borrow(SessionState.DEFAULT));
+        bag.requite(entry);
+
+        Future<PoolEntry> borrowed = executor.submit(new Callable<PoolEntry>() {
+            @Override public PoolEntry call() throws InterruptedException {
+                return borrow(SessionState.DEFAULT);
+            }
+        });
+        assertSame(entry, borrowed.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void returnedEntryIsHandedOffToWaiter() throws Exception {
+        PoolEntry entry = add();
+        assertSame(entry, borrow(SessionState.DEFAULT));
+
+        Future<PoolEntry> waiter = executor.submit(new Callable<PoolEntry>() {
+            @Override public PoolEntry call() throws InterruptedException {
+                return bag.borrow(SessionState.DEFAULT, 10, TimeUnit.SECONDS);
+            }
+        });
+        awaitWaiters(1);
+
+        bag.requite(entry);
+        assertSame(entry, waiter.get(5, TimeUnit.SECONDS));
+        assertEquals(PoolEntry.IN_USE, entry.getState());
+    }
+
+    @Test
+    public void addedEntryIsHandedOffToWaiter() throws Exception {
+        Future<PoolEntry> waiter = executor.submit(new Callable<PoolEntry>() {
+            @Override public PoolEntry call() throws InterruptedException {
+                return bag.borrow(SessionState.DEFAULT, 10, TimeUnit.SECONDS);
+            }
+        });
+        awaitWaiters(1);
+
+        PoolEntry entry = add();
+        assertSame(entry, waiter.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void borrowTimesOut() throws Exception {
+        PoolEntry entry = add();
+        assertSame(entry, borrow(SessionState.DEFAULT));
+
+        assertNull(bag.borrow(SessionState.DEFAULT, 50, TimeUnit.MILLISECONDS));
+        assertEquals(0, bag.getWaitingThreadCount());
+    }
+
+    @Test
+    public void fullPoolLendsEntryOfOtherSessionState() throws Exception {
+        PoolEntry entry = add();
+
+        growing = false;
+        assertSame(entry, bag.borrow(READ_ONLY, 0, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void reservedEntryIsNotBorrowed() throws Exception {
+        PoolEntry entry = add();
+        assertTrue(bag.reserve(entry));
+        assertNull(bag.borrow(SessionState.DEFAULT, 0, TimeUnit.MILLISECONDS));
+
+        bag.unreserve(entry);
+        assertSame(entry, borrow(SessionState.DEFAULT));
+    }
+
+    // --
+
+    private PoolEntry add() throws SQLException {
+        PoolEntry entry = new PoolEntry(h2.getConnection(), 0, StandardSessionDialect.JDBC);
+        entries.add(entry);
+        bag.add(entry);
+        return entry;
+    }
+
+    private PoolEntry borrow(SessionState sessionState) throws InterruptedException {
+        return bag.borrow(sessionState, 1, TimeUnit.SECONDS);
+    }
+
+    private void awaitWaiters(int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (bag.getWaitingThreadCount() < count && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(count, bag.getWaitingThreadCount());
+    }
+
+}
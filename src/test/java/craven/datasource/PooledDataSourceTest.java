@@ -0,0 +1,96 @@
+package craven.datasource;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import org.junit.Test;
+
+public class PooledDataSourceTest {
+
+    private PooledDataSource pool;
+
+    @After
+    public void tearDown() {
+        if (pool != null) {
+            pool.close();
+        }
+    }
+
+    @Test
+    public void statementsGiveBackTheHandedOutConnection() throws SQLException {
+        pool = pool(PoolConfig.maxSize(1).minIdle(0).build());
+
+        Connection connection = pool.getConnection();
+        try {
+            assertSame(connection, connection.createStatement().getConnection());
+            assertSame(connection, connection.prepareStatement("select 1").getConnection());
+            assertSame(connection, connection.prepareCall("call 1").getConnection());
+        }
+        finally {
+            connection.close();
+        }
+    }
+
+    @Test
+    public void cachedStatementsGiveBackTheHandedOutConnection() throws SQLException {
+        pool = pool(PoolConfig.maxSize(1).minIdle(0).statementCacheSize(4).build());
+
+        Connection connection = pool.getConnection();
+        try {
+            PreparedStatement statement = connection.prepareStatement("select 1");
+            statement.close();
+            statement = connection.prepareStatement("select 1");
+            assertSame(connection, statement.getConnection());
+            statement.close();
+        }
+        finally {
+            connection.close();
+        }
+        assertEquals(1, pool.getStatementCacheMetrics().getHitCount());
+    }
+
+    @Test
+    public void closingTheConnectionOfAStatementReturnsItToThePool() throws SQLException {
+        pool = pool(PoolConfig.maxSize(1).minIdle(0).build());
+
+        Connection connection = pool.getConnection();
+        Statement statement = connection.createStatement();
+        statement.getConnection().close();
+
+        try {
+            statement.executeQuery("select 1");
+            fail();
+        }
+        catch (SQLException e) {
+            assertEquals("Connection is closed.", e.getMessage());
+        }
+
+        // the physical connection went back to the pool open
+        Connection next = pool.getConnection();
+        try {
+            assertFalse(next.isClosed());
+            next.createStatement().executeQuery("select 1");
+        }
+        finally {
+            next.close();
+        }
+    }
+
+    // --
+
+    private static PooledDataSource pool(PoolConfig config) {
+        JdbcDataSource h2 = new JdbcDataSource();
+        h2.setURL("jdbc:h2:mem:pool;DB_CLOSE_DELAY=-1");
+        return new PooledDataSource(h2, config);
+    }
+
+}
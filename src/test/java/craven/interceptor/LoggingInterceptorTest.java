@@ -0,0 +1,143 @@
+package craven.interceptor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+import org.slf4j.Logger;
+
+public class LoggingInterceptorTest {
+
+    private final Queue<String> logged = new ConcurrentLinkedQueue<String>();
+
+    @Test
+    public void parametersAreLoggedAsPassed() {
+        LoggingInterceptor interceptor = builder().build();
+
+        final List<String> list = new ArrayList<String>();
+        list.add("a");
+        interceptor.apply("target", "add", new Object[] { list, 1 }, new Callable<Boolean>() {
+            @Override public Boolean call() {
+                return list.add("b");
+            }
+        });
+
+        assertEquals("[target] add(<[a]>, <1>) → <true>", logged.poll());
+    }
+
+    @Test
+    public void parametersAreTruncated() {
+        LoggingInterceptor interceptor = builder().maxParameterLength(3).build();
+
+        interceptor.apply("target", "m", new Object[] { "abcdef", new StringBuilder("ghijkl") }, new Callable<Void>() {
+            @Override public Void call() {
+                return null;
+            }
+        });
+
+        assertEquals("[tar...] m(<abc...>, <ghi...>)", logged.poll());
+    }
+
+    @Test
+    public void asyncWriterWakesUpWhenIdle() throws InterruptedException {
+        LoggingInterceptor interceptor = builder().async(16).build();
+        try {
+            for (int i = 0; i < 3; i++) {
+                call(interceptor, i);
+                waitForLogged(i + 1);
+                // the writer parks meanwhile
+                Thread.sleep(20);
+            }
+            assertEquals(0, interceptor.getDroppedCount());
+        }
+        finally {
+            interceptor.close();
+        }
+    }
+
+    @Test
+    public void asyncCallsAreLoggedOrDropped() throws InterruptedException {
+        final LoggingInterceptor interceptor = builder().async(64).build();
+        final AtomicLong calls = new AtomicLong();
+        final CountDownLatch started = new CountDownLatch(4);
+
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int t = 0; t < 4; t++) {
+            Thread thread = new Thread() {
+                @Override public void run() {
+                    started.countDown();
+                    for (int i = 0; i < 20000; i++) {
+                        call(interceptor, i);
+                        calls.incrementAndGet();
+                    }
+                }
+            };
+            thread.start();
+            threads.add(thread);
+        }
+
+        // closing while the producers run, every call claimed before is logged
+        started.await();
+        Thread.sleep(5);
+        interceptor.close();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertTrue(logged.size() > 0);
+        assertEquals(calls.get(), logged.size() + interceptor.getDroppedCount());
+    }
+
+    // --
+
+    private LoggingInterceptor.Builder builder() {
+        return new LoggingInterceptor.Builder().logger(recordingLogger());
+    }
+
+    private static void call(LoggingInterceptor interceptor, final int i) {
+        interceptor.apply("target", "m", new Object[] { i }, new Callable<Integer>() {
+            @Override public Integer call() {
+                return i;
+            }
+        });
+    }
+
+    private void waitForLogged(int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (logged.size() < count && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertTrue("logged " + logged.size() + " of " + count, logged.size() >= count);
+    }
+
+    /**
+     * A logger with debug enabled, keeping the debug messages.
+     */
+    private Logger recordingLogger() {
+        return (Logger) Proxy.newProxyInstance(Logger.class.getClassLoader(), new Class<?>[] { Logger.class },
+                new InvocationHandler() {
+                    @Override public Object invoke(Object proxy, Method method, Object[] args) {
+                        if (method.getName().equals("isDebugEnabled")) {
+                            return true;
+                        }
+                        if (method.getName().equals("debug") && args.length == 1) {
+                            logged.add((String) args[0]);
+                        }
+                        return (method.getReturnType() == boolean.class) ? false : null;
+                    }
+                });
+    }
+
+}
@@ -0,0 +1,159 @@
+package craven.interceptor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.Callable;
+
+import javax.sql.DataSource;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.Before;
+import org.junit.Test;
+
+import craven.transaction.jdbc.JdbcTransactionManager;
+import craven.transaction.jdbc.TransactionalDataSource;
+
+public class NestedPropagationTest {
+
+    private static final Transactional REQUIRED = TxConfig.propagation(TxPropagation.REQUIRED).build();
+    private static final Transactional NESTED = TxConfig.propagation(TxPropagation.NESTED).build();
+
+    private JdbcTransactionManager tm;
+    private DataSource dataSource;
+    private TransactionInterceptor interceptor;
+
+    @Before
+    public void setUp() throws SQLException {
+        JdbcDataSource h2 = new JdbcDataSource();
+        h2.setURL("jdbc:h2:mem:nested;DB_CLOSE_DELAY=-1");
+
+        Connection connection = h2.getConnection();
+        try {
+            connection.createStatement().execute("drop table if exists t");
+            connection.createStatement().execute("create table t(id int)");
+        }
+        finally {
+            connection.close();
+        }
+
+        tm = new JdbcTransactionManager(h2);
+        dataSource = new TransactionalDataSource(tm);
+        interceptor = new TransactionInterceptor(tm);
+    }
+
+    @Test
+    public void failedNestedCallKeepsOuterWork() throws Exception {
+        interceptor.apply(new Callable<Void>() {
+            @Override public Void call() throws Exception {
+                insert(1);
+                try {
+                    interceptor.apply(NESTED, new Callable<Void>() {
+                        @Override public Void call() throws Exception {
+                            // joins the nested transaction, marks it as rollback only when failing
+                            return interceptor.apply(REQUIRED, new Callable<Void>() {
+                                @Override public Void call() throws Exception {
+                                    insert(2);
+                                    throw new IllegalStateException("nested");
+                                }
+                            });
+                        }
+                    });
+                    fail();
+                }
+                catch (IllegalStateException e) {
+                    assertEquals("nested", e.getMessage());
+                }
+                insert(3);
+                return null;
+            }
+        });
+
+        assertEquals(2, count());
+        assertEquals(0, count(2));
+    }
+
+    @Test
+    public void failedJoinedCallRollsBackOuterWork() throws Exception {
+        interceptor.apply(new Callable<Void>() {
+            @Override public Void call() throws Exception {
+                insert(1);
+                try {
+                    interceptor.apply(REQUIRED, new Callable<Void>() {
+                        @Override public Void call() throws Exception {
+                            insert(2);
+                            throw new IllegalStateException("joined");
+                        }
+                    });
+                    fail();
+                }
+                catch (IllegalStateException e) {
+                    assertEquals("joined", e.getMessage());
+                }
+                return null;
+            }
+        });
+
+        assertEquals(0, count());
+    }
+
+    @Test
+    public void nestedRollbackKeepsEarlierMark() throws Exception {
+        interceptor.apply(new Callable<Void>() {
+            @Override public Void call() throws Exception {
+                insert(1);
+                tm.setRollbackOnly();
+                try {
+                    interceptor.apply(NESTED, new Callable<Void>() {
+                        @Override public Void call() throws Exception {
+                            throw new IllegalStateException("nested");
+                        }
+                    });
+                    fail();
+                }
+                catch (IllegalStateException e) {
+                    assertEquals("nested", e.getMessage());
+                }
+                return null;
+            }
+        });
+
+        assertEquals(0, count());
+    }
+
+    // --
+
+    private void insert(int id) throws SQLException {
+        Connection connection = dataSource.getConnection();
+        try {
+            connection.createStatement().executeUpdate("insert into t values (" + id + ")");
+        }
+        finally {
+            connection.close();
+        }
+    }
+
+    private int count() throws SQLException {
+        return query("select count(*) from t");
+    }
+
+    private int count(int id) throws SQLException {
+        return query("select count(*) from t where id = " + id);
+    }
+
+    private int query(String sql) throws SQLException {
+        Connection connection = dataSource.getConnection();
+        try {
+            ResultSet rs = connection.createStatement().executeQuery(sql);
+            rs.next();
+            return rs.getInt(1);
+        }
+        finally {
+            connection.close();
+        }
+    }
+
+}
@@ -0,0 +1,128 @@
+package craven.interceptor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.Before;
+import org.junit.Test;
+
+import craven.transaction.Status;
+import craven.transaction.TransactionManager;
+import craven.transaction.jdbc.JdbcTransactionManager;
+
+public class TransactionPlanTest {
+
+    private static TransactionManager tm;
+
+    private TransactionInterceptor interceptor;
+
+    @Transactional(propagation = TxPropagation.SUPPORTS)
+    public static class Service {
+
+        @Transactional(propagation = TxPropagation.REQUIRED)
+        public Status annotated() {
+            return tm.getStatus();
+        }
+
+        public Status inherited() {
+            return tm.getStatus();
+        }
+
+    }
+
+    @Transactional(propagation = TxPropagation.REQUIRES_NEW)
+    public static class OtherService extends Service {
+    }
+
+    public static class PlainService {
+
+        public Status plain() {
+            return tm.getStatus();
+        }
+
+    }
+
+    @Before
+    public void setUp() {
+        JdbcDataSource h2 = new JdbcDataSource();
+        h2.setURL("jdbc:h2:mem:plans;DB_CLOSE_DELAY=-1");
+        tm = new JdbcTransactionManager(h2);
+        interceptor = new TransactionInterceptor(tm);
+    }
+
+    @Test
+    public void methodAnnotationWinsOverClassAnnotation() throws Exception {
+        Service service = new Service();
+
+        for (int i = 0; i < 2; i++) {
+            assertEquals(Status.ACTIVE, invoke(service, "annotated"));
+            assertEquals(Status.NO_TRANSACTION, invoke(service, "inherited"));
+        }
+    }
+
+    @Test
+    public void plansAreResolvedPerTargetClass() throws Exception {
+        // the same method, the class annotation of the target decides
+        assertEquals(Status.NO_TRANSACTION, invoke(new Service(), "inherited"));
+        assertEquals(Status.ACTIVE, invoke(new OtherService(), "inherited"));
+        assertEquals(Status.NO_TRANSACTION, invoke(new Service(), "inherited"));
+    }
+
+    @Test
+    public void methodWithoutAnnotationFails() throws Exception {
+        for (int i = 0; i < 2; i++) {
+            try {
+                invoke(new PlainService(), "plain");
+                fail();
+            }
+            catch (IllegalStateException e) {
+                assertEquals("Could not find @Transactional annotation", e.getMessage());
+            }
+        }
+    }
+
+    @Test
+    public void concurrentCallsResolveTheSamePlans() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Void>> futures = new ArrayList<Future<Void>>();
+            for (int t = 0; t < 8; t++) {
+                futures.add(executor.submit(new Callable<Void>() {
+                    @Override public Void call() throws Exception {
+                        Service service = new Service();
+                        Service otherService = new OtherService();
+                        for (int i = 0; i < 1000; i++) {
+                            assertEquals(Status.NO_TRANSACTION, invoke(service, "inherited"));
+                            assertEquals(Status.ACTIVE, invoke(otherService, "inherited"));
+                            assertEquals(Status.ACTIVE, invoke(otherService, "annotated"));
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+    // --
+
+    private Object invoke(Object target, String name) throws Exception {
+        Method method = target.getClass().getMethod(name);
+        return interceptor.around(new SimpleInvocationContext(target, method, new Object[0]));
+    }
+
+}
@@ -0,0 +1,134 @@
+package craven.transaction;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+import craven.transaction.HashedWheelTimer.Timeout;
+
+public class HashedWheelTimerTest {
+
+    // 8 buckets of 10 ms, a round of the wheel is 80 ms
+    private final HashedWheelTimer timer = new HashedWheelTimer("test-timer", 10, TimeUnit.MILLISECONDS, 8);
+
+    @After
+    public void tearDown() {
+        timer.close();
+    }
+
+    @Test
+    public void timeoutExpiresAfterItsDelay() throws InterruptedException {
+        final CountDownLatch expired = new CountDownLatch(1);
+        long started = System.nanoTime();
+        Timeout timeout = timer.schedule(countDown(expired), 50, TimeUnit.MILLISECONDS);
+
+        assertTrue(expired.await(5, TimeUnit.SECONDS));
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+        assertTrue("expired after " + elapsed + " ms", elapsed >= 50);
+        assertTrue(timeout.isExpired());
+        assertFalse(timeout.cancel());
+    }
+
+    @Test
+    public void timeoutBeyondOneRoundWaitsForItsRound() throws InterruptedException {
+        final CountDownLatch expired = new CountDownLatch(1);
+        long started = System.nanoTime();
+        timer.schedule(countDown(expired), 250, TimeUnit.MILLISECONDS);
+
+        assertTrue(expired.await(5, TimeUnit.SECONDS));
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+        assertTrue("expired after " + elapsed + " ms", elapsed >= 250);
+    }
+
+    @Test
+    public void timeoutsExpireInDeadlineOrder() throws InterruptedException {
+        final List<Integer> order = new ArrayList<Integer>();
+        final CountDownLatch expired = new CountDownLatch(3);
+        int[] delays = { 120, 30, 70 };
+        for (final int delay : delays) {
+            timer.schedule(new Runnable() {
+                @Override public void run() {
+                    order.add(delay);
+                    expired.countDown();
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+        }
+
+        assertTrue(expired.await(5, TimeUnit.SECONDS));
+        // only the timer thread adds, the latch orders the reads after
+        assertEquals("[30, 70, 120]", order.toString());
+    }
+
+    @Test
+    public void cancelledTimeoutDoesNotRun() throws InterruptedException {
+        final AtomicInteger runs = new AtomicInteger();
+        Runnable task = new Runnable() {
+            @Override public void run() {
+                runs.incrementAndGet();
+            }
+        };
+
+        Timeout cancelledEarly = timer.schedule(task, 30, TimeUnit.MILLISECONDS);
+        assertTrue(cancelledEarly.cancel());
+        assertFalse(cancelledEarly.cancel());
+
+        // cancelled once in its bucket
+        Timeout cancelledLate = timer.schedule(task, 60, TimeUnit.MILLISECONDS);
+        Thread.sleep(30);
+        assertTrue(cancelledLate.cancel());
+
+        final CountDownLatch expired = new CountDownLatch(1);
+        timer.schedule(countDown(expired), 100, TimeUnit.MILLISECONDS);
+        assertTrue(expired.await(5, TimeUnit.SECONDS));
+
+        assertEquals(0, runs.get());
+        assertTrue(cancelledEarly.isCancelled());
+        assertFalse(cancelledLate.isExpired());
+    }
+
+    @Test
+    public void failingTaskDoesNotStopTheTimer() throws InterruptedException {
+        timer.schedule(new Runnable() {
+            @Override public void run() {
+                throw new IllegalStateException("task");
+            }
+        }, 10, TimeUnit.MILLISECONDS);
+
+        final CountDownLatch expired = new CountDownLatch(1);
+        timer.schedule(countDown(expired), 40, TimeUnit.MILLISECONDS);
+        assertTrue(expired.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void closedTimerRejectsTimeouts() {
+        timer.close();
+        try {
+            timer.schedule(countDown(new CountDownLatch(1)), 10, TimeUnit.MILLISECONDS);
+            fail();
+        }
+        catch (IllegalStateException e) {
+            assertEquals("Timer is closed", e.getMessage());
+        }
+    }
+
+    // --
+
+    private static Runnable countDown(final CountDownLatch latch) {
+        return new Runnable() {
+            @Override public void run() {
+                latch.countDown();
+            }
+        };
+    }
+
+}
@@ -0,0 +1,159 @@
+package craven.transaction.jdbc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.Before;
+import org.junit.Test;
+
+import craven.transaction.Status;
+
+public class StatementRecorderTest {
+
+    private JdbcTransactionManager tm;
+    private TransactionalDataSource dataSource;
+
+    private final List<String> dumps = new ArrayList<String>();
+
+    @Before
+    public void setUp() throws SQLException {
+        JdbcDataSource h2 = new JdbcDataSource();
+        h2.setURL("jdbc:h2:mem:recorder;DB_CLOSE_DELAY=-1");
+
+        Connection connection = h2.getConnection();
+        try {
+            connection.createStatement().execute("drop table if exists t");
+            connection.createStatement().execute("create table t(id int, name varchar(10))");
+        }
+        finally {
+            connection.close();
+        }
+
+        tm = new JdbcTransactionManager(h2);
+        tm.setStatementRecorderCapacity(3);
+        tm.setStatementRecorderSink(new StatementRecorder.Sink() {
+            @Override public void emit(Status status, StatementRecorder recorder) {
+                dumps.add(status + "\n" + recorder.dump());
+            }
+        });
+        dataSource = new TransactionalDataSource(tm);
+    }
+
+    @Test
+    public void rolledBackTransactionEmitsItsStatements() throws Exception {
+        tm.begin();
+        Connection connection = dataSource.getConnection();
+        try {
+            PreparedStatement insert = connection.prepareStatement("insert into t values (?, ?)");
+            insert.setInt(1, 1);
+            insert.setString(2, "one");
+            insert.executeUpdate();
+
+            insert.setInt(1, 2);
+            insert.setString(2, "two");
+            insert.addBatch();
+            insert.setInt(1, 3);
+            insert.setString(2, "three");
+            insert.addBatch();
+            insert.executeBatch();
+
+            try {
+                connection.createStatement().executeQuery("select nothing from t");
+                fail();
+            }
+            catch (SQLException e) {
+                // recorded as failed
+            }
+        }
+        finally {
+            connection.close();
+        }
+        tm.rollback();
+
+        assertEquals(1, dumps.size());
+        String[] lines = dumps.get(0).split("\n");
+        assertEquals("ROLLEDBACK", lines[0]);
+        assertTrue(lines[1], lines[1].matches("  1: insert into t values \\(\\?, \\?\\) \\[1, 'one'\\] in \\d+us"));
+        assertTrue(lines[2], lines[2].matches("  2: insert into t values \\(\\?, \\?\\) .*\\(batch of 2\\) in \\d+us"));
+        assertEquals("  3: select nothing from t failed", lines[3]);
+    }
+
+    @Test
+    public void committedTransactionEmitsNothing() throws Exception {
+        tm.begin();
+        execute("insert into t values (1, 'one')");
+        tm.commit();
+
+        assertEquals(0, dumps.size());
+    }
+
+    @Test
+    public void recorderKeepsTheLastStatements() throws Exception {
+        tm.begin();
+        for (int i = 1; i <= 5; i++) {
+            execute("insert into t values (" + i + ", 'x')");
+        }
+        tm.rollback();
+
+        String[] lines = dumps.get(0).split("\n");
+        assertEquals("  ... 2 earlier statements not recorded", lines[1]);
+        assertTrue(lines[2], lines[2].startsWith("  3: insert into t values (3, 'x')"));
+        assertTrue(lines[4], lines[4].startsWith("  5: insert into t values (5, 'x')"));
+    }
+
+    @Test
+    public void nextTransactionStartsWithAnEmptyRecord() throws Exception {
+        tm.begin();
+        execute("insert into t values (1, 'one')");
+        tm.rollback();
+
+        tm.begin();
+        execute("insert into t values (2, 'two')");
+        tm.rollback();
+
+        assertEquals(2, dumps.size());
+        assertTrue(dumps.get(1), dumps.get(1).contains("  1: insert into t values (2, 'two')"));
+        assertEquals(2, dumps.get(1).split("\n").length);
+    }
+
+    @Test
+    public void suspendedTransactionKeepsItsRecord() throws Exception {
+        tm.begin();
+        execute("insert into t values (1, 'outer')");
+
+        tm.suspend();
+        tm.begin();
+        execute("insert into t values (2, 'inner')");
+        tm.rollback();
+        tm.resume();
+
+        execute("insert into t values (3, 'outer')");
+        tm.rollback();
+
+        assertEquals(2, dumps.size());
+        assertTrue(dumps.get(0), dumps.get(0).contains("(2, 'inner')"));
+        assertTrue(dumps.get(1), dumps.get(1).contains("  1: insert into t values (1, 'outer')"));
+        assertTrue(dumps.get(1), dumps.get(1).contains("  2: insert into t values (3, 'outer')"));
+    }
+
+    // --
+
+    private void execute(String sql) throws SQLException {
+        Connection connection = dataSource.getConnection();
+        try {
+            connection.createStatement().executeUpdate(sql);
+        }
+        finally {
+            connection.close();
+        }
+    }
+
+}
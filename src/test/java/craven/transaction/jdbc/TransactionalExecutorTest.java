@@ -0,0 +1,269 @@
+package craven.transaction.jdbc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import craven.transaction.Status;
+
+public class TransactionalExecutorTest {
+
+    private JdbcTransactionManager tm;
+    private TransactionalDataSource dataSource;
+    private ExecutorService executor;
+
+    private TransactionalExecutor shared;
+    private TransactionalExecutor detached;
+
+    @Before
+    public void setUp() throws SQLException {
+        JdbcDataSource h2 = new JdbcDataSource();
+        h2.setURL("jdbc:h2:mem:executor;DB_CLOSE_DELAY=-1");
+
+        Connection connection = h2.getConnection();
+        try {
+            connection.createStatement().execute("drop table if exists t");
+            connection.createStatement().execute("create table t(id int)");
+        }
+        finally {
+            connection.close();
+        }
+
+        tm = new JdbcTransactionManager(h2);
+        dataSource = new TransactionalDataSource(tm);
+        executor = Executors.newFixedThreadPool(4);
+        shared = new TransactionalExecutor(tm, executor, TransactionalExecutor.Mode.SHARED);
+        detached = new TransactionalExecutor(tm, executor, TransactionalExecutor.Mode.DETACHED);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void sharedTasksReadTheTransaction() throws Exception {
+        tm.begin();
+        execute("insert into t values (1)");
+
+        List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+        for (int i = 0; i < 8; i++) {
+            futures.add(shared.submit(count()));
+        }
+        for (Future<Integer> future : futures) {
+            assertEquals(1, future.get().intValue());
+        }
+
+        // the thread of the transaction takes its turn as well
+        assertEquals(1, count().call().intValue());
+        tm.rollback();
+
+        assertEquals(0, count().call().intValue());
+    }
+
+    @Test
+    public void sharedTasksCannotWrite() throws Exception {
+        tm.begin();
+        Future<Object> write = shared.submit(new Callable<Object>() {
+            @Override public Object call() throws Exception {
+                execute("insert into t values (2)");
+                return null;
+            }
+        });
+        assertCause("Tasks sharing a transaction only read", write);
+        tm.commit();
+
+        assertEquals(0, count().call().intValue());
+    }
+
+    @Test
+    public void sharedTasksCannotEndTheTransaction() throws Exception {
+        tm.begin();
+        Future<Object> commit = shared.submit(new Callable<Object>() {
+            @Override public Object call() throws Exception {
+                tm.commit();
+                return null;
+            }
+        });
+        assertCause("Transaction belongs to another thread", commit);
+
+        assertEquals(Status.ACTIVE, tm.getStatus());
+        tm.commit();
+    }
+
+    @Test
+    public void tasksOutlivingTheTransactionCannotGetItsConnection() throws Exception {
+        final CountDownLatch ended = new CountDownLatch(1);
+
+        tm.begin();
+        Future<Integer> late = shared.submit(new Callable<Integer>() {
+            @Override public Integer call() throws Exception {
+                ended.await();
+                return count().call();
+            }
+        });
+        tm.commit();
+        ended.countDown();
+
+        assertCause("Transaction has ended.", late);
+    }
+
+    @Test
+    public void detachedTasksCannotUseTheDatabase() throws Exception {
+        tm.begin();
+        assertCause("Task is detached from its transaction", detached.submit(count()));
+
+        Future<Object> begin = detached.submit(new Callable<Object>() {
+            @Override public Object call() throws Exception {
+                tm.begin();
+                return null;
+            }
+        });
+        assertCause("Thread is detached from its transaction", begin);
+        tm.commit();
+    }
+
+    @Test
+    public void tasksOutsideOfTransactionRunAsTheyAre() throws Exception {
+        execute("insert into t values (1)");
+
+        assertEquals(1, shared.submit(count()).get().intValue());
+        assertEquals(1, detached.submit(count()).get().intValue());
+    }
+
+    @Test
+    public void submittingWithOpenConnectionFails() throws Exception {
+        tm.begin();
+
+        // before the transaction is shared
+        Connection connection = dataSource.getConnection();
+        try {
+            shared.submit(count());
+            fail();
+        }
+        catch (IllegalStateException e) {
+            assertEquals("Connection of the transaction still open, close it before handing out tasks", e.getMessage());
+        }
+        finally {
+            connection.close();
+        }
+        assertEquals(0, shared.submit(count()).get().intValue());
+
+        // while holding the connection of the shared transaction
+        connection = dataSource.getConnection();
+        try {
+            shared.submit(count());
+            fail();
+        }
+        catch (IllegalStateException e) {
+            assertEquals("Connection of the transaction still open, close it before handing out tasks", e.getMessage());
+        }
+        finally {
+            connection.close();
+        }
+
+        tm.commit();
+    }
+
+    @Test
+    public void waitingWithOpenConnectionFails() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+
+        tm.begin();
+        Future<Integer> future = shared.submit(new Callable<Integer>() {
+            @Override public Integer call() throws Exception {
+                started.await();
+                return count().call();
+            }
+        });
+
+        Connection connection = dataSource.getConnection();
+        started.countDown();
+        try {
+            try {
+                future.get();
+                fail();
+            }
+            catch (IllegalStateException e) {
+                assertEquals("Connection of the transaction still open, close it before waiting for tasks", e.getMessage());
+            }
+            try {
+                future.get(1, TimeUnit.SECONDS);
+                fail();
+            }
+            catch (IllegalStateException e) {
+                assertEquals("Connection of the transaction still open, close it before waiting for tasks", e.getMessage());
+            }
+            try {
+                shared.invokeAny(Collections.singletonList(count()));
+                fail();
+            }
+            catch (IllegalStateException e) {
+                assertEquals("Connection of the transaction still open, close it before waiting for tasks", e.getMessage());
+            }
+        }
+        finally {
+            connection.close();
+        }
+
+        assertEquals(0, future.get().intValue());
+        tm.commit();
+    }
+
+    // --
+
+    private Callable<Integer> count() {
+        return new Callable<Integer>() {
+            @Override public Integer call() throws SQLException {
+                Connection connection = dataSource.getConnection();
+                try {
+                    ResultSet rs = connection.createStatement().executeQuery("select count(*) from t");
+                    rs.next();
+                    return rs.getInt(1);
+                }
+                finally {
+                    connection.close();
+                }
+            }
+        };
+    }
+
+    private void execute(String sql) throws SQLException {
+        Connection connection = dataSource.getConnection();
+        try {
+            connection.createStatement().executeUpdate(sql);
+        }
+        finally {
+            connection.close();
+        }
+    }
+
+    private static void assertCause(String message, Future<?> future) throws InterruptedException {
+        try {
+            future.get();
+            fail();
+        }
+        catch (ExecutionException e) {
+            assertEquals(message, e.getCause().getMessage());
+        }
+    }
+
+}